@@ -0,0 +1,115 @@
+package com.apophenic.rsrclib.bench;
+
+import com.apophenic.rsrclib.ResourceType;
+import com.apophenic.rsrclib.RsrcEdit;
+import com.apophenic.rsrclib.RsrcFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replacing resources with larger, smaller or same size data. Each invocation
+ * edits a freshly loaded file, which isn't included in the timing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBenchmark
+{
+    /** replacements made by the batch benchmarks */
+    private static final int BATCH = 100;
+
+    @Param({"1000"})
+    public int entries;
+
+    @Param({"1024"})
+    public int payloadSize;
+
+    /** how the replacement's size compares to the resource it replaces */
+    @Param({"GROW", "SHRINK", "SAME"})
+    public String change;
+
+    private Path _file;
+
+    private RsrcFile _rsrc;
+
+    private int[] _ids;
+
+    private byte[][] _replacements;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException
+    {
+        _file = Forks.generate(entries, payloadSize);
+        _ids = Forks.shuffledIds(entries, BATCH);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation()
+    {
+        _rsrc = Forks.open(_file, Forks.Mode.HEAP);
+
+        _replacements = new byte[_ids.length][];
+        for (int i = 0; i < _ids.length; i++)
+        {
+            int length = _rsrc.getResourceLength(_rsrc.getResourceByID(_ids[i], ResourceType.PNG));
+            switch (change)
+            {
+                case "GROW":
+                    length = length * 2;
+                    break;
+                case "SHRINK":
+                    length = length / 2;
+                    break;
+                default:
+                    break;
+            }
+            _replacements[i] = new byte[length];
+        }
+    }
+
+    @Benchmark
+    public RsrcFile saveResourceData()
+    {
+        _rsrc.saveResourceData(_replacements[0], _ids[0], ResourceType.PNG);
+        return _rsrc;
+    }
+
+    @Benchmark
+    public RsrcFile saveResourceDataBatch()
+    {
+        for (int i = 0; i < _ids.length; i++)
+        {
+            _rsrc.saveResourceData(_replacements[i], _ids[i], ResourceType.PNG);
+        }
+        return _rsrc;
+    }
+
+    @Benchmark
+    public RsrcFile editBatch()
+    {
+        RsrcEdit edit = _rsrc.edit();
+        for (int i = 0; i < _ids.length; i++)
+        {
+            edit.replace(_replacements[i], _ids[i], ResourceType.PNG);
+        }
+        edit.commit();
+        return _rsrc;
+    }
+}
@@ -0,0 +1,67 @@
+package com.apophenic.rsrclib.bench;
+
+import com.apophenic.rsrclib.RsrcFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Shared setup for the benchmarks
+ */
+public final class Forks
+{
+    /** ways a {@link RsrcFile} can be opened */
+    public enum Mode
+    {
+        HEAP, MAPPED, CHANNEL
+    }
+
+    private Forks()
+    {
+    }
+
+    /**
+     * Generates a .rsrc file into a temporary file that's deleted on exit
+     * @param entries  Number of resources
+     * @param payloadSize  Average resource size, in bytes
+     */
+    static Path generate(int entries, int payloadSize) throws IOException
+    {
+        Path file = Files.createTempFile("rsrc-bench", ".rsrc");
+        file.toFile().deleteOnExit();
+
+        return new RsrcGenerator().setEntriesPerType(entries)
+                                  .setPayloadSize(payloadSize / 2, payloadSize * 3 / 2)
+                                  .generate(file);
+    }
+
+    /** Opens a .rsrc file the given way */
+    static RsrcFile open(Path file, Mode mode)
+    {
+        switch (mode)
+        {
+            case MAPPED:
+                return new RsrcFile(file.toFile(), FileChannel.MapMode.PRIVATE);
+            case CHANNEL:
+                return new RsrcFile(file);
+            default:
+                return new RsrcFile(new File(file.toString()));
+        }
+    }
+
+    /** Returns {@code count} resource IDs in a fixed, shuffled order */
+    static int[] shuffledIds(int entries, int count)
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            ids[i] = RsrcGenerator.FIRST_ID + random.nextInt(entries);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,81 @@
+package com.apophenic.rsrclib.bench;
+
+import com.apophenic.rsrclib.ResourceType;
+import com.apophenic.rsrclib.RsrcFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading resource data, by copy and into a reused buffer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark
+{
+    @Param({"1000"})
+    public int entries;
+
+    @Param({"256", "65536"})
+    public int payloadSize;
+
+    @Param({"HEAP", "MAPPED", "CHANNEL"})
+    public Forks.Mode mode;
+
+    private RsrcFile _rsrc;
+
+    private int[] _ids;
+
+    private int _next;
+
+    private ByteBuffer _buffer;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        _rsrc = Forks.open(Forks.generate(entries, payloadSize), mode);
+        _ids = Forks.shuffledIds(entries, 1024);
+        _buffer = ByteBuffer.allocate(payloadSize * 2);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        _rsrc.close();
+    }
+
+    @Benchmark
+    public byte[] loadResourceData()
+    {
+        return _rsrc.loadResourceData(nextId(), ResourceType.PNG);
+    }
+
+    @Benchmark
+    public int readResource()
+    {
+        _buffer.clear();
+        return _rsrc.readResource(nextId(), ResourceType.PNG, _buffer);
+    }
+
+    private int nextId()
+    {
+        return _ids[_next++ & (_ids.length - 1)];
+    }
+}
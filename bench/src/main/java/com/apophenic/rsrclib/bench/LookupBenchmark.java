@@ -0,0 +1,60 @@
+package com.apophenic.rsrclib.bench;
+
+import com.apophenic.rsrclib.Resource;
+import com.apophenic.rsrclib.ResourceType;
+import com.apophenic.rsrclib.RsrcFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up resources by type and ID, in random order
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark
+{
+    private static final int LOOKUPS = 1024;
+
+    @Param({"100", "10000", "60000"})
+    public int entries;
+
+    private RsrcFile _rsrc;
+
+    private int[] _ids;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        _rsrc = Forks.open(Forks.generate(entries, 16), Forks.Mode.HEAP);
+        _ids = Forks.shuffledIds(entries, LOOKUPS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getResourceByID(Blackhole blackhole)
+    {
+        for (int id : _ids)
+        {
+            Resource res = _rsrc.getResourceByID(id, ResourceType.PNG);
+            blackhole.consume(res);
+        }
+    }
+}
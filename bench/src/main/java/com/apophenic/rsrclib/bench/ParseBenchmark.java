@@ -0,0 +1,55 @@
+package com.apophenic.rsrclib.bench;
+
+import com.apophenic.rsrclib.RsrcFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a .rsrc file: reading (or mapping) it and parsing its header
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark
+{
+    @Param({"100", "10000"})
+    public int entries;
+
+    @Param({"1024"})
+    public int payloadSize;
+
+    @Param({"HEAP", "MAPPED", "CHANNEL"})
+    public Forks.Mode mode;
+
+    private Path _file;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        _file = Forks.generate(entries, payloadSize);
+    }
+
+    @Benchmark
+    public RsrcFile open() throws IOException
+    {
+        RsrcFile rsrc = Forks.open(_file, mode);
+        rsrc.close();
+        return rsrc;
+    }
+}
@@ -0,0 +1,210 @@
+package com.apophenic.rsrclib.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Generates valid .rsrc files filled with random resources, for benchmarking.
+ * The same settings and seed always produce the same file, so results are
+ * reproducible and nothing has to be downloaded.
+ * <p>
+ * Resources are numbered from ID 128 within each type, and laid out type by
+ * type in the data section with the header following the last resource.
+ */
+public class RsrcGenerator
+{
+    /** type codes used, in order, as the number of types grows */
+    private static final String[] TYPE_CODES = {"PNG ", "icns", "PICT", "snd ", "STR ", "ICON", "TEXT", "CURS"};
+
+    /** ID of the first resource of each type */
+    public static final int FIRST_ID = 128;
+
+    private int _typeCount = 1;
+
+    private int _entriesPerType = 100;
+
+    private int _minPayloadSize = 64;
+
+    private int _maxPayloadSize = 4096;
+
+    private long _seed = 1;
+
+    /** Sets how many resource types the file has, up to 8. Defaults to 1. */
+    public RsrcGenerator setTypeCount(int typeCount)
+    {
+        if (typeCount < 1 || typeCount > TYPE_CODES.length)
+        {
+            throw new IllegalArgumentException("Type count must be between 1 and " + TYPE_CODES.length);
+        }
+
+        this._typeCount = typeCount;
+        return this;
+    }
+
+    /** Sets how many resources each type has. Defaults to 100. */
+    public RsrcGenerator setEntriesPerType(int entriesPerType)
+    {
+        if (entriesPerType < 1 || FIRST_ID + entriesPerType > 0xFFFF)
+        {
+            throw new IllegalArgumentException("Entries per type must be between 1 and " + (0xFFFF - FIRST_ID));
+        }
+
+        this._entriesPerType = entriesPerType;
+        return this;
+    }
+
+    /** Sets the range of resource sizes, in bytes. Defaults to 64 to 4096. */
+    public RsrcGenerator setPayloadSize(int minPayloadSize, int maxPayloadSize)
+    {
+        if (minPayloadSize < 0 || maxPayloadSize < minPayloadSize)
+        {
+            throw new IllegalArgumentException("Invalid payload size range");
+        }
+
+        this._minPayloadSize = minPayloadSize;
+        this._maxPayloadSize = maxPayloadSize;
+        return this;
+    }
+
+    /** Sets the seed the resources are generated from. Defaults to 1. */
+    public RsrcGenerator setSeed(long seed)
+    {
+        this._seed = seed;
+        return this;
+    }
+
+    /** Returns the type code of the n-th type in generated files */
+    public static String getTypeCode(int index)
+    {
+        return TYPE_CODES[index];
+    }
+
+    /** Generates a .rsrc file */
+    public byte[] generate()
+    {
+        SplittableRandom random = new SplittableRandom(_seed);
+        int entryCount = _typeCount * _entriesPerType;
+
+        int[] lengths = new int[entryCount];
+        long dataLength = 0;
+        for (int i = 0; i < entryCount; i++)
+        {
+            lengths[i] = _minPayloadSize + random.nextInt(_maxPayloadSize - _minPayloadSize + 1);
+            dataLength += 0x04 + lengths[i];
+        }
+
+        int typeListLength = 0x02 + 0x08 * _typeCount;
+        int headerLength = 0x1C + typeListLength + 0x0C * entryCount;
+        if (typeListLength + 0x0C * _entriesPerType * (_typeCount - 1) > 0xFFFF)
+        {
+            // Each type's entries are found by a 16 bit offset from the type list
+            throw new IllegalStateException("Too many entries for " + _typeCount + " types");
+        }
+        long headerOffset = 0x100 + dataLength;
+        if (headerOffset + headerLength > Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Generated file would be larger than 2 GB");
+        }
+
+        ByteBuffer file = ByteBuffer.allocate((int) headerOffset + headerLength);
+
+        // Signature, then padding up to the first resource
+        putSignature(file, (int) headerOffset, headerLength);
+        file.position(0x100);
+
+        // Resources, each preceded by its length
+        int[] startOffsets = new int[entryCount];
+        byte[] payload = new byte[_maxPayloadSize];
+        for (int i = 0; i < entryCount; i++)
+        {
+            startOffsets[i] = file.position() - 0x100;
+            fill(random, payload, lengths[i]);
+            file.putInt(lengths[i]).put(payload, 0, lengths[i]);
+        }
+
+        // Header: a copy of the signature, then the type list, then every resource entry
+        putSignature(file, (int) headerOffset, headerLength);
+        file.putInt(0).putShort((short) 0).putShort((short) 0);
+        file.putShort((short) 0x1C).putShort((short) headerLength);
+
+        file.putShort((short) (_typeCount - 1));
+        for (int t = 0; t < _typeCount; t++)
+        {
+            file.put(TYPE_CODES[t].getBytes(StandardCharsets.ISO_8859_1));
+            file.putShort((short) (_entriesPerType - 1));
+            file.putShort((short) (typeListLength + 0x0C * _entriesPerType * t));
+        }
+
+        for (int i = 0; i < entryCount; i++)
+        {
+            file.putShort((short) (FIRST_ID + i % _entriesPerType));
+            file.putShort((short) 0xFFFF);
+            file.putInt(startOffsets[i]);
+            file.putInt(0);
+        }
+
+        return file.array();
+    }
+
+    /** Generates a .rsrc file and writes it to the given path */
+    public Path generate(Path path) throws IOException
+    {
+        return Files.write(path, generate());
+    }
+
+    private static void putSignature(ByteBuffer file, int headerOffset, int headerLength)
+    {
+        file.putInt(0x100).putInt(headerOffset).putInt(headerOffset - 0x100).putInt(headerLength);
+    }
+
+    private static void fill(SplittableRandom random, byte[] payload, int length)
+    {
+        for (int i = 0; i < length; i += 8)
+        {
+            long value = random.nextLong();
+            for (int j = i; j < Math.min(length, i + 8); j++)
+            {
+                payload[j] = (byte) value;
+                value >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * Writes a generated file.
+     * Usage: RsrcGenerator output [types] [entries per type] [min size] [max size] [seed]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: RsrcGenerator output [types] [entries per type] [min size] [max size] [seed]");
+            System.exit(1);
+        }
+
+        RsrcGenerator generator = new RsrcGenerator();
+        if (args.length > 1)
+        {
+            generator.setTypeCount(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2)
+        {
+            generator.setEntriesPerType(Integer.parseInt(args[2]));
+        }
+        if (args.length > 4)
+        {
+            generator.setPayloadSize(Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        }
+        if (args.length > 5)
+        {
+            generator.setSeed(Long.parseLong(args[5]));
+        }
+
+        generator.generate(Paths.get(args[0]));
+    }
+}
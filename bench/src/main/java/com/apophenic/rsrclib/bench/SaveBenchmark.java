@@ -0,0 +1,60 @@
+package com.apophenic.rsrclib.bench;
+
+import com.apophenic.rsrclib.RsrcFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving an unedited .rsrc file over itself, including the sync to disk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark
+{
+    @Param({"1000"})
+    public int entries;
+
+    @Param({"1024", "65536"})
+    public int payloadSize;
+
+    @Param({"HEAP", "MAPPED", "CHANNEL"})
+    public Forks.Mode mode;
+
+    private RsrcFile _rsrc;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        _rsrc = Forks.open(Forks.generate(entries, payloadSize), mode);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        _rsrc.close();
+    }
+
+    @Benchmark
+    public RsrcFile saveRsrcFile() throws IOException
+    {
+        _rsrc.saveRsrcFile(false);
+        return _rsrc;
+    }
+}
@@ -0,0 +1,158 @@
+package com.apophenic.rsrclib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link RsrcStorage} that reads from an {@link AsynchronousFileChannel} on demand. Like
+ * {@link ChannelStorage}, only the 16 byte signature and the header are read up front, here
+ * without blocking, see {@link #open}. Resource data can then be read without blocking with
+ * {@link #readAsync}; the {@code RsrcStorage} methods, which have to return the
+ * bytes they read, wait for their reads to complete. Those reads complete on the channel's
+ * executor, so the {@code RsrcStorage} methods must never be called from one of its threads,
+ * such as a completion callback, see {@link RsrcFile#openAsync(java.nio.file.Path, java.util.concurrent.ExecutorService)}.
+ */
+class AsyncChannelStorage extends CachedHeaderStorage
+{
+    /** channel holding the file */
+    private final AsynchronousFileChannel _channel;
+
+    private AsyncChannelStorage(AsynchronousFileChannel channel, long size, long headerOffset, byte[] header)
+    {
+        super(size, headerOffset, header);
+        this._channel = channel;
+    }
+
+    /**
+     * Reads the signature and header of the .rsrc file held by a channel, without blocking
+     * @param channel  Channel holding the .rsrc file. It's closed when the storage is,
+     *                 but not if the header can't be read.
+     * @return  Future completed with the storage once the header has been read
+     */
+    static CompletableFuture<AsyncChannelStorage> open(AsynchronousFileChannel channel)
+    {
+        long size;
+        try
+        {
+            size = channel.size();
+        }
+        catch (IOException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return readAsync(channel, 0x00, ByteBuffer.allocate(0x10)).thenCompose(signature ->
+        {
+            long headerOffset;
+            try
+            {
+                headerOffset = getHeaderOffset(signature, size);
+            }
+            catch (IOException e)
+            {
+                throw new CompletionException(e);
+            }
+
+            byte[] header = new byte[(int) (size - headerOffset)];
+            return readAsync(channel, headerOffset, ByteBuffer.wrap(header))
+                    .thenApply(read -> new AsyncChannelStorage(channel, size, headerOffset, header));
+        });
+    }
+
+    /**
+     * Fills a buffer from the file without blocking, with as many positioned reads as it takes
+     * @param position  Offset in the file to read from
+     * @param dst  Buffer to fill, from its position up to its limit
+     * @return  Future completed with {@code dst} once it's full
+     */
+    CompletableFuture<ByteBuffer> readAsync(long position, ByteBuffer dst)
+    {
+        return readAsync(_channel, position, dst);
+    }
+
+    private static CompletableFuture<ByteBuffer> readAsync(AsynchronousFileChannel channel, long position,
+                                                           ByteBuffer dst)
+    {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        readFully(channel, position, dst, future);
+        return future;
+    }
+    private static void readFully(AsynchronousFileChannel channel, long position, ByteBuffer dst,
+                                  CompletableFuture<ByteBuffer> future)
+    {
+        try
+        {
+            channel.read(dst, position, null, new CompletionHandler<Integer, Void>()
+            {
+                @Override
+                public void completed(Integer read, Void attachment)
+                {
+                    if (read < 0)
+                    {
+                        future.completeExceptionally(new EOFException("Unexpected end of file at offset " + position));
+                    }
+                    else if (dst.hasRemaining())
+                    {
+                        readFully(channel, position + read, dst, future);
+                    }
+                    else
+                    {
+                        future.complete(dst);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment)
+                {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /** Waits for an asynchronous read, see {@link #readAsync} */
+    @Override
+    void read(long position, ByteBuffer dst) throws IOException
+    {
+        await(readAsync(position, dst));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _channel.close();
+    }
+
+    /**
+     * Waits for a read to complete, for callers that have to return what it read
+     * @return  The future's result
+     * @throws IOException  If the read failed, or the wait was interrupted
+     */
+    static <T> T await(CompletableFuture<T> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a read");
+        }
+        catch (ExecutionException e)
+        {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+}
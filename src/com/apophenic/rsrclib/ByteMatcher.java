@@ -0,0 +1,242 @@
+package com.apophenic.rsrclib;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds every occurrence of a fixed set of byte patterns in a {@link ByteBuffer},
+ * in a single pass however many patterns there are. Backs {@link RsrcSearch}.
+ * <p>
+ * Several patterns are matched with an Aho-Corasick automaton, compiled into a table
+ * of transitions so each byte costs one lookup. Bytes that appear in no pattern all
+ * behave alike, so they share a column of the table, which keeps it small for a large
+ * set of patterns. A single pattern is matched with Boyer-Moore-Horspool instead,
+ * which skips ahead by up to the pattern's length at a time.
+ * <p>
+ * Once built, a {@code ByteMatcher} is never changed, so it can be shared between threads.
+ */
+final class ByteMatcher
+{
+    /** Receives each match found by {@link #find} */
+    interface Hits
+    {
+        /**
+         * @param pattern  Position of the matching pattern in the list the matcher was built from
+         * @param offset  Where the match begins, relative to the buffer's position
+         */
+        void hit(int pattern, int offset);
+    }
+
+    /** the patterns to find */
+    private final byte[][] _patterns;
+
+    /** the column of the transition table used for each byte, 0 for bytes in no pattern */
+    private final int[] _classes = new int[0x100];
+
+    /** number of columns in the transition table */
+    private final int _stride;
+
+    /**
+     * the state following each state on each column, indexed by state * _stride + column. States are
+     * stored already multiplied by _stride, with the sign bit set on those that end a pattern.
+     */
+    private final int[] _next;
+
+    /** the patterns ending at each state, longest first, or null if none do */
+    private final int[][] _outputs;
+
+    /** for a single pattern, how far to skip past each byte found at the end of the window */
+    private final int[] _skip;
+
+    /**
+     * @param patterns  The patterns to find, none of which may be empty
+     */
+    ByteMatcher(byte[][] patterns)
+    {
+        this._patterns = patterns;
+
+        if (patterns.length == 1)
+        {
+            byte[] pattern = patterns[0];
+            _skip = new int[0x100];
+            Arrays.fill(_skip, pattern.length);
+            for (int i = 0; i < pattern.length - 1; i++)
+            {
+                _skip[pattern[i] & 0xFF] = pattern.length - 1 - i;
+            }
+
+            _stride = 0;
+            _next = null;
+            _outputs = null;
+            return;
+        }
+        _skip = null;
+
+        int columns = 1;
+        int states = 1;
+        for (byte[] pattern : patterns)
+        {
+            for (byte b : pattern)
+            {
+                if (_classes[b & 0xFF] == 0)
+                {
+                    _classes[b & 0xFF] = columns++;
+                }
+            }
+            states += pattern.length;
+        }
+        _stride = columns;
+
+        // The trie of every pattern, -1 marking a transition it doesn't have
+        int[] next = new int[states * columns];
+        Arrays.fill(next, -1);
+        int[][] outputs = new int[states][];
+        int count = 1;
+        for (int p = 0; p < patterns.length; p++)
+        {
+            int state = 0;
+            for (byte b : patterns[p])
+            {
+                int index = state * columns + _classes[b & 0xFF];
+                if (next[index] < 0)
+                {
+                    next[index] = count++;
+                }
+                state = next[index];
+            }
+            outputs[state] = append(outputs[state], p);
+        }
+
+        // Breadth first, so each state's failure state is complete before the state is reached. A missing
+        // transition becomes its failure state's, and each state also ends the patterns its failure state ends
+        int[] fail = new int[count];
+        int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < columns; c++)
+        {
+            if (next[c] < 0)
+            {
+                next[c] = 0;
+            }
+            else
+            {
+                queue[tail++] = next[c];
+            }
+        }
+        while (head < tail)
+        {
+            int state = queue[head++];
+            if (outputs[fail[state]] != null)
+            {
+                outputs[state] = concat(outputs[state], outputs[fail[state]]);
+            }
+
+            for (int c = 0; c < columns; c++)
+            {
+                int index = state * columns + c;
+                int target = next[fail[state] * columns + c];
+                if (next[index] < 0)
+                {
+                    next[index] = target;
+                }
+                else
+                {
+                    fail[next[index]] = target;
+                    queue[tail++] = next[index];
+                }
+            }
+        }
+
+        _next = new int[count * columns];
+        for (int i = 0; i < _next.length; i++)
+        {
+            _next[i] = next[i] * columns | (outputs[next[i]] != null ? Integer.MIN_VALUE : 0);
+        }
+        _outputs = Arrays.copyOf(outputs, count);
+    }
+
+    /**
+     * Finds every occurrence of every pattern between the buffer's position and its limit,
+     * overlapping ones included. Matches are reported in the order they end, and the
+     * buffer's position is left unchanged.
+     * @param data  The bytes to search
+     * @param hits  Receives each match
+     */
+    void find(ByteBuffer data, Hits hits)
+    {
+        if (_skip != null)
+        {
+            findOne(data, hits);
+            return;
+        }
+
+        int base = data.position();
+        int end = data.limit();
+        int[] next = _next;
+        int[] classes = _classes;
+        int state = 0;
+        for (int i = base; i < end; i++)
+        {
+            state = next[(state & Integer.MAX_VALUE) + classes[data.get(i) & 0xFF]];
+            if (state < 0)
+            {
+                for (int p : _outputs[(state & Integer.MAX_VALUE) / _stride])
+                {
+                    hits.hit(p, i - base + 1 - _patterns[p].length);
+                }
+            }
+        }
+    }
+
+    /** Finds every occurrence of the only pattern with Boyer-Moore-Horspool, see {@link #find} */
+    private void findOne(ByteBuffer data, Hits hits)
+    {
+        byte[] pattern = _patterns[0];
+        int last = pattern.length - 1;
+        int base = data.position();
+        int end = data.limit() - last;
+
+        for (int i = base; i < end; )
+        {
+            byte b = data.get(i + last);
+            if (b == pattern[last])
+            {
+                int j = last - 1;
+                while (j >= 0 && data.get(i + j) == pattern[j])
+                {
+                    j--;
+                }
+                if (j < 0)
+                {
+                    hits.hit(0, i - base);
+                }
+            }
+            i += _skip[b & 0xFF];
+        }
+    }
+
+    /** Returns the given patterns with another added */
+    private static int[] append(int[] patterns, int pattern)
+    {
+        if (patterns == null)
+        {
+            return new int[] { pattern };
+        }
+        int[] appended = Arrays.copyOf(patterns, patterns.length + 1);
+        appended[patterns.length] = pattern;
+        return appended;
+    }
+
+    /** Returns the patterns in both arrays, those of the first first */
+    private static int[] concat(int[] first, int[] second)
+    {
+        if (first == null)
+        {
+            return second;
+        }
+        int[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+}
@@ -0,0 +1,207 @@
+package com.apophenic.rsrclib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link RsrcStorage} that reads a file on demand, keeping only its header, which lives at
+ * the end of the file, in memory. Ranges within the header are served from the cached copy;
+ * anything else is read from the file with {@link #read}, the one thing subclasses implement.
+ * <p>
+ * This storage can't be written to, edits to a {@link RsrcFile} backed by it
+ * are either rebuilt on the heap or streamed to disk.
+ */
+abstract class CachedHeaderStorage implements RsrcStorage
+{
+    /** number of bytes copied at a time by {@link #transferTo} */
+    private static final int TRANSFER_SIZE = 0x10000;
+
+    /** size of the file */
+    private final long _size;
+
+    /** offset the cached header begins at */
+    private final long _headerOffset;
+
+    /** the header, from _headerOffset to the end of the file */
+    private final byte[] _header;
+
+    /**
+     * @param size  Size of the file
+     * @param headerOffset  Offset the header begins at
+     * @param header  The header, from headerOffset to the end of the file
+     */
+    CachedHeaderStorage(long size, long headerOffset, byte[] header)
+    {
+        this._size = size;
+        this._headerOffset = headerOffset;
+        this._header = header;
+    }
+
+    /**
+     * Reads the header offset from a file's 16 byte signature, and checks the header lies within the file
+     * @param signature  The signature
+     * @param size  Size of the file
+     * @return  The header offset
+     * @throws IOException  If the header is outside the file, or too large to hold in memory
+     */
+    static long getHeaderOffset(ByteBuffer signature, long size) throws IOException
+    {
+        long headerOffset = Integer.toUnsignedLong(signature.getInt(0x04)); // Bytes 4-8 are header offset
+        if (headerOffset < signature.capacity() || headerOffset > size)
+        {
+            throw new IOException("Header offset " + headerOffset + " is outside the file");
+        }
+        if (size - headerOffset > MAX_ARRAY_SIZE)
+        {
+            throw new IOException("Header is too large to read: " + (size - headerOffset) + " bytes");
+        }
+        return headerOffset;
+    }
+
+    /**
+     * Fills a buffer from the file
+     * @param position  Offset in the file to read from
+     * @param dst  Buffer to fill, from its position up to its limit
+     */
+    abstract void read(long position, ByteBuffer dst) throws IOException;
+
+    @Override
+    public long size()
+    {
+        return _size;
+    }
+
+    @Override
+    public byte get(long offset)
+    {
+        if (offset >= _headerOffset)
+        {
+            return _header[(int) (offset - _headerOffset)];
+        }
+
+        ByteBuffer dst = ByteBuffer.allocate(1);
+        readUnchecked(offset, dst);
+        return dst.get(0);
+    }
+
+    @Override
+    public int getInt(long offset)
+    {
+        if (offset >= _headerOffset)
+        {
+            int index = (int) (offset - _headerOffset);
+            return ((_header[index] & 0xFF) << 24) | ((_header[index + 1] & 0xFF) << 16) |
+                   ((_header[index + 2] & 0xFF) << 8) | (_header[index + 3] & 0xFF);
+        }
+
+        ByteBuffer dst = ByteBuffer.allocate(4);
+        readUnchecked(offset, dst);
+        return dst.getInt(0);
+    }
+
+    @Override
+    public void get(long offset, byte[] dst, int dstOffset, int length)
+    {
+        if (offset >= _headerOffset)
+        {
+            System.arraycopy(_header, (int) (offset - _headerOffset), dst, dstOffset, length);
+            return;
+        }
+
+        readUnchecked(offset, ByteBuffer.wrap(dst, dstOffset, length));
+    }
+
+    @Override
+    public void get(long offset, ByteBuffer dst, int length)
+    {
+        if (offset >= _headerOffset)
+        {
+            dst.put(_header, (int) (offset - _headerOffset), length);
+            return;
+        }
+
+        if (dst.remaining() < length)
+        {
+            throw new BufferOverflowException();
+        }
+
+        ByteBuffer view = dst.duplicate();
+        view.limit(view.position() + length);
+        readUnchecked(offset, view);
+        dst.position(view.position());
+    }
+
+    /**
+     * Returns a read-only buffer holding a range of this storage. Ranges within the
+     * header are views of the cached header, anything else has to be read into a new buffer.
+     */
+    @Override
+    public ByteBuffer slice(long offset, int length)
+    {
+        if (offset >= _headerOffset)
+        {
+            return ByteBuffer.wrap(_header, (int) (offset - _headerOffset), length).slice().asReadOnlyBuffer();
+        }
+
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        readUnchecked(offset, dst);
+        dst.flip();
+        return dst.asReadOnlyBuffer();
+    }
+
+    @Override
+    public void put(long offset, byte[] src, int srcOffset, int length)
+    {
+        throw new ReadOnlyBufferException();
+    }
+
+    /** Copies the range a buffer at a time, see {@link #read} */
+    @Override
+    public void transferTo(long offset, long length, WritableByteChannel target) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, TRANSFER_SIZE));
+        long position = offset;
+        long end = offset + length;
+        while (position < end)
+        {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            read(position, buffer);
+            buffer.flip();
+            position += buffer.remaining();
+            RsrcStorage.writeFully(target, buffer);
+        }
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
+    @Override
+    public byte[] toByteArray()
+    {
+        byte[] data = new byte[RsrcStorage.arraySize(_size)];
+        get(0, data, 0, (int) _headerOffset);
+        System.arraycopy(_header, 0, data, (int) _headerOffset, _header.length);
+        return data;
+    }
+
+    /** Same as {@link #read}, for callers that can't throw {@code IOException} */
+    private void readUnchecked(long position, ByteBuffer dst)
+    {
+        try
+        {
+            read(position, dst);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.apophenic.rsrclib;
+
+import java.nio.file.Path;
+
+/**
+ * A single resource recorded in a {@link RsrcCatalog}
+ */
+public class CatalogEntry
+{
+    /** The .rsrc file the resource is in */
+    private final Path _file;
+
+    /** The resource's data type */
+    private final ResourceType _type;
+
+    /** The resource ID, as represented in the .rsrc file */
+    private final int _id;
+
+    /** The offset location the resource's data begins in the .rsrc file */
+    private final long _dataOffset;
+
+    /** The resource's length, in bytes */
+    private final int _length;
+
+    /** true if the resource's data was hashed when it was cataloged */
+    private final boolean _hashed;
+
+    /** The xxHash64 of the resource's data, if it was hashed */
+    private final long _contentHash;
+
+    CatalogEntry(Path file, ResourceType type, int id, long dataOffset, int length, boolean hashed, long contentHash)
+    {
+        this._file = file;
+        this._type = type;
+        this._id = id;
+        this._dataOffset = dataOffset;
+        this._length = length;
+        this._hashed = hashed;
+        this._contentHash = contentHash;
+    }
+
+    /** Returns the .rsrc file the resource is in */
+    public Path getFile()
+    {
+        return _file;
+    }
+
+    /** Returns the resource's data type */
+    public ResourceType getType()
+    {
+        return _type;
+    }
+
+    /** Returns the {@code int32} representation of the resource's ID */
+    public int getResourceID()
+    {
+        return _id;
+    }
+
+    /** Returns the offset location where the resource's data bytes begin in the file */
+    public long getDataOffset()
+    {
+        return _dataOffset;
+    }
+
+    /** Returns the resource's length (number of bytes) */
+    public int getLength()
+    {
+        return _length;
+    }
+
+    /** Returns true if the resource's data was hashed when it was cataloged, see {@link RsrcCatalog#setHashContents} */
+    public boolean hasContentHash()
+    {
+        return _hashed;
+    }
+
+    /**
+     * Returns the resource's content hash, see {@link RsrcFile#getContentHash(Resource)}
+     * @throws IllegalStateException  If the resource's data wasn't hashed
+     */
+    public long getContentHash()
+    {
+        if (!_hashed)
+        {
+            throw new IllegalStateException("Resource wasn't hashed when it was cataloged");
+        }
+        return _contentHash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _file + ": " + _type + " " + _id + " (" + _length + " bytes at " + _dataOffset + ")";
+    }
+}
@@ -0,0 +1,116 @@
+package com.apophenic.rsrclib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link RsrcStorage} that reads from a channel on demand. Only the 16 byte
+ * signature and the header, which lives at the end of the file, are read up
+ * front; resource data is fetched with positioned reads as it's loaded.
+ */
+class ChannelStorage extends CachedHeaderStorage
+{
+    /** channel holding the file */
+    private final SeekableByteChannel _channel;
+
+    private ChannelStorage(SeekableByteChannel channel, long size, long headerOffset, byte[] header)
+    {
+        super(size, headerOffset, header);
+        this._channel = channel;
+    }
+
+    /**
+     * Reads the signature and header of the .rsrc file held by a channel
+     * @param channel  Channel holding the .rsrc file. It's read with positioned
+     *                 reads, and closed when the storage is.
+     * @return  {@code ChannelStorage} over the whole file
+     */
+    static ChannelStorage open(SeekableByteChannel channel) throws IOException
+    {
+        long size = channel.size();
+
+        ByteBuffer signature = ByteBuffer.allocate(0x10);
+        read(channel, 0x00, signature);
+        long headerOffset = getHeaderOffset(signature, size);
+
+        byte[] header = new byte[(int) (size - headerOffset)];
+        read(channel, headerOffset, ByteBuffer.wrap(header));
+        return new ChannelStorage(channel, size, headerOffset, header);
+    }
+
+    @Override
+    public void transferTo(long offset, long length, WritableByteChannel target) throws IOException
+    {
+        if (!(_channel instanceof FileChannel))
+        {
+            super.transferTo(offset, length, target);
+            return;
+        }
+
+        // Let the OS copy straight from the file
+        long position = offset;
+        long end = offset + length;
+        while (position < end)
+        {
+            long transferred = ((FileChannel) _channel).transferTo(position, end - position, target);
+            if (transferred <= 0)
+            {
+                throw new EOFException("File was truncated while it was open");
+            }
+            position += transferred;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _channel.close();
+    }
+
+    @Override
+    void read(long position, ByteBuffer dst) throws IOException
+    {
+        read(_channel, position, dst);
+    }
+
+    /**
+     * Fills a buffer from a channel
+     * @param channel  Channel holding the file
+     * @param position  Offset in the file to read from
+     * @param dst  Buffer to fill, from its position up to its limit
+     */
+    private static void read(SeekableByteChannel channel, long position, ByteBuffer dst) throws IOException
+    {
+        if (channel instanceof FileChannel)
+        {
+            // FileChannel has positioned reads, which don't disturb the channel's position
+            FileChannel fileChannel = (FileChannel) channel;
+            while (dst.hasRemaining())
+            {
+                int read = fileChannel.read(dst, position);
+                if (read < 0)
+                {
+                    throw new EOFException("Unexpected end of file at offset " + position);
+                }
+                position += read;
+            }
+            return;
+        }
+
+        synchronized (channel)
+        {
+            channel.position(position);
+            while (dst.hasRemaining())
+            {
+                if (channel.read(dst) < 0)
+                {
+                    throw new EOFException("Unexpected end of file at offset " + channel.position());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.apophenic.rsrclib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Identifies the bytes a {@link RsrcFile} holds: the path, modification time and size of the file
+ * they were read from. Two {@code RsrcFile}s reading the same unchanged file have equal identities,
+ * so a {@link ResourceCache} can share entries between them. Bytes that have been edited in memory,
+ * or weren't read from a file at all, get an identity equal only to itself.
+ */
+final class FileIdentity
+{
+    /** absolute path of the file, or the {@code RsrcFile} itself if it wasn't read from a file */
+    private final Object _source;
+
+    /** the file's modification time, in milliseconds */
+    private final long _modified;
+
+    /** the file's size, in bytes */
+    private final long _size;
+
+    /** true if these bytes are the file's, so other {@code RsrcFile}s reading it share this identity */
+    private final boolean _shared;
+
+    private FileIdentity(Object source, long modified, long size, boolean shared)
+    {
+        this._source = source;
+        this._modified = modified;
+        this._size = size;
+        this._shared = shared;
+    }
+
+    /**
+     * Returns the identity of a file's bytes as they are now
+     * @param rsrc  The {@code RsrcFile} reading the file
+     * @param file  The file, or null if {@code rsrc} wasn't read from one
+     */
+    static FileIdentity of(RsrcFile rsrc, File file)
+    {
+        if (file != null)
+        {
+            try
+            {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                return new FileIdentity(file.getAbsolutePath(), attributes.lastModifiedTime().toMillis(),
+                                        attributes.size(), true);
+            }
+            catch (IOException e)
+            {
+                // Can't tell whether the file has changed, so share nothing
+                return new FileIdentity(file.getAbsolutePath(), -1, -1, false);
+            }
+        }
+
+        return new FileIdentity(rsrc, -1, -1, false);
+    }
+
+    /** Returns a new identity for this file's bytes once they've been edited in memory */
+    FileIdentity edited()
+    {
+        return new FileIdentity(_source, _modified, _size, false);
+    }
+
+    /** Returns the absolute path of the file, or the {@code RsrcFile} if it wasn't read from a file */
+    Object getSource()
+    {
+        return _source;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+        {
+            return true;
+        }
+        if (!_shared || !(o instanceof FileIdentity))
+        {
+            return false;
+        }
+
+        FileIdentity other = (FileIdentity) o;
+        return other._shared && _source.equals(other._source) && _modified == other._modified && _size == other._size;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _shared ? Objects.hash(_source, _modified, _size) : System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return _shared ? _source + "@" + _modified : _source + " (edited)";
+    }
+}
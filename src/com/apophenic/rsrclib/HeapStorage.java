@@ -0,0 +1,97 @@
+package com.apophenic.rsrclib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link RsrcStorage} backed by a single {@code byte[]} holding the entire file
+ */
+class HeapStorage implements RsrcStorage
+{
+    /** file bytes */
+    private final byte[] _data;
+
+    HeapStorage(byte[] data)
+    {
+        this._data = data;
+    }
+
+    @Override
+    public long size()
+    {
+        return _data.length;
+    }
+
+    @Override
+    public byte get(long offset)
+    {
+        return _data[index(offset)];
+    }
+
+    @Override
+    public int getInt(long offset)
+    {
+        int index = index(offset);
+        return ((_data[index] & 0xFF) << 24) | ((_data[index + 1] & 0xFF) << 16) |
+               ((_data[index + 2] & 0xFF) << 8) | (_data[index + 3] & 0xFF);
+    }
+
+    @Override
+    public void get(long offset, byte[] dst, int dstOffset, int length)
+    {
+        System.arraycopy(_data, index(offset), dst, dstOffset, length);
+    }
+
+    @Override
+    public void get(long offset, ByteBuffer dst, int length)
+    {
+        dst.put(_data, index(offset), length);
+    }
+
+    @Override
+    public ByteBuffer slice(long offset, int length)
+    {
+        return ByteBuffer.wrap(_data, index(offset), length).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void put(long offset, byte[] src, int srcOffset, int length)
+    {
+        System.arraycopy(src, srcOffset, _data, index(offset), length);
+    }
+
+    @Override
+    public void transferTo(long offset, long length, WritableByteChannel target) throws IOException
+    {
+        RsrcStorage.writeFully(target, ByteBuffer.wrap(_data, index(offset), index(length)));
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return false;
+    }
+
+    @Override
+    public byte[] toByteArray()
+    {
+        // A snapshot may still be read from this array, so it's never handed out
+        return _data.clone();
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    /** Returns an offset as an index into the array, which an offset past its end can't be cast to safely */
+    private int index(long offset)
+    {
+        if (offset < 0 || offset > _data.length)
+        {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is outside the file");
+        }
+        return (int) offset;
+    }
+}
@@ -0,0 +1,265 @@
+package com.apophenic.rsrclib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link RsrcStorage} backed by a memory mapping of the file. Nothing is read
+ * up front; pages are only loaded by the OS as they're touched.
+ * <p>
+ * A single mapping can't be larger than 2 GB, so the file is mapped in chunks of
+ * 1 GB each. Ranges that lie within one chunk are read straight from its mapping;
+ * the rare range that straddles two chunks is pieced together from both.
+ */
+class MappedStorage implements RsrcStorage
+{
+    /** log2 of the size of each mapping */
+    private static final int CHUNK_SHIFT = 30;
+
+    /** mappings of consecutive chunks of the file, each 1 << _chunkShift bytes but the last */
+    private final MappedByteBuffer[] _chunks;
+
+    /** log2 of the size of each chunk */
+    private final int _chunkShift;
+
+    /** size of the file */
+    private final long _size;
+
+    /** channel the mappings were made from, kept to copy unmodified ranges straight from the file */
+    private final FileChannel _channel;
+
+    /** true if the mappings are {@link FileChannel.MapMode#READ_ONLY} */
+    private final boolean _readOnly;
+
+    /** true once a (copy-on-write) mapping has been written to, so it no longer matches the file */
+    private boolean _dirty;
+
+    private MappedStorage(MappedByteBuffer[] chunks, int chunkShift, long size, FileChannel channel, boolean readOnly)
+    {
+        this._chunks = chunks;
+        this._chunkShift = chunkShift;
+        this._size = size;
+        this._channel = channel;
+        this._readOnly = readOnly;
+    }
+
+    /**
+     * Maps the given file into memory
+     * @param file  The file to map
+     * @param mode  Either {@link FileChannel.MapMode#READ_ONLY} or
+     *              {@link FileChannel.MapMode#PRIVATE} (copy-on-write, changes
+     *              are never written back to the file)
+     * @return  {@code MappedStorage} over the whole file
+     */
+    static MappedStorage map(File file, FileChannel.MapMode mode) throws IOException
+    {
+        return map(file, mode, CHUNK_SHIFT);
+    }
+
+    /**
+     * Maps the given file into memory in chunks of the given size
+     * @param file  The file to map
+     * @param mode  Either {@link FileChannel.MapMode#READ_ONLY} or {@link FileChannel.MapMode#PRIVATE}
+     * @param chunkShift  log2 of the size of each chunk, at most 30
+     * @return  {@code MappedStorage} over the whole file
+     */
+    static MappedStorage map(File file, FileChannel.MapMode mode, int chunkShift) throws IOException
+    {
+        if (mode != FileChannel.MapMode.READ_ONLY && mode != FileChannel.MapMode.PRIVATE)
+        {
+            throw new IllegalArgumentException("Only READ_ONLY and PRIVATE mappings are supported");
+        }
+
+        // PRIVATE mappings need a channel opened for writing, though the file itself is never modified
+        RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+        FileChannel channel = raf.getChannel();
+        try
+        {
+            long size = channel.size();
+            long chunkSize = 1L << chunkShift;
+
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) >>> chunkShift)];
+            for (int c = 0; c < chunks.length; c++)
+            {
+                long position = (long) c << chunkShift;
+                chunks[c] = channel.map(mode, position, Math.min(chunkSize, size - position));
+            }
+            return new MappedStorage(chunks, chunkShift, size, channel, mode == FileChannel.MapMode.READ_ONLY);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long size()
+    {
+        return _size;
+    }
+
+    @Override
+    public byte get(long offset)
+    {
+        return chunk(offset).get(within(offset));
+    }
+
+    @Override
+    public int getInt(long offset)
+    {
+        ByteBuffer chunk = chunk(offset);
+        int within = within(offset);
+        if (within <= chunk.capacity() - 0x04)
+        {
+            return chunk.getInt(within);
+        }
+
+        // Straddles two chunks
+        return ((get(offset) & 0xFF) << 24) | ((get(offset + 1) & 0xFF) << 16) |
+               ((get(offset + 2) & 0xFF) << 8) | (get(offset + 3) & 0xFF);
+    }
+
+    @Override
+    public void get(long offset, byte[] dst, int dstOffset, int length)
+    {
+        while (length > 0)
+        {
+            ByteBuffer view = chunk(offset).duplicate();
+            view.position(within(offset));
+            int count = Math.min(length, view.remaining());
+            view.get(dst, dstOffset, count);
+
+            offset += count;
+            dstOffset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void get(long offset, ByteBuffer dst, int length)
+    {
+        while (length > 0)
+        {
+            int count = Math.min(length, chunk(offset).capacity() - within(offset));
+            dst.put(slice(offset, count));
+
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Returns a read-only view of a range of the mapping. A range that straddles
+     * two chunks has to be copied into a new buffer instead.
+     */
+    @Override
+    public ByteBuffer slice(long offset, int length)
+    {
+        if (length == 0)
+        {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+
+        ByteBuffer chunk = chunk(offset);
+        int within = within(offset);
+        if (within <= chunk.capacity() - length)
+        {
+            ByteBuffer view = chunk.asReadOnlyBuffer();
+            view.limit(within + length);
+            view.position(within);
+            return view.slice();
+        }
+
+        byte[] copy = new byte[length];
+        get(offset, copy, 0x00, length);
+        return ByteBuffer.wrap(copy).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void put(long offset, byte[] src, int srcOffset, int length)
+    {
+        while (length > 0)
+        {
+            ByteBuffer view = chunk(offset).duplicate();
+            view.position(within(offset));
+            int count = Math.min(length, view.remaining());
+            view.put(src, srcOffset, count);
+
+            offset += count;
+            srcOffset += count;
+            length -= count;
+        }
+        _dirty = true;
+    }
+
+    @Override
+    public void transferTo(long offset, long length, WritableByteChannel target) throws IOException
+    {
+        long end = offset + length;
+        if (_dirty)
+        {
+            // A chunk at a time, so nothing's copied
+            while (offset < end)
+            {
+                int count = (int) Math.min(end - offset, chunk(offset).capacity() - within(offset));
+                RsrcStorage.writeFully(target, slice(offset, count));
+                offset += count;
+            }
+            return;
+        }
+
+        // The file still matches the mapping, so let the OS copy straight from it
+        while (offset < end)
+        {
+            long transferred = _channel.transferTo(offset, end - offset, target);
+            if (transferred <= 0)
+            {
+                throw new IOException("File was truncated while it was mapped");
+            }
+            offset += transferred;
+        }
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return _readOnly;
+    }
+
+    @Override
+    public byte[] toByteArray()
+    {
+        byte[] data = new byte[RsrcStorage.arraySize(_size)];
+        get(0, data, 0, data.length);
+        return data;
+    }
+
+    /** Closes the channel the mappings were made from. The mappings themselves stay valid. */
+    @Override
+    public void close() throws IOException
+    {
+        _channel.close();
+    }
+
+    /** Returns the mapping of the chunk holding the given offset */
+    private MappedByteBuffer chunk(long offset)
+    {
+        if (offset < 0 || offset >= _size)
+        {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is outside the file");
+        }
+        return _chunks[(int) (offset >>> _chunkShift)];
+    }
+
+    /** Returns where the given offset is within its chunk */
+    private int within(long offset)
+    {
+        return (int) (offset & ((1L << _chunkShift) - 1));
+    }
+}
@@ -0,0 +1,74 @@
+package com.apophenic.rsrclib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a batch of tasks in parallel for {@link RsrcExporter}, {@link RsrcCatalog} and
+ * {@link RsrcSearch}, turning whatever a task throws back into the {@code IOException}
+ * the caller would have seen had it done the work itself.
+ */
+final class ParallelTasks
+{
+    private ParallelTasks()
+    {
+    }
+
+    /**
+     * Runs every task and waits for them all to finish
+     * @param tasks  The tasks to run
+     * @param executor  Executor to run on, which is left running afterwards, or null to
+     *                  run on a pool of {@code parallelism} threads that's shut down afterwards
+     * @param parallelism  Number of threads, if no executor is given
+     * @param what  What the tasks are doing, such as "Export", for the exception's message
+     * @return  Each task's result, in the order the tasks were given
+     * @throws IOException  The first {@code IOException} thrown by a task, or unwrapped from an
+     *                      {@code UncheckedIOException}; anything else a task throws is its cause
+     */
+    static <T> List<T> invokeAll(List<Callable<T>> tasks, ExecutorService executor, int parallelism, String what)
+            throws IOException
+    {
+        ExecutorService pool = (executor != null) ? executor : new ForkJoinPool(parallelism);
+        List<T> results = new ArrayList<>(tasks.size());
+        try
+        {
+            for (Future<T> task : pool.invokeAll(tasks))
+            {
+                results.add(task.get());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(what + " was interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException)
+            {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(what + " failed", cause);
+        }
+        finally
+        {
+            if (pool != executor)
+            {
+                pool.shutdown();
+            }
+        }
+        return results;
+    }
+}
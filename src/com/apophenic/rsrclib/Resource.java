@@ -1,19 +1,41 @@
 package com.apophenic.rsrclib;
 
-import java.nio.ByteBuffer;
-import java.util.Arrays;
-
+import java.util.Objects;
+
+/**
+ * A resource's entry in the header: its ID, type and where its data is.
+ * <p>
+ * Two {@code Resource}s are equal if they have the same type and ID, so a {@code Resource}
+ * still identifies the same resource after edits have moved it, and the {@code Resource}s
+ * created on demand by {@link ResourceLinkedList} can be compared and used as keys.
+ */
 public class Resource
 {
+    /**
+     * The largest offset a header entry can hold, as can the signature. Offsets are stored in 4 bytes,
+     * read unsigned, so a .rsrc file can be up to 4 GB, plus the header and the last resource.
+     */
+    static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+    /**
+     * The largest offset a header entry can hold in the format's original layout, which gives the offset
+     * in 3 bytes after the resource's attribute byte. Files with more data than that use all 4 bytes for
+     * the offset instead, and so have no attributes, see {@link #hasWideOffsets}.
+     */
+    static final long MAX_NARROW_OFFSET = 0xFFFFFF;
+
     /** The resource ID, as represented in the .rsrc file */
     private int _id;
 
     /** The offset location this resource begins in the .rsrc file */
-    private int _startOffset;
+    private long _startOffset;
 
     /** The data type this resource is */
     private ResourceType _type;
 
+    /** Where this resource's entry is found, relative to the start of the header, or -1 if unknown */
+    private int _entryOffset = -1;
+
     /**
      * Creates a new {@link Resource} object, representing meta data
      * for resources embedded in .rsrc files
@@ -22,6 +44,7 @@ public class Resource
      *              The format is 3A 99 FF FF 00 34 2D 96 00 00 00 00,
      *              where the first two bytes are the ID, the next two are
      *              stop bytes, and the last 8 are the resource's offset.
+     *              Only the first 4 of those hold the offset, unsigned.
      * @param type  The {@link ResourceType} of this {@code Resource}
      */
     public Resource(byte[] data, ResourceType type)
@@ -33,12 +56,38 @@ public class Resource
 
         pointer += 0x03;    // Skip stop bytes (0xFF, 0xFF)
 
-        _startOffset = ((data[pointer] & 0xFF) << 56) | ((data[pointer+=1] & 0xFF) << 48) |
-                       ((data[pointer+=1] & 0xFF) << 40) | ((data[pointer+=1] & 0xFF) << 32) |
-                       ((data[pointer+=1] & 0xFF) << 24) | ((data[pointer+=1] & 0xFF) << 16) |
+        _startOffset = ((long) (data[pointer] & 0xFF) << 24) | ((data[pointer+=1] & 0xFF) << 16) |
                        ((data[pointer+=1] & 0xFF) << 8) | (data[pointer+=1] & 0xFF);
     }
 
+    /**
+     * Creates a new {@link Resource} object, representing meta data
+     * for resources embedded in .rsrc files
+     * @param data  The 14 bytes that represent this resource,
+     *              see {@link #Resource(byte[], ResourceType)}
+     * @param type  The {@link ResourceType} of this {@code Resource}
+     * @param entryOffset  Where {@code data} was found, relative to the start of the header.
+     *                     Since the header only ever moves as a whole, this doesn't
+     *                     change when other resources are edited.
+     */
+    public Resource(byte[] data, ResourceType type, int entryOffset)
+    {
+        this(data, type);
+
+        this._entryOffset = entryOffset;
+    }
+
+    /**
+     * Returns true if a file with its header at the given offset gives each resource's offset in all
+     * 4 bytes of its entry, rather than in 3 after the resource's attribute byte. Only files whose
+     * data doesn't fit in 3 byte offsets do.
+     * @param headerOffset  Where the file's header begins
+     */
+    static boolean hasWideOffsets(long headerOffset)
+    {
+        return headerOffset - 0x100 > MAX_NARROW_OFFSET;
+    }
+
     /** Returns the {@code int32} representation of this resource's ID */
     public int getResourceID()
     {
@@ -48,11 +97,11 @@ public class Resource
     /** Returns the {@code byte[]} representation of this resource's ID */
     public byte[] getResourceIDBytes()
     {
-        return Arrays.copyOfRange(ByteBuffer.allocate(4).putInt(_id).array(), 0x02, 0x04);
+        return new byte[]{(byte) (_id >>> 8), (byte) _id};
     }
 
-    /** Returns the {@code int32} representation of this resource's offset in the file */
-    public int getStartOffset()
+    /** Returns this resource's offset in the file, which may be anywhere up to {@code 0xFFFFFFFF} */
+    public long getStartOffset()
     {
         return _startOffset;
     }
@@ -60,30 +109,79 @@ public class Resource
     /** Returns the {@code byte[]} representation of this resource's offset in the file */
     public byte[] getStartOffsetBytes()
     {
-        return ByteBuffer.allocate(8).putInt(_startOffset).array();
+        // Only the first 4 of the 8 offset bytes are used
+        return new byte[]{(byte) (_startOffset >>> 24), (byte) (_startOffset >>> 16),
+                          (byte) (_startOffset >>> 8), (byte) _startOffset, 0x00, 0x00, 0x00, 0x00};
     }
 
-    /** Moves where this resource's offset begins in the file */
-    public void shiftStartOffset(int shiftValue)
+    /**
+     * Moves where this resource's offset begins in the file. This only changes this
+     * {@code Resource}, not the header table it came from; edits made through a
+     * {@link RsrcFile} move resources themselves.
+     */
+    public void shiftStartOffset(long shiftValue)
     {
         _startOffset += shiftValue;
     }
 
+    /**
+     * Creates a {@link Resource} from a header table entry that's already been read
+     * @param id  The resource's ID
+     * @param type  The resource's type
+     * @param startOffset  The resource's offset, see {@link #getStartOffset()}
+     * @param entryOffset  Where the resource's entry is, see {@link #getEntryOffset()}
+     */
+    Resource(int id, ResourceType type, long startOffset, int entryOffset)
+    {
+        this._id = id;
+        this._type = type;
+        this._startOffset = startOffset;
+        this._entryOffset = entryOffset;
+    }
+
     /** Returns this {@code Resource}'s offset location where the data bytes begin */
-    public int getDataOffset()
+    public long getDataOffset()
     {
         return _startOffset + 0x104;
     }
 
     /** Returns this {@code Resource}'s offset location where the resource length in bytes is indicated */
-    public int getLengthOffset()
+    public long getLengthOffset()
     {
         return getDataOffset() - 0x04;
     }
 
+    /**
+     * Returns where this resource's entry is found, relative to the start of the header,
+     * or -1 if this {@code Resource} wasn't read from a header
+     */
+    public int getEntryOffset()
+    {
+        return _entryOffset;
+    }
+
     /** Returns the resource's data type */
     public ResourceType getType()
     {
         return _type;
     }
+
+    /** Returns true if the given object is a {@code Resource} with the same type and ID */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof Resource))
+        {
+            return false;
+        }
+
+        Resource other = (Resource) o;
+        return _id == other._id && Objects.equals(_type, other._type);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * ((_type != null) ? _type.hashCode() : 0) + _id;
+    }
 }
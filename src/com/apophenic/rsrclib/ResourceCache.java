@@ -0,0 +1,354 @@
+package com.apophenic.rsrclib;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Keeps decoded resources, such as images decoded from PNG or ICNS resources, so each one
+ * is only decoded once however often it's asked for. One cache can serve any number of
+ * {@link RsrcFile}s, and can be shared between threads.
+ * <p>
+ * Entries are keyed by the resource's ID and type, and by the identity of the file it was read
+ * from: its path, modification time and size. So two {@code RsrcFile}s opened on the same file
+ * share entries, and an {@code RsrcFile} that's reloaded after its file changed doesn't see the
+ * old ones. Once a file is edited in memory its resources are cached separately from the file's.
+ * <p>
+ * The cache holds up to a maximum total weight, as measured by a weigher, usually the decoded
+ * value's size in bytes. Past that, the least recently used entries are evicted. Values can also
+ * be held through soft references, see {@link #setSoftValues}, so they're dropped under memory
+ * pressure rather than causing it.
+ * <p>
+ * Entries for resources replaced through {@link RsrcEdit} or {@link RsrcFile#saveResourceData}
+ * are invalidated as soon as the replacement is made, see {@link ResourceListener}.
+ * @param <V>  Type of the decoded values
+ */
+public class ResourceCache<V>
+{
+    /** entries in the order they were last used, least recent first */
+    private final LinkedHashMap<Key, Entry<V>> _entries = new LinkedHashMap<>(0x10, 0.75f, true);
+
+    /** softly held values that have been cleared, so their entries can be removed */
+    private final ReferenceQueue<V> _cleared = new ReferenceQueue<>();
+
+    /** invalidates entries for resources replaced in any file this cache has read from */
+    private final ResourceListener _listener = this::invalidate;
+
+    /** files _listener has been registered with, held weakly so the cache doesn't keep them reachable */
+    private final Set<RsrcFile> _listening = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /** the most the cache holds, in total weight */
+    private final long _maxWeight;
+
+    /** measures each value's weight */
+    private final ToIntFunction<? super V> _weigher;
+
+    /** true if values added are held through soft references */
+    private boolean _softValues;
+
+    /** total weight of all entries */
+    private long _weight;
+
+    private long _hitCount;
+
+    private long _missCount;
+
+    /** number of invalidations so far, so a value decoded across one isn't cached */
+    private volatile long _invalidations;
+
+    /**
+     * Creates a new, empty {@link ResourceCache}
+     * @param maxWeight  The most the cache holds, in total weight
+     * @param weigher  Measures a decoded value's weight, usually its size in bytes.
+     *                 Values heavier than {@code maxWeight} aren't cached.
+     */
+    public ResourceCache(long maxWeight, ToIntFunction<? super V> weigher)
+    {
+        if (maxWeight < 0)
+        {
+            throw new IllegalArgumentException("Maximum weight can't be negative");
+        }
+
+        this._maxWeight = maxWeight;
+        this._weigher = weigher;
+    }
+
+    /**
+     * Holds values added from now on through soft references, so the garbage collector may clear
+     * them when memory runs low. A cleared value counts as a miss. Defaults to false.
+     * @param softValues  true to hold values softly
+     * @return  This {@code ResourceCache}
+     */
+    public synchronized ResourceCache<V> setSoftValues(boolean softValues)
+    {
+        this._softValues = softValues;
+        return this;
+    }
+
+    /**
+     * Returns the decoded resource, decoding and caching it first if it isn't cached.
+     * <p>
+     * Decoding happens without holding the cache's lock, so it never holds up other lookups, but
+     * two threads missing on the same resource at once may both decode it.
+     * @param rsrc  The file to read the resource from
+     * @param id  The resource's ID
+     * @param type  The resource's type
+     * @param decoder  Decodes the resource's data, as returned by {@link RsrcFile#loadResourceData}
+     * @return  The decoded resource, or null if there's no such resource or the decoder returned null
+     */
+    public V get(RsrcFile rsrc, int id, ResourceType type, Function<? super byte[], ? extends V> decoder)
+    {
+        synchronized (_listening)
+        {
+            // Registered once per file, so lookups don't scan the file's listeners each time
+            if (_listening.add(rsrc))
+            {
+                rsrc.addResourceListener(_listener);
+            }
+        }
+
+        // Read before the resource, so an edit made while it's being decoded is sure to be noticed
+        long invalidations = _invalidations;
+
+        RsrcSnapshot snapshot = rsrc.getSnapshot();
+        Resource res = snapshot.getResourceByID(id, type);
+        if (res == null)
+        {
+            return null;
+        }
+
+        Key key = new Key(snapshot.getIdentity(), type, id);
+        synchronized (this)
+        {
+            removeCleared();
+
+            Entry<V> entry = _entries.get(key);
+            V value = (entry != null) ? entry.getValue() : null;
+            if (value != null)
+            {
+                _hitCount++;
+                return value;
+            }
+
+            _missCount++;
+        }
+
+        V value = decoder.apply(RsrcFile.loadResourceData(snapshot, res));
+        if (value != null)
+        {
+            put(key, value, invalidations);
+        }
+        return value;
+    }
+
+    /** Caches a decoded value, unless the cache was invalidated after it started being decoded */
+    private synchronized void put(Key key, V value, long invalidations)
+    {
+        int weight = _weigher.applyAsInt(value);
+        if (weight < 0)
+        {
+            throw new IllegalStateException("Weigher returned a negative weight");
+        }
+        if (weight > _maxWeight || invalidations != _invalidations)
+        {
+            return;
+        }
+
+        removeEntry(_entries.put(key, new Entry<>(key, value, weight, _softValues, _cleared)));
+        _weight += weight;
+
+        // Evict the least recently used entries until the cache is back under its maximum
+        Iterator<Entry<V>> iterator = _entries.values().iterator();
+        while (_weight > _maxWeight && iterator.hasNext())
+        {
+            Entry<V> eldest = iterator.next();
+            iterator.remove();
+            removeEntry(eldest);
+        }
+    }
+
+    /**
+     * Discards the cached value for a resource, as it is currently in the given file
+     * @param rsrc  The file the resource was read from
+     * @param id  The resource's ID
+     * @param type  The resource's type
+     */
+    public synchronized void invalidate(RsrcFile rsrc, int id, ResourceType type)
+    {
+        _invalidations++;
+        removeEntry(_entries.remove(new Key(rsrc.getSnapshot().getIdentity(), type, id)));
+    }
+
+    /**
+     * Discards the cached values for resources that were replaced. Entries read from any
+     * {@code RsrcFile} over the same file are discarded too, since the file itself may have
+     * been written to.
+     */
+    private synchronized void invalidate(RsrcFile rsrc, Collection<Resource> resources)
+    {
+        _invalidations++;
+
+        Set<Long> replaced = new HashSet<>();
+        for (Resource res : resources)
+        {
+            replaced.add(pack(res.getType(), res.getResourceID()));
+        }
+
+        Object source = rsrc.getSnapshot().getIdentity().getSource();
+        Iterator<Entry<V>> iterator = _entries.values().iterator();
+        while (iterator.hasNext())
+        {
+            Entry<V> entry = iterator.next();
+            Key key = entry._key;
+            if (key._identity.getSource().equals(source) && replaced.contains(pack(key._type, key._id)))
+            {
+                iterator.remove();
+                removeEntry(entry);
+            }
+        }
+    }
+
+    /** Discards every cached value */
+    public synchronized void invalidateAll()
+    {
+        _invalidations++;
+        _entries.clear();
+        _weight = 0;
+    }
+
+    /** Returns the number of cached values, which may include softly held values cleared only moments ago */
+    public synchronized int size()
+    {
+        removeCleared();
+        return _entries.size();
+    }
+
+    /** Returns the total weight of all cached values */
+    public synchronized long getWeight()
+    {
+        removeCleared();
+        return _weight;
+    }
+
+    /** Returns the most the cache holds, in total weight */
+    public long getMaxWeight()
+    {
+        return _maxWeight;
+    }
+
+    /** Returns the number of lookups that found a cached value */
+    public synchronized long getHitCount()
+    {
+        return _hitCount;
+    }
+
+    /** Returns the number of lookups that had to decode the resource */
+    public synchronized long getMissCount()
+    {
+        return _missCount;
+    }
+
+    /** Removes entries whose softly held values have been cleared. Only call this holding the lock. */
+    private void removeCleared()
+    {
+        Object cleared;
+        while ((cleared = _cleared.poll()) != null)
+        {
+            Entry<?> entry = (Entry<?>) cleared;
+
+            // The entry may already have been replaced or removed
+            if (_entries.get(entry._key) == entry)
+            {
+                _entries.remove(entry._key);
+                _weight -= entry._weight;
+            }
+        }
+    }
+
+    /** Accounts for an entry that's been taken out of the map. Only call this holding the lock. */
+    private void removeEntry(Entry<V> entry)
+    {
+        if (entry != null)
+        {
+            _weight -= entry._weight;
+
+            // Its value may still be cleared later, and mustn't be counted again
+            entry.clear();
+        }
+    }
+
+    private static long pack(ResourceType type, int id)
+    {
+        return ((long) type.getCode() << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    /** identifies a resource in a particular state of a particular file */
+    private static final class Key
+    {
+        private final FileIdentity _identity;
+
+        private final ResourceType _type;
+
+        private final int _id;
+
+        Key(FileIdentity identity, ResourceType type, int id)
+        {
+            this._identity = identity;
+            this._type = type;
+            this._id = id;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return _id == other._id && _type.equals(other._type) && _identity.equals(other._identity);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(_identity, _type, _id);
+        }
+    }
+
+    /** a cached value, held strongly or through the soft reference this entry is */
+    private static final class Entry<V> extends SoftReference<V>
+    {
+        private final Key _key;
+
+        private final int _weight;
+
+        /** the value if it's held strongly, or null */
+        private final V _value;
+
+        Entry(Key key, V value, int weight, boolean soft, ReferenceQueue<V> queue)
+        {
+            super(soft ? value : null, soft ? queue : null);
+
+            this._key = key;
+            this._weight = weight;
+            this._value = soft ? null : value;
+        }
+
+        /** Returns the value, or null if it was held softly and has been cleared */
+        V getValue()
+        {
+            return (_value != null) ? _value : get();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.apophenic.rsrclib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A byte-level delta between two versions of a resource's data: a list of instructions that
+ * rebuild the new version by copying ranges of the old one and inserting new bytes in between.
+ * <p>
+ * The old version is indexed by the hash of every aligned 16 byte block, then a rolling hash
+ * is slid across the new version looking for blocks the old one has, in the manner of rsync.
+ * Each match is extended as far as it goes in both directions, so an edit in the middle of
+ * a resource costs about as much as the edit, wherever it moved the rest of the data to.
+ * <p>
+ * A delta is the new version's length, then each instruction: a copy is written as twice its
+ * length, then the offset in the old version to copy from; an insert as twice its length plus
+ * one, then the bytes to insert. Every number is an unsigned variable-length integer, so longer
+ * runs are split into instructions of at most {@link #MAX_RUN} bytes.
+ */
+final class ResourceDelta
+{
+    /** length of the blocks the old version is indexed by, and the shortest copy that's found */
+    private static final int BLOCK = 0x10;
+
+    /** longest run a single instruction covers, so twice its length plus one fits in an int */
+    private static final int MAX_RUN = 0x3FFFFFFF;
+
+    /** longest version a delta can rebuild, the most a byte[] can hold */
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 0x08;
+
+    /** multiplier of the rolling hash */
+    private static final int BASE = 0x01000193;
+
+    /** BASE to the power BLOCK - 1, to take a byte's contribution back out of the rolling hash */
+    private static final int BASE_POW;
+
+    static
+    {
+        int pow = 1;
+        for (int i = 1; i < BLOCK; i++)
+        {
+            pow *= BASE;
+        }
+        BASE_POW = pow;
+    }
+
+    private ResourceDelta()
+    {
+    }
+
+    /**
+     * Computes a delta that rebuilds {@code target} from {@code base}
+     * @param base  The old version
+     * @param target  The new version
+     * @return  The delta, see {@link #apply}
+     */
+    static byte[] encode(byte[] base, byte[] target)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, target.length);
+
+        ResourceIndex blocks = new ResourceIndex();
+        for (int offset = 0; offset + BLOCK <= base.length; offset += BLOCK)
+        {
+            blocks.put(hash(base, offset), offset);
+        }
+
+        int literalStart = 0;
+        int pointer = 0;
+        int hash = (target.length >= BLOCK) ? hash(target, 0) : 0;
+
+        while (pointer + BLOCK <= target.length)
+        {
+            int candidate = blocks.get(hash);
+            if (candidate >= 0 && matches(base, candidate, target, pointer))
+            {
+                // Grow the match backwards over bytes not yet written, then forwards as far as it goes
+                int baseStart = candidate;
+                int targetStart = pointer;
+                while (targetStart > literalStart && baseStart > 0 && base[baseStart - 1] == target[targetStart - 1])
+                {
+                    baseStart--;
+                    targetStart--;
+                }
+
+                int length = pointer - targetStart + BLOCK;
+                while (targetStart + length < target.length && baseStart + length < base.length &&
+                       base[baseStart + length] == target[targetStart + length])
+                {
+                    length++;
+                }
+
+                writeInsert(out, target, literalStart, targetStart);
+                for (int copied = 0; copied < length; )
+                {
+                    int run = Math.min(length - copied, MAX_RUN);
+                    writeVarInt(out, run << 1);
+                    writeVarInt(out, baseStart + copied);
+                    copied += run;
+                }
+
+                pointer = targetStart + length;
+                literalStart = pointer;
+                if (pointer + BLOCK <= target.length)
+                {
+                    hash = hash(target, pointer);
+                }
+                continue;
+            }
+
+            // Slide the window along by a byte
+            if (pointer + BLOCK < target.length)
+            {
+                hash = (hash - (target[pointer] & 0xFF) * BASE_POW) * BASE + (target[pointer + BLOCK] & 0xFF);
+            }
+            pointer++;
+        }
+
+        writeInsert(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuilds the new version of a resource's data from the old version and a delta
+     * @param base  The old version
+     * @param delta  A delta made by {@link #encode}
+     * @return  The new version
+     * @throws IOException  If the delta is corrupt, or doesn't fit the old version
+     */
+    static byte[] apply(byte[] base, byte[] delta) throws IOException
+    {
+        int[] pointer = {0};
+        int length = readVarInt(delta, pointer);
+
+        // Every instruction takes at least 2 bytes to copy at most all of the old version, or a byte
+        // more than it inserts, so a length past what the rest of the delta can rebuild is corrupt
+        long remaining = delta.length - pointer[0];
+        long reachable = remaining + remaining / 2 * base.length;
+        if (length < 0 || length > MAX_LENGTH || length > reachable)
+        {
+            throw new IOException("Delta is corrupt: it claims to rebuild " + Integer.toUnsignedLong(length) +
+                                  " bytes");
+        }
+
+        byte[] target = new byte[length];
+        int position = 0;
+
+        try
+        {
+            while (pointer[0] < delta.length)
+            {
+                int instruction = readVarInt(delta, pointer);
+                int run = instruction >>> 1;
+
+                if ((instruction & 0x01) == 0)
+                {
+                    System.arraycopy(base, readVarInt(delta, pointer), target, position, run);
+                }
+                else
+                {
+                    System.arraycopy(delta, pointer[0], target, position, run);
+                    pointer[0] += run;
+                }
+                position += run;
+            }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new IOException("Delta is corrupt, or was made from different data", e);
+        }
+
+        if (position != target.length)
+        {
+            throw new IOException("Delta is corrupt: it rebuilt " + position + " of " + target.length + " bytes");
+        }
+        return target;
+    }
+
+    /** Returns the hash of the block starting at the given offset, the same as the rolling hash computes */
+    private static int hash(byte[] data, int offset)
+    {
+        int hash = 0;
+        for (int i = 0; i < BLOCK; i++)
+        {
+            hash = hash * BASE + (data[offset + i] & 0xFF);
+        }
+        return hash;
+    }
+
+    /** Returns true if a block of the old version really does match the new, not just its hash */
+    private static boolean matches(byte[] base, int baseOffset, byte[] target, int targetOffset)
+    {
+        for (int i = 0; i < BLOCK; i++)
+        {
+            if (base[baseOffset + i] != target[targetOffset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes an insert of the given range of the new version, if it isn't empty, split into runs */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int start, int end)
+    {
+        while (end > start)
+        {
+            int run = Math.min(end - start, MAX_RUN);
+            writeVarInt(out, run << 1 | 0x01);
+            out.write(target, start, run);
+            start += run;
+        }
+    }
+
+    /** Writes an unsigned int 7 bits at a time, low bits first, with the high bit set on all but the last byte */
+    private static void writeVarInt(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads an unsigned int written by {@link #writeVarInt}
+     * @param data  The bytes to read from
+     * @param pointer  Holds the offset to read from, which is moved past the int
+     */
+    private static int readVarInt(byte[] data, int[] pointer) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            if (pointer[0] >= data.length)
+            {
+                throw new IOException("Delta is corrupt: it ends part way through a number");
+            }
+
+            byte b = data[pointer[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Delta is corrupt: a number is too long");
+    }
+}
@@ -0,0 +1,88 @@
+package com.apophenic.rsrclib;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single resource in a {@link RsrcFile}, as streamed by {@link RsrcFile#resources()}:
+ * its type, ID, where its data is and how long it is, and, if it was streamed by
+ * {@link RsrcFile#resourcesWithData()}, a read-only view of the data itself.
+ */
+public final class ResourceEntry
+{
+    /** The resource's entry in the header */
+    private final Resource _res;
+
+    /** The offset location the resource's data begins in the .rsrc file */
+    private final long _dataOffset;
+
+    /** The resource's length, in bytes */
+    private final int _length;
+
+    /** A read-only view of the resource's data, or null if it wasn't streamed with its data */
+    private final ByteBuffer _data;
+
+    ResourceEntry(Resource res, int length, ByteBuffer data)
+    {
+        this._res = res;
+        this._dataOffset = res.getDataOffset();
+        this._length = length;
+        this._data = data;
+    }
+
+    /** Returns the resource's entry in the header, which can be passed to the {@link RsrcFile} it came from */
+    public Resource getResource()
+    {
+        return _res;
+    }
+
+    /** Returns the resource's data type */
+    public ResourceType getType()
+    {
+        return _res.getType();
+    }
+
+    /** Returns the {@code int32} representation of the resource's ID */
+    public int getResourceID()
+    {
+        return _res.getResourceID();
+    }
+
+    /** Returns the offset location where the resource's data bytes begin in the file */
+    public long getDataOffset()
+    {
+        return _dataOffset;
+    }
+
+    /** Returns the resource's length (number of bytes) */
+    public int getLength()
+    {
+        return _length;
+    }
+
+    /** Returns true if the resource was streamed with its data, see {@link RsrcFile#resourcesWithData()} */
+    public boolean hasData()
+    {
+        return _data != null;
+    }
+
+    /**
+     * Returns a read-only view of the resource's data. Each call returns a new view, positioned at 0.
+     * For a memory mapped file, or one read onto the heap, the view shares the file's bytes rather
+     * than copying them.
+     * @throws IllegalStateException  If the resource wasn't streamed with its data
+     */
+    public ByteBuffer getData()
+    {
+        if (_data == null)
+        {
+            throw new IllegalStateException("Resource was streamed without its data, use resourcesWithData()");
+        }
+        return _data.duplicate();
+    }
+
+    @Override
+    public String toString()
+    {
+        return _res.getType() + " " + _res.getResourceID() + " (" + _length + " bytes at " + _dataOffset + ")";
+    }
+}
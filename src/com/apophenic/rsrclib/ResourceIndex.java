@@ -0,0 +1,113 @@
+package com.apophenic.rsrclib;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index from resource ID to the position of that resource
+ * in a {@link ResourceLinkedList}. Keys and values are kept in primitive arrays,
+ * so lookups never box the ID or allocate.
+ */
+class ResourceIndex
+{
+    /** marks an empty slot in _positions */
+    private static final int EMPTY = -1;
+
+    /** resource IDs, only meaningful where _positions isn't EMPTY */
+    private int[] _ids;
+
+    /** list position of the resource with the ID in the same slot of _ids */
+    private int[] _positions;
+
+    /** number of IDs indexed */
+    private int _size;
+
+    ResourceIndex()
+    {
+        allocate(16);
+    }
+
+    /**
+     * Indexes a resource ID. If the ID is already indexed, the
+     * existing position is kept, matching a front to back search.
+     * @param id  The resource's ID
+     * @param position  The resource's position in its list
+     */
+    void put(int id, int position)
+    {
+        // Keep the table at most half full so probe sequences stay short
+        if ((_size + 1) * 2 > _ids.length)
+        {
+            rehash(_ids.length * 2);
+        }
+
+        int slot = findSlot(id);
+        if (_positions[slot] == EMPTY)
+        {
+            _ids[slot] = id;
+            _positions[slot] = position;
+            _size++;
+        }
+    }
+
+    /**
+     * Looks up a resource ID
+     * @param id  The resource's ID
+     * @return  The resource's position in its list, or -1 if it isn't indexed
+     */
+    int get(int id)
+    {
+        return _positions[findSlot(id)];
+    }
+
+    /** Removes every ID from the index */
+    void clear()
+    {
+        Arrays.fill(_positions, EMPTY);
+        _size = 0;
+    }
+
+    /** Returns the slot holding the given ID, or the empty slot it would be placed in */
+    private int findSlot(int id)
+    {
+        int mask = _ids.length - 1;
+        int slot = hash(id) & mask;
+
+        while (_positions[slot] != EMPTY && _ids[slot] != id)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /** Spreads sequential IDs, which are the norm, across the table */
+    private static int hash(int id)
+    {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity)
+    {
+        _ids = new int[capacity];
+        _positions = new int[capacity];
+        Arrays.fill(_positions, EMPTY);
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] ids = _ids;
+        int[] positions = _positions;
+
+        allocate(capacity);
+        for (int i = 0; i < ids.length; i++)
+        {
+            if (positions[i] != EMPTY)
+            {
+                int slot = findSlot(ids[i]);
+                _ids[slot] = ids[i];
+                _positions[slot] = positions[i];
+            }
+        }
+    }
+}
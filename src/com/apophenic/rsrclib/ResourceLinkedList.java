@@ -1,51 +1,347 @@
 package com.apophenic.rsrclib;
 
-import com.sun.javafx.scene.control.skin.VirtualFlow.ArrayLinkedList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.function.LongUnaryOperator;
 
 /**
- * A custom implementation of {@link ArrayLinkedList<Resource>}
+ * A list of the {@link Resource}s of one type, indexed by resource ID so lookups by ID are fast.
+ * <p>
+ * Resources aren't stored as objects: each one's ID and offset are kept in primitive arrays,
+ * and a {@code Resource} is created on demand whenever one is asked for. So holding the header
+ * table of a file with hundreds of thousands of resources costs a few bytes per resource, and
+ * building it creates no garbage. Since each call returns a new {@code Resource}, compare them
+ * with {@link Resource#equals}, not {@code ==}.
  */
-public class ResourceLinkedList extends ArrayLinkedList<Resource>
+public class ResourceLinkedList extends AbstractList<Resource> implements RandomAccess
 {
+    /** the type of every resource in the list, or null until one is added */
+    private ResourceType _type;
+
+    /** resource IDs, in the order they're listed in the header */
+    private int[] _ids;
+
+    /** resource offsets, in the same order, kept as the 4 unsigned bytes the header stores them in */
+    private int[] _startOffsets;
+
     /**
-     * Searches for a {@link Resource} based on its ID
-     * @param o  {@code int} resource's ID
-     * @return  {@code Resource} matching this ID
+     * where each resource's entry is, relative to the start of the header, or null while
+     * the entries are laid out one after another from _firstEntryOffset, as they are when parsed
+     */
+    private int[] _entryOffsets;
+
+    /** where the first resource's entry is, relative to the start of the header */
+    private int _firstEntryOffset;
+
+    /** number of resources in the list */
+    private int _size;
+
+    /** true while IDs are in ascending order, so they can be binary searched without an index */
+    private boolean _sorted = true;
+
+    /** resource ID to position, built the first time an ID is looked up in a list that isn't sorted */
+    private volatile ResourceIndex _index;
+
+    /** true if this list is a view that can't be changed, see {@link #asReadOnly()} */
+    private boolean _readOnly;
+
+    public ResourceLinkedList()
+    {
+        this(null, 8);
+    }
+
+    /**
+     * @param type  The type of every resource in the list
+     * @param capacity  Number of resources the list will hold
+     */
+    ResourceLinkedList(ResourceType type, int capacity)
+    {
+        this._type = type;
+        this._ids = new int[Math.max(capacity, 1)];
+        this._startOffsets = new int[_ids.length];
+    }
+
+    /**
+     * Appends a {@link Resource} to the end of this list
+     * @param res  The resource to append
+     * @throws IllegalArgumentException  If the resource's type isn't the same as the list's
+     * @throws UnsupportedOperationException  If the list belongs to a {@link RsrcFile}'s header table
      */
+    public void addLast(Resource res)
+    {
+        checkWritable();
+        if (_type == null)
+        {
+            _type = res.getType();
+        }
+        else if (!res.getType().equals(_type))
+        {
+            throw new IllegalArgumentException("Can't add a " + res.getType() + " resource to a list of " + _type);
+        }
+
+        addLast(res.getResourceID(), res.getStartOffset(), res.getEntryOffset());
+    }
+
+    /**
+     * Appends a resource to the end of this list, without creating a {@link Resource}
+     * @param id  The resource's ID
+     * @param startOffset  The resource's offset, see {@link Resource#getStartOffset()}
+     * @param entryOffset  Where the resource's entry is, see {@link Resource#getEntryOffset()}
+     * @throws IllegalArgumentException  If the offset is more than {@link Resource#MAX_OFFSET}
+     */
+    void addLast(int id, long startOffset, int entryOffset)
+    {
+        checkWritable();
+        if (startOffset < 0 || startOffset > Resource.MAX_OFFSET)
+        {
+            throw new IllegalArgumentException("Resource " + id + " is at offset " + startOffset +
+                                               ", which a header entry can't hold");
+        }
+
+        if (_size == _ids.length)
+        {
+            _ids = Arrays.copyOf(_ids, _size * 2);
+            _startOffsets = Arrays.copyOf(_startOffsets, _size * 2);
+            if (_entryOffsets != null)
+            {
+                _entryOffsets = Arrays.copyOf(_entryOffsets, _size * 2);
+            }
+        }
+
+        if (_size == 0)
+        {
+            _firstEntryOffset = entryOffset;
+        }
+        else if (_entryOffsets == null && entryOffset != _firstEntryOffset + 0x0C * _size)
+        {
+            // No longer one after another, so each has to be kept
+            _entryOffsets = new int[_ids.length];
+            for (int i = 0; i < _size; i++)
+            {
+                _entryOffsets[i] = _firstEntryOffset + 0x0C * i;
+            }
+        }
+
+        if (_size > 0 && id < _ids[_size - 1])
+        {
+            _sorted = false;
+        }
+
+        ResourceIndex index = _index;
+        if (index != null)
+        {
+            index.put(id, _size);
+        }
+
+        _ids[_size] = id;
+        _startOffsets[_size] = (int) startOffset;
+        if (_entryOffsets != null)
+        {
+            _entryOffsets[_size] = entryOffset;
+        }
+        _size++;
+        modCount++;
+    }
+
     @Override
-    public int indexOf (Object o)
+    public boolean add(Resource res)
+    {
+        addLast(res);
+        return true;
+    }
+
+    /**
+     * Searches for a {@link Resource} based on its ID
+     * @param id  The resource's ID
+     * @return  {@code Resource} matching this ID, or null if there isn't one
+     */
+    public Resource getByID(int id)
     {
-        for (Resource res : this)
+        int index = indexOf(id);
+        return (index < 0) ? null : get(index);
+    }
+
+    /**
+     * Searches for a {@link Resource} based on its ID
+     * @param id  The resource's ID
+     * @return  Index of the first {@code Resource} matching this ID, or -1 if there isn't one
+     */
+    public int indexOf(int id)
+    {
+        if (_sorted)
         {
-            if (res.getResourceID() == (int) o)
+            // The first of any duplicates, matching a front to back search
+            int low = 0;
+            int high = _size;
+            while (low < high)
             {
-                return super.indexOf(res);
+                int mid = (low + high) >>> 1;
+                if (_ids[mid] < id)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
             }
+            return (low < _size && _ids[low] == id) ? low : -1;
         }
-        return -1;
+
+        ResourceIndex index = _index;
+        if (index == null)
+        {
+            // Concurrent readers may each build one, they're all the same
+            index = new ResourceIndex();
+            for (int i = 0; i < _size; i++)
+            {
+                index.put(_ids[i], i);
+            }
+            _index = index;
+        }
+        return index.get(id);
     }
 
     /**
      * Searches for a {@link Resource} based on its ID
-     * @param o  {@code int} resource's ID
+     * @param id  The resource's ID
      * @return  true if this list contains the ID, false otherwise
      */
+    public boolean contains(int id)
+    {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * Searches for a {@link Resource} based on its ID
+     * @param o  {@code Integer} resource's ID, or a {@code Resource}
+     * @return  Index of the {@code Resource} matching this ID
+     */
     @Override
-    public boolean contains(Object o)
+    public int indexOf(Object o)
     {
-        for (Resource res : this)
+        if (o instanceof Resource)
         {
-            if (res.getResourceID() == (int) o)
-            {
-                return true;
-            }
+            Resource res = (Resource) o;
+            return res.getType().equals(_type) ? indexOf(res.getResourceID()) : -1;
         }
-        return false;
+        return (o instanceof Integer) ? indexOf((int) o) : -1;
     }
 
+    /**
+     * Searches for a {@link Resource} based on its ID
+     * @param o  {@code Integer} resource's ID, or a {@code Resource}
+     * @return  true if this list contains the ID, false otherwise
+     */
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf(o) >= 0;
+    }
+
+    /** Returns a new {@link Resource} for the resource at the given index, or null if there isn't one */
     @Override
     public Resource get(int index)
     {
-        return (index < this.size()) ? super.get(index) : null;
+        return (index >= 0 && index < _size) ? new Resource(_ids[index], _type, getStartOffset(index),
+                                                            getEntryOffset(index)) : null;
+    }
+
+    /** Returns the ID of the resource at the given index */
+    int getID(int index)
+    {
+        return _ids[index];
+    }
+
+    /** Returns the offset of the resource at the given index, see {@link Resource#getStartOffset()} */
+    long getStartOffset(int index)
+    {
+        return Integer.toUnsignedLong(_startOffsets[index]);
+    }
+
+    /** Returns where the entry of the resource at the given index is, see {@link Resource#getEntryOffset()} */
+    int getEntryOffset(int index)
+    {
+        return (_entryOffsets != null) ? _entryOffsets[index] : _firstEntryOffset + 0x0C * index;
+    }
+
+    /** Returns the type of every resource in the list, or null if nothing has been added to it */
+    ResourceType getType()
+    {
+        return _type;
+    }
+
+    /**
+     * Returns a copy of this list with every resource's offset moved
+     * @param shift  Maps each resource's offset to its new offset
+     */
+    ResourceLinkedList withStartOffsets(LongUnaryOperator shift)
+    {
+        ResourceLinkedList copy = new ResourceLinkedList(_type, _size);
+        copy._ids = Arrays.copyOf(_ids, _size);
+        copy._startOffsets = new int[_size];
+        for (int i = 0; i < _size; i++)
+        {
+            copy._startOffsets[i] = (int) shift.applyAsLong(getStartOffset(i));
+        }
+        copy._entryOffsets = (_entryOffsets != null) ? Arrays.copyOf(_entryOffsets, _size) : null;
+        copy._firstEntryOffset = _firstEntryOffset;
+        copy._size = _size;
+        copy._sorted = _sorted;
+        return copy;
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns a view of this list that can't be changed, sharing its contents rather than copying
+     * them. Lists in a published header table are never changed, so the view never changes either.
+     */
+    ResourceLinkedList asReadOnly()
+    {
+        if (_readOnly)
+        {
+            return this;
+        }
+
+        ResourceLinkedList view = new ResourceLinkedList(_type, 0);
+        view._ids = _ids;
+        view._startOffsets = _startOffsets;
+        view._entryOffsets = _entryOffsets;
+        view._firstEntryOffset = _firstEntryOffset;
+        view._size = _size;
+        view._sorted = _sorted;
+        view._index = _index;
+        view._readOnly = true;
+        return view;
+    }
+
+    /** Throws if this list is a view that can't be changed */
+    private void checkWritable()
+    {
+        if (_readOnly)
+        {
+            throw new UnsupportedOperationException("Header table lists can't be changed, use RsrcEdit or RsrcWriter");
+        }
+    }
+
+    /**
+     * Removes every resource from this list
+     * @throws UnsupportedOperationException  If the list belongs to a {@link RsrcFile}'s header table
+     */
+    @Override
+    public void clear()
+    {
+        checkWritable();
+        _index = null;
+        _entryOffsets = null;
+        _sorted = true;
+        _size = 0;
+        modCount++;
     }
 }
@@ -0,0 +1,16 @@
+package com.apophenic.rsrclib;
+
+import java.util.Collection;
+
+/**
+ * Notified when resources in a {@link RsrcFile} are replaced, see {@link RsrcFile#addResourceListener}
+ */
+public interface ResourceListener
+{
+    /**
+     * Called once an edit to a {@link RsrcFile} has been applied, and its new data can be read
+     * @param rsrc  The file that was edited
+     * @param resources  The resources whose data was replaced
+     */
+    void resourcesChanged(RsrcFile rsrc, Collection<Resource> resources);
+}
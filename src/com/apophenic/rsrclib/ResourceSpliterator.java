@@ -0,0 +1,162 @@
+package com.apophenic.rsrclib;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over every resource in a {@link RsrcSnapshot}, in the order they're
+ * listed in the header: each type's resources in turn. Backs {@link RsrcFile#resources()}.
+ * <p>
+ * A resource's position counts through each type's list in turn, as it does in the snapshot,
+ * and each spliterator covers a range of positions. A range spanning several types is split at
+ * the type boundary nearest its middle, so each half parses only its own types' entries, and a
+ * range within one type is split in half by index. Sizes come from the header's type list, so
+ * they're exact before anything is parsed.
+ */
+final class ResourceSpliterator implements Spliterator<ResourceEntry>
+{
+    private final RsrcSnapshot _snapshot;
+
+    /** position of each type's first resource, then the total number of resources; shared between splits */
+    private final int[] _starts;
+
+    /** true if each entry carries a view of its resource's data */
+    private final boolean _withData;
+
+    /** position of the next resource to traverse */
+    private int _origin;
+
+    /** position after the last resource to traverse */
+    private final int _fence;
+
+    /**
+     * @param snapshot  The snapshot to traverse
+     * @param withData  If true, each entry carries a view of its resource's data
+     */
+    ResourceSpliterator(RsrcSnapshot snapshot, boolean withData)
+    {
+        this._snapshot = snapshot;
+        this._withData = withData;
+
+        _starts = new int[snapshot.getTypeCount() + 1];
+        for (int t = 0; t < snapshot.getTypeCount(); t++)
+        {
+            _starts[t + 1] = _starts[t] + snapshot.getResourceCount(t);
+        }
+        _fence = _starts[_starts.length - 1];
+    }
+
+    private ResourceSpliterator(RsrcSnapshot snapshot, int[] starts, boolean withData, int origin, int fence)
+    {
+        this._snapshot = snapshot;
+        this._starts = starts;
+        this._withData = withData;
+        this._origin = origin;
+        this._fence = fence;
+    }
+
+    /** Returns the position in the type list of the type holding the resource at the given position */
+    private int typeOf(int position)
+    {
+        // The last type starting at or before the position; types with no resources start where the next does
+        int low = 0;
+        int high = _starts.length - 2;
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+            if (_starts[mid] <= position)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ResourceEntry> action)
+    {
+        if (_origin >= _fence)
+        {
+            return false;
+        }
+
+        int t = typeOf(_origin);
+        action.accept(entry(_snapshot.getList(t), _origin - _starts[t]));
+        _origin++;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super ResourceEntry> action)
+    {
+        // A type at a time, looking up each list once
+        int position = _origin;
+        _origin = _fence;
+
+        while (position < _fence)
+        {
+            int t = typeOf(position);
+            ResourceLinkedList list = _snapshot.getList(t);
+            int end = Math.min(_fence, _starts[t + 1]);
+            for (; position < end; position++)
+            {
+                action.accept(entry(list, position - _starts[t]));
+            }
+        }
+    }
+
+    /** Creates the entry for the resource at the given index of a type's list */
+    private ResourceEntry entry(ResourceLinkedList list, int index)
+    {
+        Resource res = list.get(index);
+        int length = _snapshot.getResourceLength(res);
+        return new ResourceEntry(res, length,
+                                 _withData ? _snapshot.getStorage().slice(res.getDataOffset(), length) : null);
+    }
+
+    @Override
+    public Spliterator<ResourceEntry> trySplit()
+    {
+        if (_fence - _origin < 2)
+        {
+            return null;
+        }
+
+        int mid = (_origin + _fence) >>> 1;
+        int first = typeOf(_origin);
+        int last = typeOf(_fence - 1);
+        if (first != last)
+        {
+            // Split at whichever type boundary is nearest the middle
+            int boundary = _starts[first + 1];
+            for (int t = first + 2; t <= last; t++)
+            {
+                if (Math.abs(_starts[t] - mid) < Math.abs(boundary - mid))
+                {
+                    boundary = _starts[t];
+                }
+            }
+            mid = boundary;
+        }
+
+        ResourceSpliterator prefix = new ResourceSpliterator(_snapshot, _starts, _withData, _origin, mid);
+        _origin = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return _fence - _origin;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+}
@@ -1,19 +1,295 @@
 package com.apophenic.rsrclib;
 
-public enum ResourceType
+import java.util.Arrays;
+
+/**
+ * A resource type, identified by its four character code (FourCC) packed big-endian into an int,
+ * the way it's stored in the file. The common types are constants of this class; any other code
+ * found in a file becomes a type of its own, with its code's case and spacing kept exactly, so
+ * every file can be read and written back unchanged.
+ * <p>
+ * Types with the same code are equal. A type with a constant's code is always that constant,
+ * so a type can be compared with a constant using {@code ==}. The first {@link #MAX_INTERNED}
+ * other codes seen are shared the same way, so looking them up again never allocates. Past
+ * that, each lookup creates a new instance, so a damaged type list naming thousands of codes
+ * can't grow the table without bound; compare such types with {@link #equals}.
+ */
+public final class ResourceType implements Comparable<ResourceType>
 {
-    ALIS, ALRT, APPL, BNDL, CLCN, CLUT, CODE, CURS, DITL, DLOG, FREF, HFDR, ICL8, ICNS, ICON, KIND, MBAR, MDEF, MOOV,
-    OPEN, PICT, PREF, SND, STR, STYL, TEXT, TEMPL, VERS, WDEF, WIND,
-    PNG;
+    /** most codes, besides the constants', that are kept and shared */
+    static final int MAX_INTERNED = 0x400;
+
+    /** the constants and the first codes seen, sorted by code; replaced as a whole when a type is added */
+    private static volatile ResourceType[] _interned = new ResourceType[0];
+
+    /** the types declared as constants, in the order they're declared */
+    private static final ResourceType[] KNOWN;
+
+    public static final ResourceType ALIS = known("ALIS", "alis");
+    public static final ResourceType ALRT = known("ALRT", "ALRT");
+    public static final ResourceType APPL = known("APPL", "APPL");
+    public static final ResourceType BNDL = known("BNDL", "BNDL");
+    public static final ResourceType CLCN = known("CLCN", "CLCN");
+    public static final ResourceType CLUT = known("CLUT", "clut");
+    public static final ResourceType CODE = known("CODE", "CODE");
+    public static final ResourceType CURS = known("CURS", "CURS");
+    public static final ResourceType DITL = known("DITL", "DITL");
+    public static final ResourceType DLOG = known("DLOG", "DLOG");
+    public static final ResourceType FREF = known("FREF", "FREF");
+    public static final ResourceType HFDR = known("HFDR", "hfdr");
+    public static final ResourceType ICL8 = known("ICL8", "icl8");
+    public static final ResourceType ICNS = known("ICNS", "icns");
+    public static final ResourceType ICON = known("ICON", "ICON");
+    public static final ResourceType KIND = known("KIND", "kind");
+    public static final ResourceType MBAR = known("MBAR", "MBAR");
+    public static final ResourceType MDEF = known("MDEF", "MDEF");
+    public static final ResourceType MOOV = known("MOOV", "moov");
+    public static final ResourceType OPEN = known("OPEN", "open");
+    public static final ResourceType PICT = known("PICT", "PICT");
+    public static final ResourceType PREF = known("PREF", "PREF");
+    public static final ResourceType SND = known("SND", "snd ");
+    public static final ResourceType STR = known("STR", "STR ");
+    public static final ResourceType STYL = known("STYL", "styl");
+    public static final ResourceType TEXT = known("TEXT", "TEXT");
+    public static final ResourceType TEMPL = known("TEMPL", "TMPL");
+    public static final ResourceType VERS = known("VERS", "vers");
+    public static final ResourceType WDEF = known("WDEF", "WDEF");
+    public static final ResourceType WIND = known("WIND", "WIND");
+    public static final ResourceType PNG = known("PNG", "PNG ");
+
+    static
+    {
+        KNOWN = _interned.clone();
+        Arrays.sort(KNOWN, (a, b) -> Integer.compare(a._order, b._order));
+    }
+
+    /** the four character code, packed big-endian */
+    private final int _code;
+
+    /** the constant's name, or the code without trailing spaces if it isn't a constant */
+    private final String _name;
+
+    /** position among the declared constants, or -1 if it isn't one */
+    private final int _order;
+
+    private ResourceType(int code, String name, int order)
+    {
+        this._code = code;
+        this._name = name;
+        this._order = order;
+    }
+
+    /** Declares a constant. Constants are interned before any code can be looked up. */
+    private static ResourceType known(String name, String code)
+    {
+        return intern(new ResourceType(pack(code), name, _interned.length));
+    }
 
+    /**
+     * Returns the type with the given four character code
+     * @param code  The code, packed big-endian into an int as it's stored in the file
+     * @return  The constant with that code, or otherwise a type of its own for it,
+     *          shared if it's among the first {@link #MAX_INTERNED} such codes seen
+     */
+    public static ResourceType forCode(int code)
+    {
+        ResourceType[] interned = _interned;
+        int index = indexOf(interned, code);
+        if (index >= 0)
+        {
+            return interned[index];
+        }
+
+        String name = unpack(code);
+        int end = name.length();
+        while (end > 0 && name.charAt(end - 1) == ' ')
+        {
+            end--;
+        }
+        ResourceType type = new ResourceType(code, (end > 0) ? name.substring(0, end) : name, -1);
+        return (interned.length < KNOWN.length + MAX_INTERNED) ? intern(type) : type;
+    }
+
+    /**
+     * Returns the type with the given four character code
+     * @param code  The code, such as "snd " or "icns", exactly as it's stored in the file
+     * @throws IllegalArgumentException  If the code isn't four ISO-8859-1 characters
+     */
+    public static ResourceType forCode(String code)
+    {
+        return forCode(pack(code));
+    }
+
+    /**
+     * Returns the type with the four character code in the given bytes
+     * @param data  The code's 4 bytes, as they're stored in the file
+     */
     public static ResourceType getValue(byte[] data)
     {
-        String type = "";
-        for (byte b : data)
+        if (data.length != 0x04)
+        {
+            throw new IllegalArgumentException("A type code is 4 bytes, not " + data.length);
+        }
+
+        return forCode((data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF));
+    }
+
+    /**
+     * Returns the constant with the given name, such as "PNG" or "SND"
+     * @throws IllegalArgumentException  If there's no constant with that name
+     */
+    public static ResourceType valueOf(String name)
+    {
+        for (ResourceType type : KNOWN)
+        {
+            if (type._name.equals(name))
+            {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("No resource type constant named " + name);
+    }
+
+    /** Returns the types declared as constants, in the order they're declared */
+    public static ResourceType[] values()
+    {
+        return KNOWN.clone();
+    }
+
+    /**
+     * Adds a type to the table, unless another thread added one with the same code first,
+     * or the table is full, in which case the type is returned without being added
+     */
+    private static synchronized ResourceType intern(ResourceType type)
+    {
+        ResourceType[] interned = _interned;
+        int index = indexOf(interned, type._code);
+        if (index >= 0)
+        {
+            return interned[index];
+        }
+        if (type._order < 0 && interned.length >= KNOWN.length + MAX_INTERNED)
+        {
+            return type;
+        }
+
+        int insert = -index - 1;
+        ResourceType[] newInterned = new ResourceType[interned.length + 1];
+        System.arraycopy(interned, 0, newInterned, 0, insert);
+        System.arraycopy(interned, insert, newInterned, insert + 1, interned.length - insert);
+        newInterned[insert] = type;
+
+        _interned = newInterned;
+        return type;
+    }
+
+    /**
+     * Binary searches types sorted by code
+     * @return  The index of the type with the given code, or {@code -(insertion point) - 1} if there isn't one
+     */
+    private static int indexOf(ResourceType[] types, int code)
+    {
+        int low = 0;
+        int high = types.length - 1;
+
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int midCode = types[mid]._code;
+            if (midCode < code)
+            {
+                low = mid + 1;
+            }
+            else if (midCode > code)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    private static int pack(String code)
+    {
+        if (code.length() != 0x04)
         {
-            type += (char) b;
+            throw new IllegalArgumentException("A type code is 4 characters, not \"" + code + "\"");
         }
 
-        return ResourceType.valueOf(type.toUpperCase().trim());
+        int packed = 0;
+        for (int i = 0; i < 0x04; i++)
+        {
+            char c = code.charAt(i);
+            if (c > 0xFF)
+            {
+                throw new IllegalArgumentException("Type code \"" + code + "\" isn't ISO-8859-1");
+            }
+            packed = packed << 8 | c;
+        }
+        return packed;
+    }
+
+    private static String unpack(int code)
+    {
+        return new String(new char[]{(char) (code >>> 24), (char) (code >>> 16 & 0xFF), (char) (code >>> 8 & 0xFF),
+                                     (char) (code & 0xFF)});
+    }
+
+    /** Returns the four character code, packed big-endian into an int as it's stored in the file */
+    public int getCode()
+    {
+        return _code;
+    }
+
+    /** Returns the four character code exactly as it's stored in the file, such as "snd " */
+    public String getCodeString()
+    {
+        return unpack(_code);
+    }
+
+    /** Returns true if this type is one of the constants declared by this class */
+    public boolean isKnown()
+    {
+        return _order >= 0;
+    }
+
+    /**
+     * Returns the name of this type: the constant's name, such as "SND",
+     * or for any other type its code without trailing spaces
+     */
+    public String name()
+    {
+        return _name;
+    }
+
+    /** Orders types by their codes */
+    @Override
+    public int compareTo(ResourceType other)
+    {
+        return Integer.compare(_code, other._code);
+    }
+
+    /** Returns true if the other type has the same code */
+    @Override
+    public boolean equals(Object o)
+    {
+        return o == this || (o instanceof ResourceType && ((ResourceType) o)._code == _code);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _code;
+    }
+
+    /** Returns {@link #name()} */
+    @Override
+    public String toString()
+    {
+        return _name;
     }
 }
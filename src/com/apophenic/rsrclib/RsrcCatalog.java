@@ -0,0 +1,523 @@
+package com.apophenic.rsrclib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A persistent index of the resources in many .rsrc files, so questions like
+ * "which files contain PICT 128" can be answered without reopening every file.
+ * <p>
+ * {@link #scan} walks a directory tree in parallel, reading only the header of each
+ * .rsrc file (see {@link RsrcFile#RsrcFile(Path)}) and recording the type, ID, data
+ * offset and length of every resource. Files whose size and modification time haven't
+ * changed since they were last scanned are skipped. {@link #save} writes the catalog
+ * to its index file, from which it's loaded the next time it's created.
+ * <p>
+ * With {@link #setHashContents}, every resource's data is read and hashed as well, so
+ * {@link #findDuplicates()} can find identical resources across every cataloged file.
+ */
+public class RsrcCatalog
+{
+    /** "RCAT", marks the start of an index file */
+    private static final int MAGIC = 0x52434154;
+
+    /** version of the index file format */
+    private static final int VERSION = 1;
+
+    /** file the catalog is loaded from and saved to */
+    private final Path _indexFile;
+
+    /** what's been recorded for each file, keyed by absolute path */
+    private final Map<Path, FileRecord> _files = new ConcurrentHashMap<>();
+
+    /** which files in a scanned directory tree are .rsrc files */
+    private PathMatcher _matcher = FileSystems.getDefault().getPathMatcher("glob:**.rsrc");
+
+    /** number of threads a scan uses */
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** true if scans hash every resource's data */
+    private boolean _hashContents;
+
+    /**
+     * Creates a new {@link RsrcCatalog}, loading it from the given index file if it exists
+     * @param indexFile  File the catalog is loaded from and saved to
+     */
+    public RsrcCatalog(Path indexFile) throws IOException
+    {
+        this._indexFile = indexFile;
+
+        if (Files.exists(indexFile))
+        {
+            load();
+        }
+    }
+
+    /**
+     * Sets which files in a scanned directory tree are treated as .rsrc files.
+     * Defaults to those with the ".rsrc" extension.
+     * @param matcher  Matches the files to catalog
+     * @return  This {@code RsrcCatalog}
+     */
+    public RsrcCatalog setFileMatcher(PathMatcher matcher)
+    {
+        this._matcher = matcher;
+        return this;
+    }
+
+    /**
+     * Sets how many files are scanned at once. Defaults to the number of available processors.
+     * @param parallelism  Number of threads
+     * @return  This {@code RsrcCatalog}
+     */
+    public RsrcCatalog setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+
+        this._parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets whether scans hash every resource's data, see {@link RsrcFile#getContentHash(Resource)}.
+     * That means reading every file in full rather than just its header, so it's off by default.
+     * Once it's on, files cataloged without hashes are read again by the next scan even if they
+     * haven't changed.
+     * @param hashContents  true to hash resources' data
+     * @return  This {@code RsrcCatalog}
+     */
+    public RsrcCatalog setHashContents(boolean hashContents)
+    {
+        this._hashContents = hashContents;
+        return this;
+    }
+
+    /**
+     * Catalogs every .rsrc file in a directory tree. Files already in the catalog are
+     * only read again if their size or modification time has changed, and files that
+     * are no longer in the tree are removed from the catalog. Files that can't be read,
+     * such as empty or corrupt ones, are logged and left out, rather than failing the scan.
+     * @param root  Directory to scan
+     * @return  Number of files that were read
+     */
+    public int scan(Path root) throws IOException
+    {
+        Path absoluteRoot = root.toAbsolutePath().normalize();
+
+        Set<Path> found;
+        try (Stream<Path> paths = Files.walk(absoluteRoot))
+        {
+            found = paths.filter(path -> Files.isRegularFile(path) && _matcher.matches(path))
+                         .collect(Collectors.toSet());
+        }
+
+        // Forget files that used to be in this tree but aren't any more
+        _files.keySet().removeIf(path -> path.startsWith(absoluteRoot) && !found.contains(path));
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (Path path : found)
+        {
+            tasks.add(() -> scanFile(path));
+        }
+
+        int read = 0;
+        for (boolean wasRead : ParallelTasks.invokeAll(tasks, null, _parallelism, "Scan"))
+        {
+            if (wasRead)
+            {
+                read++;
+            }
+        }
+
+        return read;
+    }
+
+    /**
+     * Records the resources in a single file, unless it's unchanged since it was last recorded.
+     * A file that can't be read is left out of the catalog, so it's tried again by the next scan.
+     * @param path  Absolute path of the .rsrc file
+     * @return  true if the file was read
+     */
+    private boolean scanFile(Path path) throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        FileRecord existing = _files.get(path);
+        if (existing != null && existing._modified == modified && existing._size == size &&
+            (existing._hashes != null || !_hashContents))
+        {
+            return false;
+        }
+
+        try (RsrcFile rsrc = new RsrcFile(path))
+        {
+            RsrcSnapshot snapshot = rsrc.getSnapshot();
+            if (snapshot.getStorage() == null)
+            {
+                // RsrcFile couldn't read it, and has said so
+                _files.remove(path);
+                return false;
+            }
+
+            FileRecord record = new FileRecord(modified, size, snapshot.getResourceCount(), _hashContents);
+
+            for (int i = 0; i < record._ids.length; i++)
+            {
+                Resource res = snapshot.getResourceInOrder(i);
+                record._types[i] = res.getType();
+                record._ids[i] = res.getResourceID();
+                record._dataOffsets[i] = res.getDataOffset();
+                record._lengths[i] = snapshot.getResourceLength(res);
+                if (record._hashes != null)
+                {
+                    record._hashes[i] = snapshot.getContentHash(res);
+                }
+            }
+
+            _files.put(path, record);
+        }
+        catch (RuntimeException e)
+        {
+            // A damaged header, or a file truncated while it was read, shouldn't stop the rest of the scan
+            Logger.getAnonymousLogger().log(Level.WARNING, "Failed to catalog rsrc file " + path, e);
+            _files.remove(path);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds every cataloged resource with the given type and ID
+     * @param type  The resource's type
+     * @param id  The resource's ID
+     * @return  Matching entries, one per file containing the resource
+     */
+    public List<CatalogEntry> find(ResourceType type, int id)
+    {
+        List<CatalogEntry> found = new ArrayList<>();
+        _files.forEach((path, record) ->
+        {
+            for (int i = 0; i < record._ids.length; i++)
+            {
+                if (record._ids[i] == id && record._types[i].equals(type))
+                {
+                    found.add(record.getEntry(path, i));
+                }
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Finds every cataloged resource of the given type that's at least the given length
+     * @param type  The resources' type
+     * @param minLength  Minimum length of the resources, in bytes
+     * @return  Matching entries
+     */
+    public List<CatalogEntry> findLargerThan(ResourceType type, int minLength)
+    {
+        List<CatalogEntry> found = new ArrayList<>();
+        _files.forEach((path, record) ->
+        {
+            for (int i = 0; i < record._ids.length; i++)
+            {
+                if (record._lengths[i] >= minLength && record._types[i].equals(type))
+                {
+                    found.add(record.getEntry(path, i));
+                }
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Finds every cataloged resource matching a filter
+     * @param filter  Returns true for the entries to keep
+     * @return  Matching entries
+     */
+    public List<CatalogEntry> find(Predicate<CatalogEntry> filter)
+    {
+        List<CatalogEntry> found = new ArrayList<>();
+        _files.forEach((path, record) ->
+        {
+            for (int i = 0; i < record._ids.length; i++)
+            {
+                CatalogEntry entry = record.getEntry(path, i);
+                if (filter.test(entry))
+                {
+                    found.add(entry);
+                }
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Finds resources with identical data, by their content hashes and lengths, across every
+     * file cataloged with {@link #setHashContents} on. Unlike {@link RsrcFile#findDuplicates()},
+     * the resources' bytes aren't compared, but the chance of two different resources of the
+     * same length having the same 64 bit hash is negligible.
+     * @return  Each group of identical resources, ordered by file and then by offset
+     */
+    public List<List<CatalogEntry>> findDuplicates()
+    {
+        Map<Long, List<CatalogEntry>> byHash = new HashMap<>();
+        _files.forEach((path, record) ->
+        {
+            if (record._hashes != null)
+            {
+                for (int i = 0; i < record._ids.length; i++)
+                {
+                    byHash.computeIfAbsent(record._hashes[i], hash -> new ArrayList<>()).add(record.getEntry(path, i));
+                }
+            }
+        });
+
+        Comparator<CatalogEntry> order = Comparator.comparing(CatalogEntry::getFile)
+                                                   .thenComparingLong(CatalogEntry::getDataOffset);
+        List<List<CatalogEntry>> duplicates = new ArrayList<>();
+        for (List<CatalogEntry> group : byHash.values())
+        {
+            if (group.size() > 1)
+            {
+                for (List<CatalogEntry> sameLength : group.stream()
+                        .collect(Collectors.groupingBy(CatalogEntry::getLength)).values())
+                {
+                    if (sameLength.size() > 1)
+                    {
+                        sameLength.sort(order);
+                        duplicates.add(sameLength);
+                    }
+                }
+            }
+        }
+
+        duplicates.sort((a, b) -> order.compare(a.get(0), b.get(0)));
+        return duplicates;
+    }
+
+    /** Returns every file in the catalog */
+    public List<Path> getFiles()
+    {
+        List<Path> files = new ArrayList<>(_files.keySet());
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Returns the number of resources in the catalog, across all files */
+    public int getEntryCount()
+    {
+        int count = 0;
+        for (FileRecord record : _files.values())
+        {
+            count += record._ids.length;
+        }
+        return count;
+    }
+
+    /** Removes every file from the catalog */
+    public void clear()
+    {
+        _files.clear();
+    }
+
+    /**
+     * Writes the catalog to its index file. The index is written to a temporary
+     * file first, then renamed over the old one.
+     */
+    public void save() throws IOException
+    {
+        Path indexFile = _indexFile.toAbsolutePath();
+        Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                write(out);
+            }
+
+            try
+            {
+                Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the index. Types are written by their four character codes, once, in a table
+     * at the start, then each file's entries refer to them by their position in that table.
+     */
+    private void write(DataOutputStream out) throws IOException
+    {
+        Map<ResourceType, Integer> types = new LinkedHashMap<>();
+        for (FileRecord record : _files.values())
+        {
+            for (ResourceType type : record._types)
+            {
+                types.putIfAbsent(type, types.size());
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(types.size());
+        for (ResourceType type : types.keySet())
+        {
+            out.writeInt(type.getCode());
+        }
+
+        out.writeInt(_files.size());
+        for (Map.Entry<Path, FileRecord> file : _files.entrySet())
+        {
+            FileRecord record = file.getValue();
+
+            out.writeUTF(file.getKey().toString());
+            out.writeLong(record._modified);
+            out.writeLong(record._size);
+            out.writeInt(record._ids.length);
+            out.writeBoolean(record._hashes != null);
+
+            for (int i = 0; i < record._ids.length; i++)
+            {
+                out.writeInt(types.get(record._types[i]));
+                out.writeInt(record._ids[i]);
+                out.writeLong(record._dataOffsets[i]);
+                out.writeInt(record._lengths[i]);
+                if (record._hashes != null)
+                {
+                    out.writeLong(record._hashes[i]);
+                }
+            }
+        }
+    }
+
+    /** Reads the index, see {@link #write} */
+    private void load() throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(_indexFile))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                throw new IOException("Not a catalog index, or one written by another version: " + _indexFile);
+            }
+
+            ResourceType[] types = new ResourceType[in.readInt()];
+            for (int i = 0; i < types.length; i++)
+            {
+                types[i] = ResourceType.forCode(in.readInt());
+            }
+
+            int fileCount = in.readInt();
+            for (int f = 0; f < fileCount; f++)
+            {
+                Path path = Paths.get(in.readUTF());
+                long modified = in.readLong();
+                long size = in.readLong();
+                int entryCount = in.readInt();
+                FileRecord record = new FileRecord(modified, size, entryCount, in.readBoolean());
+
+                for (int i = 0; i < record._ids.length; i++)
+                {
+                    record._types[i] = types[in.readInt()];
+                    record._ids[i] = in.readInt();
+                    record._dataOffsets[i] = in.readLong();
+                    record._lengths[i] = in.readInt();
+                    if (record._hashes != null)
+                    {
+                        record._hashes[i] = in.readLong();
+                    }
+                }
+
+                _files.put(path, record);
+            }
+        }
+        catch (IndexOutOfBoundsException | NegativeArraySizeException e)
+        {
+            throw new IOException("Catalog index is corrupt: " + _indexFile, e);
+        }
+    }
+
+    /**
+     * Everything recorded about one .rsrc file. Resources are kept as parallel
+     * arrays rather than as objects, so a large catalog stays compact.
+     */
+    private static class FileRecord
+    {
+        /** the file's modification time, in milliseconds, when it was scanned */
+        private final long _modified;
+
+        /** the file's size, in bytes, when it was scanned */
+        private final long _size;
+
+        private final ResourceType[] _types;
+
+        private final int[] _ids;
+
+        private final long[] _dataOffsets;
+
+        private final int[] _lengths;
+
+        /** content hashes, or null if the file was scanned without hashing */
+        private final long[] _hashes;
+
+        FileRecord(long modified, long size, int entryCount, boolean hashed)
+        {
+            this._modified = modified;
+            this._size = size;
+            this._types = new ResourceType[entryCount];
+            this._ids = new int[entryCount];
+            this._dataOffsets = new long[entryCount];
+            this._lengths = new int[entryCount];
+            this._hashes = hashed ? new long[entryCount] : null;
+        }
+
+        CatalogEntry getEntry(Path path, int index)
+        {
+            return new CatalogEntry(path, _types[index], _ids[index], _dataOffsets[index], _lengths[index],
+                                    _hashes != null, (_hashes != null) ? _hashes[index] : 0);
+        }
+    }
+}
@@ -0,0 +1,923 @@
+package com.apophenic.rsrclib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of resource replacements against a {@link RsrcFile}. Replacements are
+ * only staged until the edit is committed, at which point every new offset is
+ * computed at once and the file is rebuilt in a single pass, writing each byte
+ * once no matter how many resources changed.
+ * <p>
+ * Start an edit with {@link RsrcFile#edit()}, stage replacements with
+ * {@link #replace}, then either {@link #commit()} them to the {@code RsrcFile}
+ * in memory, {@link #save} them over the .rsrc file, {@link #patch} them into the
+ * .rsrc file where it is, or stream the edited file elsewhere with {@link #writeTo}.
+ * <p>
+ * Edits to the same {@code RsrcFile} from different threads are applied one at a time,
+ * and never disturb threads reading from it, see {@link RsrcFile}. A {@code RsrcEdit}
+ * itself should only be used by one thread.
+ */
+public class RsrcEdit
+{
+    /** the file being edited */
+    private final RsrcFile _rsrc;
+
+    /** staged replacement data, keyed by the resource it replaces */
+    private final LinkedHashMap<Resource, byte[]> _replacements = new LinkedHashMap<>();
+
+    RsrcEdit(RsrcFile rsrc)
+    {
+        this._rsrc = rsrc;
+    }
+
+    /**
+     * Stages a replacement for the given resource.
+     * If the resource ID and type don't exist, do nothing.
+     * @param data  {@code byte[]} data to replace resource with
+     * @param id  The ID of the resource to replace
+     * @param type  The {@link ResourceType} of the resource being replaced
+     * @return  This {@code RsrcEdit}
+     */
+    public RsrcEdit replace(byte[] data, int id, ResourceType type)
+    {
+        return replace(data, _rsrc.getResourceByID(id, type));
+    }
+
+    /**
+     * Stages a replacement for the given resource. Staging the same
+     * resource twice keeps only the latest data.
+     * If the resource is null, do nothing.
+     * @param data  {@code byte[]} data to replace resource with
+     * @param res  Resource to replace
+     * @return  This {@code RsrcEdit}
+     */
+    public RsrcEdit replace(byte[] data, Resource res)
+    {
+        if (res != null)
+        {
+            _replacements.put(res, data);
+        }
+        return this;
+    }
+
+    /** Returns the number of resources with a staged replacement */
+    public int getReplacementCount()
+    {
+        return _replacements.size();
+    }
+
+    /** Discards all staged replacements */
+    public void clear()
+    {
+        _replacements.clear();
+    }
+
+    /**
+     * Applies all staged replacements to the {@code RsrcFile} in memory, then clears them.
+     * Call {@link RsrcFile#saveRsrcFile} to update the file.
+     * <p>
+     * The edited file is built in a new array, once, and replaces the old one only when it's
+     * complete, so threads reading from the {@code RsrcFile} carry on undisturbed. If every
+     * replacement is the same length as the resource it replaces, the old bytes are copied
+     * and overwritten; otherwise the file is rebuilt around the replacements. Either way a
+     * memory mapped file, or one read on demand, moves onto the heap.
+     * @throws ReadOnlyBufferException  If the file was mapped {@link FileChannel.MapMode#READ_ONLY}
+     * @throws IllegalStateException  If the edited file would be too large to hold on the heap;
+     *                                {@link #save} or {@link #writeTo} it instead
+     */
+    public void commit()
+    {
+        synchronized (_rsrc)
+        {
+            if (_rsrc.isReadOnly())
+            {
+                throw new ReadOnlyBufferException();
+            }
+
+            RsrcEvents.ResourceEdit event = RsrcEvents.ResourceEdit.start();
+            Plan plan = new Plan(_rsrc.getSnapshot());
+            if (plan._edited.length > 0)
+            {
+                _rsrc.setSnapshot(plan.isSameLength() ? overwrite(plan) : rebuild(plan));
+                _rsrc.setModified(true);
+            }
+
+            _replacements.clear();
+
+            if (plan._edited.length > 0)
+            {
+                _rsrc.fireResourcesChanged(Arrays.asList(plan._edited));
+                event.finish(_rsrc, "commit", plan._edited.length, _rsrc.getSnapshot().getStorage().size(),
+                             plan._entriesPatched);
+            }
+        }
+    }
+
+    /** Copies the file with each replacement written over the resource it replaces, none of which move */
+    private static RsrcSnapshot overwrite(Plan plan)
+    {
+        RsrcSnapshot snapshot = plan._snapshot;
+        byte[] newData = snapshot.getStorage().toByteArray();
+
+        for (Resource res : plan._edited)
+        {
+            byte[] replacement = plan.get(res);
+            System.arraycopy(replacement, 0x00, newData, (int) res.getDataOffset(), replacement.length);
+        }
+
+        return snapshot.withStorage(new HeapStorage(newData), -1);
+    }
+
+    /** Rebuilds the file with every replacement applied, and the header table with every resource that moved */
+    private RsrcSnapshot rebuild(Plan plan)
+    {
+        RsrcSnapshot snapshot = plan._snapshot;
+        long difference = plan.getDifference();
+
+        byte[] newData = new byte[RsrcStorage.arraySize(snapshot.getStorage().size() + difference)];
+        try
+        {
+            write(plan, new ArrayChannel(newData));
+        }
+        catch (IOException e)
+        {
+            // Writing to an array can't fail
+            throw new IllegalStateException(e);
+        }
+
+        // Lists are copied with their offsets moved, rather than changed, since the old snapshot may still be in use
+        Map<ResourceType, ResourceLinkedList> headerTable = new LinkedHashMap<>();
+        for (Map.Entry<ResourceType, ResourceLinkedList> entry : snapshot.getHeaderTable().entrySet())
+        {
+            headerTable.put(entry.getKey(),
+                            entry.getValue().withStartOffsets(startOffset -> startOffset + plan.getShift(startOffset)));
+        }
+
+        return new RsrcSnapshot(new HeapStorage(newData), snapshot.getHeaderOffset() + difference, headerTable, -1);
+    }
+
+    /**
+     * Writes all staged replacements straight into the .rsrc file on disk, then clears them.
+     * Only each resource's length and data are written, with positioned writes, so nothing
+     * else in the file is read or rewritten and the cost is independent of the file's size.
+     * <p>
+     * This only works if no replacement is longer than the resource it replaces. A shorter
+     * replacement is written at the start of the resource's space, with its new length, and
+     * the bytes left over after it stay behind as dead space, see {@link RsrcFile#getDeadSpace()}.
+     * Saving keeps them; only {@link RsrcFile#compact()} reclaims them.
+     * <p>
+     * The {@code RsrcFile} in memory is updated to match. A file read onto the heap is updated
+     * in a copy of its bytes, since readers may still be using the old ones, so each patch costs
+     * a copy of the whole file in memory as well as the write; open a large file that's patched
+     * often with {@link RsrcFile#RsrcFile(Path)} or map it instead.
+     * <p>
+     * Unlike {@link #save}, the file is modified where it is, so a crash part way through
+     * can leave some replacements written and others not.
+     * @return  false, with nothing written, if a replacement is longer than the resource it replaces
+     * @throws ReadOnlyBufferException  If the file was mapped {@link FileChannel.MapMode#READ_ONLY}
+     * @throws IllegalStateException  If the {@code RsrcFile} wasn't created from a file, or has
+     *                                committed edits that haven't been saved
+     * @see #append()
+     */
+    public boolean patch() throws IOException
+    {
+        synchronized (_rsrc)
+        {
+            checkPatchable();
+
+            RsrcEvents.ResourceEdit event = RsrcEvents.ResourceEdit.start();
+            Plan plan = new Plan(_rsrc.getSnapshot());
+            for (Resource res : plan._edited)
+            {
+                if (plan.get(res).length > plan._snapshot.getResourceLength(res))
+                {
+                    return false;
+                }
+            }
+
+            long padding;
+            try (FileChannel channel = FileChannel.open(_rsrc.getRsrcFile().toPath(), StandardOpenOption.WRITE))
+            {
+                padding = writeInPlace(plan, plan._edited, channel);
+                channel.force(false);
+            }
+
+            long deadSpace = plan._snapshot.getKnownDeadSpace();
+            deadSpace = (deadSpace < 0) ? -1 : deadSpace + padding;
+
+            // Keep memory in step with the file. Heap bytes are copied, not written to, since the old snapshot
+            // may still be read from. Storage read on demand reads straight from the file anyway, a private
+            // mapping is simply mapped again. Either way the file has a new identity.
+            File file = _rsrc.getRsrcFile();
+            if (_rsrc.isReadFully())
+            {
+                byte[] newData = plan._snapshot.getStorage().toByteArray();
+                ByteBuffer buffer = ByteBuffer.wrap(newData);
+                for (Resource res : plan._edited)
+                {
+                    buffer.position((int) res.getLengthOffset());
+                    buffer.putInt(plan.get(res).length).put(plan.get(res));
+                }
+                _rsrc.setSnapshot(plan._snapshot.withStorage(new HeapStorage(newData), deadSpace)
+                                                .withIdentity(FileIdentity.of(_rsrc, file)));
+            }
+            else if (!plan._snapshot.getStorage().isReadOnly())
+            {
+                _rsrc.loadRsrcFile(file);
+                _rsrc.getSnapshot().setKnownDeadSpace(deadSpace);
+            }
+            else
+            {
+                RsrcSnapshot snapshot = plan._snapshot.withIdentity(FileIdentity.of(_rsrc, file));
+                snapshot.setKnownDeadSpace(deadSpace);
+                _rsrc.setSnapshot(snapshot);
+            }
+
+            _replacements.clear();
+            _rsrc.fireResourcesChanged(Arrays.asList(plan._edited));
+            event.finish(_rsrc, "patch", plan._edited.length, plan.getReplacementBytes(), 0);
+            return true;
+        }
+    }
+
+    /**
+     * Writes all staged replacements into the .rsrc file on disk without moving anything
+     * already in it, then clears them. Replacements that fit in the resource they replace are
+     * patched in place, see {@link #patch()}. Any that don't are appended to the end of the file,
+     * followed by a new copy of the header with their entries pointed at their new data; the
+     * old data and the old header are left behind as dead space. Finally the file's signature
+     * is switched over to the new header.
+     * <p>
+     * So an edit costs about as much as writing the new data and the header, however large the
+     * file, at the price of the file growing. Use {@link RsrcFile#getDeadSpace()} to see how much
+     * space has been left behind, and {@link RsrcFile#compact()} to reclaim it.
+     * <p>
+     * Until the signature is switched over, the file still describes the old header and data, so
+     * a crash part way through loses appended replacements rather than corrupting the file
+     * (replacements patched in place may or may not have been written). The {@code RsrcFile} then
+     * reopens the file, which replaces every {@link Resource} in its header table; this reads the
+     * whole file again if it was read onto the heap, so open files that are edited this way with
+     * {@link RsrcFile#RsrcFile(Path)}, or map them.
+     * @throws ReadOnlyBufferException  If the file was mapped {@link FileChannel.MapMode#READ_ONLY}
+     * @throws IllegalStateException  If the {@code RsrcFile} wasn't created from a file, or has
+     *                                committed edits that haven't been saved
+     */
+    public void append() throws IOException
+    {
+        synchronized (_rsrc)
+        {
+            checkPatchable();
+
+            Plan plan = new Plan(_rsrc.getSnapshot());
+            RsrcSnapshot snapshot = plan._snapshot;
+            RsrcStorage data = snapshot.getStorage();
+
+            List<Resource> inPlace = new ArrayList<>();
+            List<Resource> appended = new ArrayList<>();
+            long end = data.size();
+            for (Resource res : plan._edited)
+            {
+                if (plan.get(res).length > snapshot.getResourceLength(res))
+                {
+                    if (res.getEntryOffset() < 0)
+                    {
+                        throw new IllegalStateException("Resource " + res.getResourceID() + " has no header entry to patch");
+                    }
+
+                    appended.add(res);
+                    end += 0x04 + plan.get(res).length;
+                }
+                else
+                {
+                    inPlace.add(res);
+                }
+            }
+
+            if (appended.isEmpty())
+            {
+                // Reported as a patch
+                patch();
+                return;
+            }
+
+            // The new header goes after the last replacement, and its offset has to fit in the signature.
+            // Checked before anything's written, so a file that would grow too large is left untouched.
+            if (end > Resource.MAX_OFFSET)
+            {
+                throw new IOException("File would grow past 4 GB, compact it instead");
+            }
+
+            RsrcEvents.ResourceEdit event = RsrcEvents.ResourceEdit.start();
+            long headerOffset = snapshot.getHeaderOffset();
+            long deadSpace = snapshot.getKnownDeadSpace();
+            long abandoned = 0;
+
+            byte[] header = new byte[(int) (data.size() - headerOffset)];
+            data.get(headerOffset, header, 0x00, header.length);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+
+            try (FileChannel channel = FileChannel.open(_rsrc.getRsrcFile().toPath(), StandardOpenOption.WRITE))
+            {
+                abandoned += writeInPlace(plan, inPlace.toArray(new Resource[inPlace.size()]), channel);
+
+                // If the new header lands too far out for attribute bytes, every entry loses its own
+                boolean wasWide = Resource.hasWideOffsets(headerOffset);
+                boolean wide = Resource.hasWideOffsets(end);
+                if (wide && !wasWide)
+                {
+                    for (int i = 0; i < snapshot.getResourceCount(); i++)
+                    {
+                        Resource res = snapshot.getResourceInOrder(i);
+                        if (res.getEntryOffset() >= 0)
+                        {
+                            putStartOffset(headerBuffer, res.getEntryOffset(), res.getStartOffset(), false, true);
+                        }
+                    }
+                }
+
+                // Append each replacement after the end of the file, repointing its copy of the header entry
+                long position = data.size();
+                for (Resource res : appended)
+                {
+                    byte[] replacement = plan.get(res);
+                    putStartOffset(headerBuffer, res.getEntryOffset(), position - 0x100, wasWide, wide);
+
+                    ByteBuffer buffer = ByteBuffer.allocate(0x04).putInt(0, replacement.length);
+                    writeFully(channel, position, buffer, ByteBuffer.wrap(replacement));
+                    position += 0x04 + replacement.length;
+
+                    abandoned += 0x04 + snapshot.getResourceLength(res);
+                }
+
+                // Then the new header, and only once that's on disk, the signature pointing to it
+                putHeaderOffset(header, position);
+                writeFully(channel, position, headerBuffer);
+                channel.force(false);
+
+                byte[] signature = new byte[0x10];
+                data.get(0x00, signature, 0x00, signature.length);
+                putHeaderOffset(signature, position);
+                writeFully(channel, 0x00, ByteBuffer.wrap(signature));
+                channel.force(false);
+            }
+
+            _replacements.clear();
+            _rsrc.loadRsrcFile(_rsrc.getRsrcFile());
+
+            // Reopening forgets the dead space, restore it along with what was just left behind,
+            // including the old header
+            if (deadSpace >= 0)
+            {
+                _rsrc.getSnapshot().setKnownDeadSpace(deadSpace + abandoned + header.length);
+            }
+
+            _rsrc.fireResourcesChanged(Arrays.asList(plan._edited));
+            event.finish(_rsrc, "append", plan._edited.length,
+                         plan.getReplacementBytes() + 0x04 * appended.size() + header.length + 0x10, appended.size());
+        }
+    }
+
+    /**
+     * Throws if the .rsrc file on disk can't be written to directly, because it was mapped
+     * read-only, because there's no file, or because the file no longer matches the header
+     * table in memory
+     */
+    private void checkPatchable()
+    {
+        if (_rsrc.isReadOnly())
+        {
+            throw new ReadOnlyBufferException();
+        }
+        if (_rsrc.getRsrcFile() == null)
+        {
+            throw new IllegalStateException("RsrcFile wasn't created from a file, use writeTo instead");
+        }
+        if (_rsrc.isModified())
+        {
+            // The file on disk no longer has the layout the header table describes
+            throw new IllegalStateException("RsrcFile has unsaved edits, save it before patching");
+        }
+    }
+
+    /**
+     * Writes replacements that fit in the resources they replace over them, in the file on disk
+     * @param plan  The staged replacements
+     * @param edited  The resources to overwrite, each with a replacement no longer than itself
+     * @param channel  Channel open on the .rsrc file
+     * @return  Number of bytes left over as padding by shorter replacements
+     */
+    private static long writeInPlace(Plan plan, Resource[] edited, FileChannel channel) throws IOException
+    {
+        long padding = 0;
+        for (Resource res : edited)
+        {
+            byte[] replacement = plan.get(res);
+            int length = plan._snapshot.getResourceLength(res);
+
+            // The length only needs writing if it changed, it sits right before the data
+            if (replacement.length == length)
+            {
+                writeFully(channel, res.getDataOffset(), ByteBuffer.wrap(replacement));
+            }
+            else
+            {
+                ByteBuffer buffer = ByteBuffer.allocate(0x04).putInt(0, replacement.length);
+                writeFully(channel, res.getLengthOffset(), buffer, ByteBuffer.wrap(replacement));
+                padding += length - replacement.length;
+            }
+        }
+        return padding;
+    }
+
+    /** Writes buffers to a channel one after another, starting at the given position */
+    private static void writeFully(FileChannel channel, long position, ByteBuffer... buffers) throws IOException
+    {
+        for (ByteBuffer buffer : buffers)
+        {
+            while (buffer.hasRemaining())
+            {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    /**
+     * Applies all staged replacements and saves the {@code RsrcFile} to disk, overwriting the old file.
+     * <p>
+     * The edited file is written to a temporary file alongside the original, synced to disk, then
+     * renamed over the original, so a crash part way through never leaves a partially written
+     * .rsrc file behind. A memory mapped {@code RsrcFile}, or one read on demand, streams the edited
+     * file without building it in memory, copying unchanged ranges straight from the original file,
+     * then reopens the new file; note this replaces every {@link Resource} in its header table.
+     * @param createBackup  If it doesn't already exist, keeps the original file as "*.rsrc.bak"
+     * @throws ReadOnlyBufferException  If replacements are staged and the file was mapped
+     *                                  {@link FileChannel.MapMode#READ_ONLY}
+     */
+    public void save(boolean createBackup) throws IOException
+    {
+        synchronized (_rsrc)
+        {
+            if (_rsrc.getRsrcFile() == null)
+            {
+                throw new IllegalStateException("RsrcFile wasn't created from a file, use writeTo instead");
+            }
+
+            RsrcEvents.FileSave event = RsrcEvents.FileSave.start();
+            if (_rsrc.isReadFully())
+            {
+                // The whole file's on the heap anyway, so apply the edits there and write that out
+                commit();
+            }
+            else if (!_replacements.isEmpty() && _rsrc.isReadOnly())
+            {
+                throw new ReadOnlyBufferException();
+            }
+
+            writeAtomically(_rsrc.getRsrcFile().toPath(), createBackup, this::writeTo, event);
+
+            // Any replacements left weren't committed, they've just been streamed into the new file
+            List<Resource> replaced = new ArrayList<>(_replacements.keySet());
+            _replacements.clear();
+            _rsrc.setModified(false);
+
+            if (!_rsrc.isReadFully())
+            {
+                _rsrc.loadRsrcFile(_rsrc.getRsrcFile());
+            }
+            else
+            {
+                // The bytes in memory are the file's once more
+                RsrcSnapshot snapshot = _rsrc.getSnapshot();
+                _rsrc.setSnapshot(snapshot.withIdentity(FileIdentity.of(_rsrc, _rsrc.getRsrcFile())));
+            }
+
+            if (!replaced.isEmpty())
+            {
+                _rsrc.fireResourcesChanged(replaced);
+            }
+            event.finish(_rsrc);
+        }
+    }
+
+    /**
+     * Streams the {@code RsrcFile} with all staged replacements applied to the given
+     * channel, without building the edited file in memory. The {@code RsrcFile} itself
+     * and the staged replacements are left unchanged.
+     * @param out  Channel to write the edited file to
+     */
+    public void writeTo(WritableByteChannel out) throws IOException
+    {
+        write(new Plan(_rsrc.getSnapshot()), out);
+    }
+
+    /**
+     * Streams the {@code RsrcFile} with all staged replacements applied to the given
+     * file, overwriting it. The {@code RsrcFile} itself and the staged replacements are left
+     * unchanged. Don't use this to overwrite a file that's memory mapped by the {@code RsrcFile}.
+     * @param file  File to write the edited .rsrc file to
+     */
+    public void writeTo(File file) throws IOException
+    {
+        try (FileOutputStream fos = new FileOutputStream(file);
+             FileChannel channel = fos.getChannel())
+        {
+            writeTo(channel);
+        }
+    }
+
+    /**
+     * The staged replacements, matched up with the resources they replace in one snapshot
+     * of the file, along with how far they move everything after them
+     */
+    private class Plan
+    {
+        /** the file being edited */
+        private final RsrcSnapshot _snapshot;
+
+        /** replacement data, keyed by the snapshot's resources */
+        private final Map<Resource, byte[]> _edits = new HashMap<>();
+
+        /** the edited resources, in file order */
+        private final Resource[] _edited;
+
+        /** each edited resource's offset, ascending */
+        private final long[] _startOffsets;
+
+        /** running total of each edit's change in size, so the last element is the change in size of the whole file */
+        private final long[] _shifts;
+
+        /** number of header entries moved to new offsets, once the edited file has been written */
+        private int _entriesPatched;
+
+        Plan(RsrcSnapshot snapshot)
+        {
+            this._snapshot = snapshot;
+
+            // Resources staged against an earlier snapshot may have moved since
+            for (Map.Entry<Resource, byte[]> replacement : _replacements.entrySet())
+            {
+                _edits.put(snapshot.resolve(replacement.getKey()), replacement.getValue());
+            }
+
+            _edited = _edits.keySet().toArray(new Resource[_edits.size()]);
+            Arrays.sort(_edited, Comparator.comparingLong(Resource::getStartOffset));
+
+            _startOffsets = new long[_edited.length];
+            _shifts = new long[_edited.length];
+            long total = 0;
+
+            for (int i = 0; i < _edited.length; i++)
+            {
+                total += get(_edited[i]).length - snapshot.getResourceLength(_edited[i]);
+                _shifts[i] = total;
+                _startOffsets[i] = _edited[i].getStartOffset();
+            }
+        }
+
+        /** Returns the replacement for one of the edited resources */
+        byte[] get(Resource res)
+        {
+            return _edits.get(res);
+        }
+
+        /** Returns the change in size of the whole file */
+        long getDifference()
+        {
+            return (_shifts.length == 0) ? 0 : _shifts[_shifts.length - 1];
+        }
+
+        /** Returns the total length of every replacement */
+        long getReplacementBytes()
+        {
+            long bytes = 0;
+            for (byte[] replacement : _edits.values())
+            {
+                bytes += replacement.length;
+            }
+            return bytes;
+        }
+
+        /** Returns true if no replacement changes the length of its resource */
+        boolean isSameLength()
+        {
+            for (Resource res : _edited)
+            {
+                if (get(res).length != _snapshot.getResourceLength(res))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Determines how far a resource moves once the edits are applied
+         * @param startOffset  The resource's current offset
+         * @return  Number of bytes the resource moves by
+         */
+        long getShift(long startOffset)
+        {
+            // Only edits strictly before this resource move it
+            int index = Arrays.binarySearch(_startOffsets, startOffset);
+            int preceding = (index >= 0) ? index : -index - 1;
+
+            return (preceding == 0) ? 0 : _shifts[preceding - 1];
+        }
+    }
+
+    /**
+     * Writes the edited file to a channel, front to back
+     * @param plan  The staged replacements
+     * @param out  Channel to write to
+     */
+    private static void write(Plan plan, WritableByteChannel out) throws IOException
+    {
+        RsrcSnapshot snapshot = plan._snapshot;
+        RsrcStorage data = snapshot.getStorage();
+        long headerOffset = snapshot.getHeaderOffset();
+        long difference = plan.getDifference();
+        if (headerOffset + difference > Resource.MAX_OFFSET)
+        {
+            throw new IOException("File would grow past 4 GB");
+        }
+
+        // Unchanged ranges are transferred straight from storage, everything else is
+        // queued up here and written with a single gather write before the next transfer
+        List<ByteBuffer> buffers = new ArrayList<>();
+
+        // 1) The leading copy of the header signature, with the new header offset
+        byte[] signature = new byte[0x10];
+        data.get(0x00, signature, 0x00, signature.length);
+        putHeaderOffset(signature, headerOffset + difference);
+        buffers.add(ByteBuffer.wrap(signature));
+
+        // 2) Every resource, with replacements swapped in along with their new lengths
+        long pointer = signature.length;
+        for (Resource res : plan._edited)
+        {
+            byte[] replacement = plan.get(res);
+
+            transfer(data, pointer, res.getLengthOffset(), buffers, out);
+            buffers.add(ByteBuffer.allocate(0x04).putInt(0, replacement.length));
+            buffers.add(ByteBuffer.wrap(replacement));
+
+            pointer = res.getDataOffset() + snapshot.getResourceLength(res);
+        }
+        transfer(data, pointer, headerOffset, buffers, out);
+
+        // 3) The header, with every resource offset moved to account for the replacements
+        if (difference == 0)
+        {
+            transfer(data, headerOffset, data.size(), buffers, out);
+            flush(buffers, out);
+            return;
+        }
+
+        byte[] header = new byte[(int) (data.size() - headerOffset)];
+        data.get(headerOffset, header, 0x00, header.length);
+        putHeaderOffset(header, headerOffset + difference);
+
+        // Only resources after the first edit move, so only their entries need patching,
+        // unless the file grows too large for attribute bytes and every entry loses its own
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        boolean wasWide = Resource.hasWideOffsets(headerOffset);
+        boolean wide = Resource.hasWideOffsets(headerOffset + difference);
+        long firstEdit = (wide && !wasWide) ? -1 : plan._startOffsets[0];
+        int patched = 0;
+
+        for (ResourceLinkedList list : snapshot.getHeaderTable().values())
+        {
+            for (int i = 0; i < list.size(); i++)
+            {
+                long startOffset = list.getStartOffset(i);
+                if (startOffset <= firstEdit)
+                {
+                    continue;
+                }
+
+                int entryOffset = list.getEntryOffset(i);
+                if (entryOffset < 0)
+                {
+                    throw new IllegalStateException("Resource " + list.getID(i) + " has no header entry to patch");
+                }
+
+                putStartOffset(headerBuffer, entryOffset, startOffset + plan.getShift(startOffset), wasWide, wide);
+                patched++;
+            }
+        }
+
+        plan._entriesPatched = patched;
+        buffers.add(ByteBuffer.wrap(header));
+        flush(buffers, out);
+    }
+
+    /**
+     * Writes any queued buffers, then an unchanged range of the file
+     * @param data  Storage to copy the range from
+     * @param start  Offset the range begins at
+     * @param end  Offset the range ends at, exclusive
+     * @param buffers  Buffers queued to be written first
+     * @param out  Channel to write to
+     */
+    private static void transfer(RsrcStorage data, long start, long end, List<ByteBuffer> buffers,
+                                 WritableByteChannel out) throws IOException
+    {
+        if (end > start)
+        {
+            flush(buffers, out);
+            data.transferTo(start, end - start, out);
+        }
+    }
+
+    /** Writes every queued buffer with a single gather write, then empties the queue */
+    private static void flush(List<ByteBuffer> buffers, WritableByteChannel out) throws IOException
+    {
+        if (!buffers.isEmpty())
+        {
+            RsrcStorage.writeFully(out, buffers.toArray(new ByteBuffer[buffers.size()]));
+            buffers.clear();
+        }
+    }
+
+    /** Something that writes a whole .rsrc file to a channel */
+    interface ContentWriter
+    {
+        void writeTo(WritableByteChannel out) throws IOException;
+    }
+
+    /**
+     * Overwrites a file without ever leaving it partially written. The new contents are written
+     * to a temporary file alongside it, synced to disk, then renamed over the original.
+     * @param file  The file to overwrite
+     * @param createBackup  If it doesn't already exist, keeps the original file as "*.rsrc.bak"
+     * @param writer  Writes the new contents
+     * @param event  Records how much was written and how long it took to sync
+     */
+    static void writeAtomically(Path file, boolean createBackup, ContentWriter writer,
+                                RsrcEvents.FileSave event) throws IOException
+    {
+        Path target = file.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try
+        {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+            {
+                writer.writeTo(channel);
+                long written = channel.position();
+
+                long syncStart = System.nanoTime();
+                channel.force(true);
+                event.written(written, System.nanoTime() - syncStart);
+            }
+
+            copyPermissions(target, temp);
+
+            if (createBackup)
+            {
+                createBackup(target);
+            }
+
+            replace(temp, target);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /** Gives the new file the same permissions as the one it's replacing, where supported */
+    private static void copyPermissions(Path original, Path temp) throws IOException
+    {
+        try
+        {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(original));
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Not a POSIX file system, the default permissions will have to do
+        }
+    }
+
+    /**
+     * Keeps the original file as "*.rsrc.bak", unless a backup already exists. The backup is a
+     * hard link to the original, so nothing is copied; the original is then renamed over rather
+     * than rewritten, so the backup keeps the old contents.
+     */
+    private static void createBackup(Path file) throws IOException
+    {
+        Path backup = file.resolveSibling(file.getFileName() + ".bak");
+        try
+        {
+            Files.createLink(backup, file);
+        }
+        catch (FileAlreadyExistsException e)
+        {
+            // Do nothing
+        }
+        catch (UnsupportedOperationException | IOException e)
+        {
+            // Hard links aren't available here, so fall back to copying
+            if (!Files.exists(backup))
+            {
+                Files.copy(file, backup);
+            }
+        }
+    }
+
+    /** Atomically renames the temporary file over the original, where the file system allows */
+    private static void replace(Path temp, Path file) throws IOException
+    {
+        try
+        {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes a resource's offset into its header entry, keeping its attribute byte if there's room for one
+     * @param header  Copy of the header
+     * @param entryOffset  Offset of the resource's entry from the start of the header
+     * @param startOffset  The resource's new offset
+     * @param wasWide  Whether the header was copied from a file too large for attribute bytes
+     * @param wide  Whether the file being written is too large for attribute bytes
+     */
+    private static void putStartOffset(ByteBuffer header, int entryOffset, long startOffset, boolean wasWide,
+                                       boolean wide)
+    {
+        // Skip the 4 ID and name offset bytes to the attribute and resource offset bytes
+        int index = entryOffset + 0x04;
+        int attributes = (wide || wasWide) ? 0x00 : header.get(index) & 0xFF;
+        header.putInt(index, attributes << 24 | (int) startOffset).putInt(index + 0x04, 0x00);
+    }
+
+    /**
+     * Writes the header offset, and the header offset - 256, into a copy of the header signature
+     * @param signature  The 16 bytes of a header signature, or the header beginning with one
+     * @param headerOffset  The new header offset
+     */
+    private static void putHeaderOffset(byte[] signature, long headerOffset)
+    {
+        ByteBuffer.wrap(signature).putInt(0x04, (int) headerOffset).putInt(0x08, (int) (headerOffset - 0x100));
+    }
+
+    /**
+     * {@link WritableByteChannel} that fills a {@code byte[]}, used to
+     * rebuild the file in memory with the same code that streams it
+     */
+    private static class ArrayChannel implements WritableByteChannel
+    {
+        private final byte[] _array;
+
+        private int _position;
+
+        ArrayChannel(byte[] array)
+        {
+            this._array = array;
+        }
+
+        @Override
+        public int write(ByteBuffer src)
+        {
+            int length = src.remaining();
+            src.get(_array, _position, length);
+            _position += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
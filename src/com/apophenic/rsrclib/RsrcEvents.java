@@ -0,0 +1,239 @@
+package com.apophenic.rsrclib;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Reports the library's main operations to the installed {@link RsrcMetrics}, and as Java Flight
+ * Recorder events. Each operation creates its event when it starts, and finishes it when it's done:
+ * <pre>
+ *     RsrcEvents.ResourceLoad event = RsrcEvents.ResourceLoad.start();
+ *     ...
+ *     event.finish(rsrc, res, length);
+ * </pre>
+ * When no recording has the event enabled, Flight Recorder leaves its methods empty and the event
+ * is never really allocated, so with no listener installed either, all that's left is the read of
+ * the listener field.
+ */
+final class RsrcEvents
+{
+    /** the installed listener, or null */
+    private static volatile RsrcMetrics _metrics;
+
+    private RsrcEvents()
+    {
+    }
+
+    static void setMetrics(RsrcMetrics metrics)
+    {
+        _metrics = metrics;
+    }
+
+    /** Names the file an event happened to */
+    private static String describe(RsrcFile rsrc)
+    {
+        File file = rsrc.getRsrcFile();
+        return (file != null) ? file.getPath() : "(channel)";
+    }
+
+    /** An operation timed for the metrics listener as well as Flight Recorder */
+    private abstract static class Timed extends Event
+    {
+        @Label("File")
+        String file;
+
+        /** the listener installed when the operation started, or null; not recorded */
+        transient RsrcMetrics _metrics;
+
+        /** when the operation started, if there's a listener to tell; not recorded */
+        transient long _start;
+
+        void startTiming()
+        {
+            _metrics = RsrcEvents._metrics;
+            if (_metrics != null)
+            {
+                _start = System.nanoTime();
+            }
+            begin();
+        }
+
+        /** Returns how long the operation has taken, if there's a listener to tell */
+        long elapsed()
+        {
+            return (_metrics != null) ? System.nanoTime() - _start : 0;
+        }
+    }
+
+    @Name("com.apophenic.rsrclib.HeaderParse")
+    @Label("Rsrc Header Parse")
+    @Category("rsrc-lib")
+    @Description("A .rsrc file's header was read")
+    static final class HeaderParse extends Timed
+    {
+        @Label("Entries")
+        int entries;
+
+        static HeaderParse start()
+        {
+            HeaderParse event = new HeaderParse();
+            event.startTiming();
+            return event;
+        }
+
+        void finish(RsrcFile rsrc, int entries)
+        {
+            long nanos = elapsed();
+            if (shouldCommit())
+            {
+                this.file = describe(rsrc);
+                this.entries = entries;
+                commit();
+            }
+            if (_metrics != null)
+            {
+                _metrics.headerParsed(rsrc, entries, nanos);
+            }
+        }
+    }
+
+    @Name("com.apophenic.rsrclib.ResourceLoad")
+    @Label("Rsrc Resource Load")
+    @Category("rsrc-lib")
+    @Description("A resource's data was copied out of a .rsrc file")
+    static final class ResourceLoad extends Timed
+    {
+        @Label("Type")
+        String type;
+
+        @Label("Resource ID")
+        int id;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        static ResourceLoad start()
+        {
+            ResourceLoad event = new ResourceLoad();
+            event.startTiming();
+            return event;
+        }
+
+        void finish(RsrcFile rsrc, Resource res, int bytes)
+        {
+            long nanos = elapsed();
+            if (shouldCommit())
+            {
+                this.file = describe(rsrc);
+                this.type = res.getType().getCodeString();
+                this.id = res.getResourceID();
+                this.bytes = bytes;
+                commit();
+            }
+            if (_metrics != null)
+            {
+                _metrics.resourceLoaded(rsrc, res, bytes, nanos);
+            }
+        }
+    }
+
+    @Name("com.apophenic.rsrclib.ResourceEdit")
+    @Label("Rsrc Resource Edit")
+    @Category("rsrc-lib")
+    @Description("Replacements were applied to a .rsrc file")
+    static final class ResourceEdit extends Timed
+    {
+        @Label("Kind")
+        @Description("commit, patch or append")
+        String kind;
+
+        @Label("Resources")
+        int resources;
+
+        @Label("Bytes")
+        @Description("Bytes copied in memory by a commit, or written to disk otherwise")
+        @DataAmount
+        long bytes;
+
+        @Label("Entries Patched")
+        @Description("Header entries rewritten because their resources moved")
+        int entriesPatched;
+
+        static ResourceEdit start()
+        {
+            ResourceEdit event = new ResourceEdit();
+            event.startTiming();
+            return event;
+        }
+
+        void finish(RsrcFile rsrc, String kind, int resources, long bytes, int entriesPatched)
+        {
+            long nanos = elapsed();
+            if (shouldCommit())
+            {
+                this.file = describe(rsrc);
+                this.kind = kind;
+                this.resources = resources;
+                this.bytes = bytes;
+                this.entriesPatched = entriesPatched;
+                commit();
+            }
+            if (_metrics != null)
+            {
+                _metrics.resourcesEdited(rsrc, kind, resources, bytes, entriesPatched, nanos);
+            }
+        }
+    }
+
+    @Name("com.apophenic.rsrclib.FileSave")
+    @Label("Rsrc File Save")
+    @Category("rsrc-lib")
+    @Description("A .rsrc file was saved")
+    static final class FileSave extends Timed
+    {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Sync Duration")
+        @Description("Time spent waiting for the file to be synced to disk")
+        @Timespan
+        long syncDuration;
+
+        static FileSave start()
+        {
+            FileSave event = new FileSave();
+            event.startTiming();
+            return event;
+        }
+
+        /** Records what was written, once it's on disk */
+        void written(long bytes, long syncNanos)
+        {
+            this.bytes = bytes;
+            this.syncDuration = syncNanos;
+        }
+
+        void finish(RsrcFile rsrc)
+        {
+            long nanos = elapsed();
+            if (shouldCommit())
+            {
+                this.file = describe(rsrc);
+                commit();
+            }
+            if (_metrics != null)
+            {
+                _metrics.fileSaved(rsrc, bytes, syncDuration, nanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.apophenic.rsrclib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Extracts every resource in a {@link RsrcFile}, or every resource of a chosen set of
+ * {@link ResourceType}s, either to files in a directory or into a single zip archive.
+ * <p>
+ * Resources are processed in parallel on a bounded executor, in the order they're found
+ * in the file so reads stay sequential, and are written straight from the bytes backing
+ * the {@code RsrcFile} without first being copied into their own arrays. Each resource
+ * is named "TYPE/id.type", such as "PNG/128.png", unless two types' names only differ by
+ * case, when the second gets its code in hex as well, such as "ICNS_49434E53/128.icns_49434e53".
+ * <p>
+ * Each export reads from the {@code RsrcFile} as it was when the export started, even if
+ * it's edited in the meantime.
+ */
+public class RsrcExporter
+{
+    /** number of bytes copied at a time into a zip archive */
+    private static final int BUFFER_SIZE = 0x10000;
+
+    /** the file to export from */
+    private final RsrcFile _rsrc;
+
+    /** the types to export, or null to export every type */
+    private Set<ResourceType> _types;
+
+    /** true to only export resources that have been replaced, see {@link RsrcFile#getDirtyResources()} */
+    private boolean _dirtyOnly;
+
+    /** executor to run on, or null to use a pool of _parallelism threads for each export */
+    private ExecutorService _executor;
+
+    /** number of threads used when no executor is given */
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a new {@link RsrcExporter} that exports every resource in a file
+     * @param rsrc  The file to export from
+     */
+    public RsrcExporter(RsrcFile rsrc)
+    {
+        this._rsrc = rsrc;
+    }
+
+    /**
+     * Only exports resources of the given types
+     * @param types  The {@link ResourceType}s to export
+     * @return  This {@code RsrcExporter}
+     */
+    public RsrcExporter setTypes(ResourceType... types)
+    {
+        _types = new HashSet<>();
+        for (ResourceType type : types)
+        {
+            _types.add(type);
+        }
+        return this;
+    }
+
+    /**
+     * Only exports resources that have been replaced since the file was opened, or since they
+     * were last marked clean, see {@link RsrcFile#getDirtyResources()}, so unchanged resources
+     * aren't exported again
+     * @param dirtyOnly  true to only export dirty resources
+     * @return  This {@code RsrcExporter}
+     */
+    public RsrcExporter setDirtyOnly(boolean dirtyOnly)
+    {
+        this._dirtyOnly = dirtyOnly;
+        return this;
+    }
+
+    /**
+     * Runs exports on the given executor, which is left running afterwards.
+     * By default each export runs on its own pool, see {@link #setParallelism}.
+     * @param executor  Executor to run on
+     * @return  This {@code RsrcExporter}
+     */
+    public RsrcExporter setExecutor(ExecutorService executor)
+    {
+        this._executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets how many threads an export uses, if no executor was given.
+     * Defaults to the number of available processors.
+     * @param parallelism  Number of threads
+     * @return  This {@code RsrcExporter}
+     */
+    public RsrcExporter setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+
+        this._parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Writes each resource to its own file under the given directory,
+     * creating directories as needed and overwriting existing files
+     * @param directory  Directory to export to
+     * @return  Number of resources exported
+     */
+    public int exportToDirectory(Path directory) throws IOException
+    {
+        RsrcSnapshot snapshot = _rsrc.getSnapshot();
+        Resource[] resources = getResources(snapshot);
+        Map<ResourceType, String> names = getDirectoryNames(snapshot);
+
+        for (ResourceType type : snapshot.getTypes())
+        {
+            if (_types == null || _types.contains(type))
+            {
+                Files.createDirectories(directory.resolve(names.get(type)));
+            }
+        }
+
+        RsrcStorage data = snapshot.getStorage();
+        run(resources, (res, index) ->
+        {
+            try (FileChannel out = FileChannel.open(directory.resolve(getEntryName(names, res)), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                data.transferTo(res.getDataOffset(), snapshot.getResourceLength(res), out);
+            }
+        });
+
+        return resources.length;
+    }
+
+    /**
+     * Writes every resource into a zip archive. Resources are stored uncompressed, since
+     * most resource formats are already compressed; their checksums are computed in
+     * parallel, then each is streamed into the archive in turn.
+     * The stream is finished, but not closed.
+     * @param out  Stream to write the zip archive to
+     * @return  Number of resources exported
+     */
+    public int exportToZip(OutputStream out) throws IOException
+    {
+        RsrcSnapshot snapshot = _rsrc.getSnapshot();
+        Resource[] resources = getResources(snapshot);
+        Map<ResourceType, String> names = getDirectoryNames(snapshot);
+
+        long[] checksums = new long[resources.length];
+        run(resources, (res, index) ->
+        {
+            CRC32 crc = new CRC32();
+            crc.update(RsrcFile.getResourceView(snapshot, res));
+            checksums[index] = crc.getValue();
+        });
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        for (int i = 0; i < resources.length; i++)
+        {
+            ByteBuffer view = RsrcFile.getResourceView(snapshot, resources[i]);
+
+            ZipEntry entry = new ZipEntry(getEntryName(names, resources[i]));
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(view.remaining());
+            entry.setCrc(checksums[i]);
+
+            zip.putNextEntry(entry);
+            while (view.hasRemaining())
+            {
+                int length = Math.min(buffer.length, view.remaining());
+                view.get(buffer, 0, length);
+                zip.write(buffer, 0, length);
+            }
+            zip.closeEntry();
+        }
+
+        zip.finish();
+        return resources.length;
+    }
+
+    /** Returns the resources to export, in the order they're found in the file */
+    private Resource[] getResources(RsrcSnapshot snapshot)
+    {
+        List<Resource> resources = new ArrayList<>();
+        for (int i = 0; i < snapshot.getResourceCount(); i++)
+        {
+            Resource res = snapshot.getResourceInOrder(i);
+            if ((_types == null || _types.contains(res.getType())) && (!_dirtyOnly || _rsrc.isDirty(res)))
+            {
+                resources.add(res);
+            }
+        }
+        return resources.toArray(new Resource[resources.size()]);
+    }
+
+    /** Returns the path a resource is exported to, relative to the export's root */
+    private static String getEntryName(Map<ResourceType, String> names, Resource res)
+    {
+        String name = names.get(res.getType());
+        return name + "/" + res.getResourceID() + "." + name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the name of the directory each type's resources are exported to. That's the type's
+     * name, with any character that isn't safe in a path, such as the '#' in "ICN#", replaced by '_'.
+     * Names that would clash, ignoring case since not every file system tells them apart, such as
+     * the constant ICNS ('icns') and a type 'ICNS', are told apart by the type's code in hex;
+     * constants keep their plain names.
+     */
+    private static Map<ResourceType, String> getDirectoryNames(RsrcSnapshot snapshot)
+    {
+        ResourceType[] types = snapshot.getTypes();
+        Arrays.sort(types, (a, b) -> Boolean.compare(b.isKnown(), a.isKnown()));
+
+        Map<ResourceType, String> names = new HashMap<>();
+        Set<String> taken = new HashSet<>();
+        for (ResourceType type : types)
+        {
+            String name = getDirectoryName(type);
+            if (!taken.add(name.toLowerCase(Locale.ROOT)))
+            {
+                name = name + "_" + String.format("%08X", type.getCode());
+                taken.add(name.toLowerCase(Locale.ROOT));
+            }
+            names.put(type, name);
+        }
+        return names;
+    }
+
+    /** Returns the type's name, with any character that isn't safe in a path replaced by '_' */
+    private static String getDirectoryName(ResourceType type)
+    {
+        char[] name = type.name().toCharArray();
+        for (int i = 0; i < name.length; i++)
+        {
+            char c = name[i];
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-'))
+            {
+                name[i] = '_';
+            }
+        }
+        return new String(name);
+    }
+
+    /** Work done for each resource being exported */
+    private interface ResourceTask
+    {
+        /**
+         * @param res  The resource to process
+         * @param index  The resource's position among those being exported
+         */
+        void run(Resource res, int index) throws IOException;
+    }
+
+    /**
+     * Runs a task for every resource. Resources are split into a few contiguous batches
+     * per thread, rather than one task each, so millions of resources don't mean millions
+     * of queued tasks.
+     * @param resources  The resources to process
+     * @param task  Work to do for each resource
+     */
+    private void run(Resource[] resources, ResourceTask task) throws IOException
+    {
+        int parallelism = (_executor != null) ? Runtime.getRuntime().availableProcessors() : _parallelism;
+        int batchSize = Math.max(1, (resources.length + parallelism * 4 - 1) / (parallelism * 4));
+
+        List<Callable<Void>> batches = new ArrayList<>();
+        for (int start = 0; start < resources.length; start += batchSize)
+        {
+            int from = start;
+            int to = Math.min(resources.length, start + batchSize);
+            batches.add(() ->
+            {
+                for (int i = from; i < to; i++)
+                {
+                    task.run(resources[i], i);
+                }
+                return null;
+            });
+        }
+
+        ParallelTasks.invokeAll(batches, _executor, _parallelism, "Export");
+    }
+}
@@ -27,12 +27,33 @@ package com.apophenic.rsrclib;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.Files;
-import java.util.Arrays;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongUnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The [typical] structure of .rsrc files:
@@ -50,46 +71,150 @@ import java.util.logging.Logger;
  * <li>-The resource type will be followed by 8 padding bytes, then
  * will list all resources of that type. See {@link Resource}
  * for how each resource entry is structured.
+ * <p>
+ * A {@code RsrcFile} can be shared between threads. Its bytes and header table are held
+ * together in an immutable snapshot, which is replaced as a whole by every edit; reading
+ * methods take the current snapshot once and read from it without locking, so they're
+ * never blocked by, and never see half of, an edit. Edits are made one at a time, each
+ * publishing a new snapshot when it's done. The exceptions are edits written straight to
+ * the file on disk, {@link RsrcEdit#patch()} and {@link RsrcEdit#append()}, which readers
+ * of a mapped or on-demand {@code RsrcFile} can see as they're written, and reopening the
+ * file after it's saved, which closes the file handle a concurrent reader may still be using.
  */
-public class RsrcFile
+public class RsrcFile implements Closeable
 {
     /** .rsrc file */
     private File _file;
 
-    /** _file bytes */
-    private byte[] _data;
+    /** how _file is mapped into memory, or null if it's read onto the heap */
+    private FileChannel.MapMode _mapMode;
 
-    /** byte offset where the header begins */
-    private int _headerOffset;
+    /** true if _file is read on demand through a channel rather than all at once */
+    private boolean _readOnDemand;
 
-    /** maintains resources types, resources, and their offsets as defined in the file's header */
-    private LinkedHashMap<ResourceType, ResourceLinkedList> _headerTable = new LinkedHashMap<>();
+    /** channel the .rsrc file is read from, if this {@code RsrcFile} wasn't created from a file */
+    private SeekableByteChannel _channel;
 
-    /** used to traverse bytes */
-    private int _pointer = -1;
+    /** true if _file is read on demand through an {@link AsynchronousFileChannel}, see {@link #openAsync} */
+    private boolean _async;
+
+    /** runs asynchronous reads' completion handlers, or null to use the channel's default thread pool */
+    private ExecutorService _executor;
+
+    /**
+     * _file bytes and the header table describing them, replaced as a whole by each edit.
+     * Readers take it once and use it without locking, writers hold this object's lock.
+     */
+    private volatile RsrcSnapshot _snapshot = RsrcSnapshot.empty();
+
+    /** where parsing the header stopped */
+    private long _pointer = -1;
+
+    /** true if edits have been committed in memory but not yet saved to _file */
+    private boolean _modified;
+
+    /** notified after resources are replaced */
+    private final CopyOnWriteArrayList<ResourceListener> _listeners = new CopyOnWriteArrayList<>();
+
+    /** resources replaced since the file was opened, and not since marked clean */
+    private final Set<Resource> _dirty = ConcurrentHashMap.newKeySet();
 
     /**
      * Creates a new {@link RsrcFile} object from the given {@code File}
      * @param _file  Mac resource file (.rsrc) to create {@code RsrcFile} from
      */
     public RsrcFile(File _file)
+    {
+        this(_file, null);
+    }
+
+    /**
+     * Creates a new {@link RsrcFile} object from the given {@code File}, memory mapping it
+     * rather than reading it. Only the pages holding the header and whichever resources
+     * are loaded will be read from disk.
+     * @param _file  Mac resource file (.rsrc) to create {@code RsrcFile} from
+     * @param mapMode  {@link FileChannel.MapMode#READ_ONLY} to disallow edits, or
+     *                 {@link FileChannel.MapMode#PRIVATE} to allow copy-on-write edits
+     *                 that are never written through to the file.
+     *                 If null, the file is read onto the heap.
+     */
+    public RsrcFile(File _file, FileChannel.MapMode mapMode)
     {
         this._file = _file;
+        this._mapMode = mapMode;
 
         init();
     }
 
+    /** Used by {@link #openAsync}, which reads the file itself */
+    private RsrcFile()
+    {
+    }
+
     private void init()
     {
+        // Taken before reading, so a change made while the file's being read shows as a newer file next time
+        FileIdentity identity = FileIdentity.of(this, _file);
+
+        RsrcStorage data;
         try
         {
-            readRsrcFile();
-            buildHeaderTable();
+            data = readRsrcFile();
         }
         catch (IOException e)
         {
+            data = null;
             Logger.getAnonymousLogger().log(Level.SEVERE, "Failed to read rsrc file");
         }
+
+        init(data, identity);
+    }
+
+    /**
+     * Publishes a snapshot of newly read bytes, then closes the bytes it replaces
+     * @param data  The .rsrc file's bytes, or null if they couldn't be read
+     * @param identity  The file's identity, taken before it was read
+     */
+    private void init(RsrcStorage data, FileIdentity identity)
+    {
+        RsrcStorage old = _snapshot.getStorage();
+        _modified = false;
+
+        RsrcSnapshot snapshot = RsrcSnapshot.empty();
+        if (data != null)
+        {
+            try
+            {
+                snapshot = buildHeaderTable(data);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                // A header that can't be parsed leaves the file empty, the same as one that can't be read
+                try
+                {
+                    data.close();
+                }
+                catch (IOException closeFailure)
+                {
+                    e.addSuppressed(closeFailure);
+                }
+                Logger.getAnonymousLogger().log(Level.SEVERE, "Failed to read rsrc file", e);
+            }
+        }
+        _snapshot = snapshot.withIdentity(identity);
+
+        // Closed only once it's been replaced, so readers still using it are unlikely to find it closed
+        if (old != null)
+        {
+            try
+            {
+                old.close();
+            }
+            catch (IOException e)
+            {
+                Logger.getAnonymousLogger().log(Level.WARNING, "Failed to close rsrc file");
+            }
+        }
     }
 
     public RsrcFile(String filepath)
@@ -97,47 +222,300 @@ public class RsrcFile
         this(new File(filepath));
     }
 
-    /** Reads .rsrc file into a byte[] */
-    private void readRsrcFile() throws IOException
+    /**
+     * Creates a new {@link RsrcFile} object from the given {@code Path}, reading only
+     * the 16 byte signature and the header up front. Resources are read from the file
+     * as they're loaded, so the file is kept open until {@link #close()} is called.
+     * @param path  Mac resource file (.rsrc) to create {@code RsrcFile} from
+     */
+    public RsrcFile(Path path)
+    {
+        this._file = path.toFile();
+        this._readOnDemand = true;
+
+        init();
+    }
+
+    /**
+     * Creates a new {@link RsrcFile} object from the given channel, reading only
+     * the 16 byte signature and the header up front. Resources are read from the channel
+     * as they're loaded. The channel is closed when this {@code RsrcFile} is.
+     * <p>
+     * Such an {@code RsrcFile} has no file to save to, so it can only be
+     * written elsewhere, see {@link RsrcEdit#writeTo}.
+     * @param channel  Channel holding a Mac resource file (.rsrc)
+     */
+    public RsrcFile(SeekableByteChannel channel)
+    {
+        this._channel = channel;
+        this._readOnDemand = true;
+
+        init();
+    }
+
+    /**
+     * Opens a .rsrc file without blocking the calling thread, see {@link #openAsync(Path, ExecutorService)}
+     * @param path  Mac resource file (.rsrc) to open
+     * @return  Future completed with the {@code RsrcFile} once its header has been read
+     */
+    public static CompletableFuture<RsrcFile> openAsync(Path path)
+    {
+        return openAsync(path, null);
+    }
+
+    /**
+     * Opens a .rsrc file without blocking the calling thread. The file is opened as an
+     * {@link AsynchronousFileChannel}, and the 16 byte signature and the header are read
+     * with asynchronous reads; the future completes on whichever thread finishes the last one.
+     * Resources are read as they're loaded, as with {@link #RsrcFile(Path)}, and can be read
+     * without blocking with {@link #loadResourceDataAsync}. Close it when you're done.
+     * <p>
+     * Unlike the constructors, which leave the {@code RsrcFile} empty if the file can't be read,
+     * the future completes exceptionally.
+     * <p>
+     * Every other read, such as {@link #loadResourceData}, {@link #getResourceView} or a save,
+     * blocks until the channel completes it, which takes a thread of the executor. So never call
+     * them from a completion callback, such as a stage chained onto {@link #loadResourceDataAsync}
+     * without an executor of its own, or from any other task running on the executor: with every
+     * one of its threads waiting, the reads could never complete.
+     * @param path  Mac resource file (.rsrc) to open
+     * @param executor  Runs the channel's completion handlers, or null to use the system's default
+     *                  thread pool
+     * @return  Future completed with the {@code RsrcFile} once its header has been read
+     */
+    public static CompletableFuture<RsrcFile> openAsync(Path path, ExecutorService executor)
+    {
+        RsrcFile rsrc = new RsrcFile();
+        rsrc._file = path.toFile();
+        rsrc._readOnDemand = true;
+        rsrc._async = true;
+        rsrc._executor = executor;
+
+        // Taken before reading, as in init()
+        FileIdentity identity = FileIdentity.of(rsrc, rsrc._file);
+
+        return rsrc.readRsrcFileAsync().thenApply(data ->
+        {
+            synchronized (rsrc)
+            {
+                rsrc.init(data, identity);
+            }
+            return rsrc;
+        });
+    }
+
+    /** Opens _file as an {@link AsynchronousFileChannel} and reads its header, without blocking */
+    private CompletableFuture<AsyncChannelStorage> readRsrcFileAsync()
+    {
+        AsynchronousFileChannel channel;
+        try
+        {
+            channel = AsynchronousFileChannel.open(_file.toPath(), Collections.singleton(StandardOpenOption.READ),
+                                                   _executor);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return AsyncChannelStorage.open(channel).whenComplete((data, e) ->
+        {
+            if (e != null)
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException closeFailure)
+                {
+                    e.addSuppressed(closeFailure);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads .rsrc file into a byte[], or maps it if a {@link FileChannel.MapMode} was given,
+     * or just reads its header if it's to be read on demand
+     */
+    private RsrcStorage readRsrcFile() throws IOException
     {
-        int length = getFileSizeInBytes();
+        if (_mapMode != null)
+        {
+            return MappedStorage.map(_file, _mapMode);
+        }
+
+        if (_async)
+        {
+            // Reopened after a save, by which point the caller is already blocked on the save
+            return AsyncChannelStorage.await(readRsrcFileAsync());
+        }
+
+        if (_readOnDemand)
+        {
+            SeekableByteChannel channel = (_channel != null) ? _channel
+                                                             : FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+            return ChannelStorage.open(channel);
+        }
+
+        long length = _file.length();
+        if (length > RsrcStorage.MAX_ARRAY_SIZE)
+        {
+            throw new IOException("File is too large to read onto the heap, map it or open it by Path instead: " +
+                                  _file);
+        }
 
-        _data = new byte[length];
+        byte[] data = new byte[(int) length];
 
-        FileInputStream fis;
-        fis = new FileInputStream(_file);
-        fis.read(_data);
-        fis.close();
+        // A single read can return fewer bytes than asked for
+        try (FileInputStream fis = new FileInputStream(_file))
+        {
+            int read = 0;
+            while (read < data.length)
+            {
+                int count = fis.read(data, read, data.length - read);
+                if (count < 0)
+                {
+                    throw new EOFException("File was truncated while it was read: " + _file);
+                }
+                read += count;
+            }
+        }
+
+        return new HeapStorage(data);
     }
 
     /**
-     * Reads bytes 4-8 for the header offset location,
-     * then reads the header while storing resources by type
+     * Reads bytes 4-8 for the header offset location, then reads the header's type list:
+     * each type, how many resources it has, and where their entries are. The entries
+     * themselves are only parsed once their type is needed, see {@link RsrcSnapshot}.
+     * @param data  The .rsrc file's bytes
+     * @return  A snapshot of the file and its header table
+     * @throws IOException  If the header, its type list, or where a type's entries begin is outside the file
      */
-    private void buildHeaderTable()
+    private RsrcSnapshot buildHeaderTable(RsrcStorage data) throws IOException
     {
-        byte[] headerBytes = Arrays.copyOfRange(_data, 0x04, 0x08); // Bytes 4-8 are header offset
-        _headerOffset = ((headerBytes[0] & 0xFF) << 24) | ((headerBytes[1] & 0xFF) << 16) |
-                        ((headerBytes[2] & 0xFF) << 8) | (headerBytes[3] & 0xFF);
+        RsrcEvents.HeaderParse event = RsrcEvents.HeaderParse.start();
+        long size = data.size();
+        if (size < 0x10)
+        {
+            throw new IOException("File is too short for a header signature: " + size + " bytes");
+        }
 
-        _pointer = _headerOffset + 0x1E;    // Place pointer at first resource type
+        long headerOffset = Integer.toUnsignedLong(data.getInt(0x04)); // Bytes 4-8 are header offset
+        if (headerOffset < 0x10 || headerOffset + 0x1C > size)
+        {
+            throw new IOException("Header offset " + headerOffset + " is outside the file");
+        }
 
-        while (_pointer < _data.length)
+        // Bytes 24-26 of the header are the type list's offset within it. The list begins with
+        // the number of types - 1, then each type is 8 bytes: code, number of resources - 1,
+        // and where its entries begin, relative to the type list.
+        int typeList = getUnsignedShort(data, headerOffset + 0x18);
+        if (headerOffset + typeList + 0x02 > size)
         {
-            ResourceType type = ResourceType.getValue(Arrays.copyOfRange(_data, _pointer, _pointer + 0x04));
+            throw new IOException("Type list offset " + typeList + " is outside the file");
+        }
 
-            // Set pointer to first resource by searching for stop bytes, then decrement back to ID start
-            _pointer = findMatchingOffsetStart(new byte[]{(byte) 0xFF, (byte) 0xFF}, _pointer) - 0x02;
+        int typeCount = (getUnsignedShort(data, headerOffset + typeList) + 1) & 0xFFFF;
+        long pointer = headerOffset + typeList + 0x02;    // Place pointer at first resource type
+        long end = pointer + 0x08 * typeCount;
+        if (end > size)
+        {
+            throw new IOException("Header lists " + typeCount + " resource types but only " +
+                                  (size - pointer) / 0x08 + " fit in the file");
+        }
 
-            ResourceLinkedList resourceList = new ResourceLinkedList();
+        ResourceType[] types = new ResourceType[typeCount];
+        int[] counts = new int[typeCount];
+        int[] entryOffsets = new int[typeCount];
+        int entries = 0;
 
-            while (_pointer < _data.length) // TODO Also include: look for type stop bytes
+        for (int t = 0; t < typeCount; t++)
+        {
+            int entryOffset = typeList + getUnsignedShort(data, pointer + 0x06);
+            int count = getUnsignedShort(data, pointer + 0x04) + 1;
+            if (headerOffset + entryOffset > size)
             {
-                // Every Resource entry in the header table is 14 bytes long
-                resourceList.addLast(new Resource(Arrays.copyOfRange(_data, _pointer, _pointer += 0x0C), type));
+                throw new IOException("Resources of type " + ResourceType.forCode(data.getInt(pointer)) +
+                                      " begin outside the file");
             }
 
-            _headerTable.put(type, resourceList);
+            // A damaged header may claim more entries than the file holds, so keep only those that are there
+            int available = (int) Math.min((size - headerOffset - entryOffset) / 0x0C, count);
+            if (count > available)
+            {
+                Logger.getAnonymousLogger().log(Level.WARNING, "Header lists " + count + " resources of type " +
+                        ResourceType.forCode(data.getInt(pointer)) + " but only " + available + " fit in the file");
+                count = available;
+            }
+
+            types[t] = ResourceType.forCode(data.getInt(pointer));
+            counts[t] = count;
+            entryOffsets[t] = entryOffset;
+            entries += count;
+
+            end = Math.max(end, headerOffset + entryOffset + 0x0C * count);
+            pointer += 0x08;
+        }
+
+        _pointer = end;
+        event.finish(this, entries);
+        return new RsrcSnapshot(data, headerOffset, types, counts, entryOffsets);
+    }
+
+    /** Reads the 2 byte unsigned number at the given offset */
+    private static int getUnsignedShort(RsrcStorage data, long offset)
+    {
+        return (data.get(offset) & 0xFF) << 8 | (data.get(offset + 0x01) & 0xFF);
+    }
+
+    /** Returns the file's current bytes and header table, which are never changed once returned */
+    RsrcSnapshot getSnapshot()
+    {
+        return _snapshot;
+    }
+
+    /**
+     * Publishes the file's new bytes and header table. Only call this holding this object's lock.
+     * A snapshot without an identity holds bytes edited in memory, so it's given one of its own.
+     */
+    void setSnapshot(RsrcSnapshot snapshot)
+    {
+        if (snapshot.getIdentity() == null)
+        {
+            snapshot = snapshot.withIdentity(_snapshot.getIdentity().edited());
+        }
+        this._snapshot = snapshot;
+    }
+
+    /**
+     * Registers a listener to be notified whenever resources in this {@code RsrcFile} are replaced,
+     * by {@link RsrcEdit#commit()}, {@link RsrcEdit#patch()}, {@link RsrcEdit#append()} or
+     * {@link RsrcEdit#save}. Registering the same listener twice has no effect.
+     * @param listener  Listener to register
+     */
+    public void addResourceListener(ResourceListener listener)
+    {
+        _listeners.addIfAbsent(listener);
+    }
+
+    /** Unregisters a listener registered with {@link #addResourceListener} */
+    public void removeResourceListener(ResourceListener listener)
+    {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Marks resources dirty, see {@link #getDirtyResources()}, then notifies listeners that
+     * they were replaced, once the new snapshot has been published
+     */
+    void fireResourcesChanged(Collection<Resource> resources)
+    {
+        _dirty.addAll(resources);
+        for (ResourceListener listener : _listeners)
+        {
+            listener.resourcesChanged(this, resources);
         }
     }
 
@@ -149,7 +527,8 @@ public class RsrcFile
      */
     public byte[] loadResourceData(int id, ResourceType type)
     {
-        return loadResourceData(getResourceByID(id, type));
+        RsrcSnapshot snapshot = _snapshot;
+        return loadResourceData(snapshot, snapshot.getResourceByID(id, type), RsrcEvents.ResourceLoad.start());
     }
 
     /**
@@ -159,7 +538,157 @@ public class RsrcFile
      */
     public byte[] loadResourceData(Resource res)
     {
-        return Arrays.copyOfRange(_data, res.getDataOffset(), res.getDataOffset() + getResourceLength(res));
+        RsrcSnapshot snapshot = _snapshot;
+        return loadResourceData(snapshot, snapshot.resolve(res), RsrcEvents.ResourceLoad.start());
+    }
+
+    static byte[] loadResourceData(RsrcSnapshot snapshot, Resource res)
+    {
+        return readBytes(snapshot.getStorage(), res.getDataOffset(), snapshot.getResourceLength(res));
+    }
+
+    /** Loads a resource, reporting the load once it's done, see {@link RsrcMetrics#resourceLoaded} */
+    private byte[] loadResourceData(RsrcSnapshot snapshot, Resource res, RsrcEvents.ResourceLoad event)
+    {
+        byte[] data = loadResourceData(snapshot, res);
+        event.finish(this, res, data.length);
+        return data;
+    }
+
+    /**
+     * Loads the specified resource asset from the .rsrc file, without blocking the calling thread
+     * if this {@code RsrcFile} was opened with {@link #openAsync}, see {@link #loadResourceDataAsync(Resource)}
+     * @param id  The ID of the resource to load
+     * @param type  The {@link ResourceType} of the resource to load
+     * @return  Future completed with the data contained within the resource, or exceptionally
+     *          with {@code IllegalArgumentException} if there's no such resource
+     */
+    public CompletableFuture<byte[]> loadResourceDataAsync(int id, ResourceType type)
+    {
+        RsrcSnapshot snapshot = _snapshot;
+        Resource res = snapshot.getResourceByID(id, type);
+        if (res == null)
+        {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No " + type + " resource " + id));
+        }
+        return loadResourceDataAsync(snapshot, res);
+    }
+
+    /**
+     * Loads the specified resource asset from the .rsrc file. If this {@code RsrcFile} was
+     * opened with {@link #openAsync}, and the resource hasn't been edited in memory, the
+     * resource's length and then its data are read with asynchronous positioned reads and
+     * the future completes on whichever thread finishes the second. Otherwise the resource
+     * is loaded on the calling thread, as by {@link #loadResourceData(Resource)}, and the
+     * future is already complete.
+     * @param res  The resource object to load
+     * @return  Future completed with the data contained within the resource
+     */
+    public CompletableFuture<byte[]> loadResourceDataAsync(Resource res)
+    {
+        RsrcSnapshot snapshot = _snapshot;
+        return loadResourceDataAsync(snapshot, snapshot.resolve(res));
+    }
+
+    private CompletableFuture<byte[]> loadResourceDataAsync(RsrcSnapshot snapshot, Resource res)
+    {
+        RsrcEvents.ResourceLoad event = RsrcEvents.ResourceLoad.start();
+        RsrcStorage data = snapshot.getStorage();
+
+        if (!(data instanceof AsyncChannelStorage))
+        {
+            try
+            {
+                return CompletableFuture.completedFuture(loadResourceData(snapshot, res, event));
+            }
+            catch (RuntimeException e)
+            {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        // The length sits right before the data, see Resource#getLengthOffset()
+        AsyncChannelStorage storage = (AsyncChannelStorage) data;
+        return storage.readAsync(res.getLengthOffset(), ByteBuffer.allocate(0x04))
+                      .thenCompose(length -> storage.readAsync(res.getDataOffset(), ByteBuffer.allocate(length.getInt(0))))
+                      .thenApply(buffer ->
+                      {
+                          event.finish(this, res, buffer.capacity());
+                          return buffer.array();
+                      });
+    }
+
+    /**
+     * Returns a read-only view of the specified resource asset, without copying it
+     * @param id  The ID of the resource to view
+     * @param type  The {@link ResourceType} of the resource to view
+     * @return  {@code ByteBuffer} over the data contained within the resource
+     * @see #getResourceView(Resource)
+     */
+    public ByteBuffer getResourceView(int id, ResourceType type)
+    {
+        RsrcSnapshot snapshot = _snapshot;
+        return getResourceView(snapshot, snapshot.getResourceByID(id, type));
+    }
+
+    /**
+     * Returns a read-only view of the specified resource asset, without copying it.
+     * The view's position is 0 and its limit is the resource's length.
+     * <p>
+     * The view reads straight from the bytes backing this {@code RsrcFile} when it was taken.
+     * Edits never write into those bytes, they replace them, so the view stays over the
+     * unedited file; take a new view to see an edit.
+     * @param res  The resource object to view
+     * @return  {@code ByteBuffer} over the data contained within the resource
+     */
+    public ByteBuffer getResourceView(Resource res)
+    {
+        RsrcSnapshot snapshot = _snapshot;
+        return getResourceView(snapshot, snapshot.resolve(res));
+    }
+
+    /** Returns a read-only view of a resource in the given snapshot, see {@link #getResourceView(Resource)} */
+    static ByteBuffer getResourceView(RsrcSnapshot snapshot, Resource res)
+    {
+        return snapshot.getStorage().slice(res.getDataOffset(), snapshot.getResourceLength(res));
+    }
+
+    /**
+     * Copies the specified resource asset into a buffer supplied by the caller
+     * @param id  The ID of the resource to read
+     * @param type  The {@link ResourceType} of the resource to read
+     * @param dst  Buffer to copy the resource into
+     * @return  Number of bytes copied
+     * @see #readResource(Resource, ByteBuffer)
+     */
+    public int readResource(int id, ResourceType type, ByteBuffer dst)
+    {
+        RsrcSnapshot snapshot = _snapshot;
+        return readResource(snapshot, snapshot.getResourceByID(id, type), dst, RsrcEvents.ResourceLoad.start());
+    }
+
+    /**
+     * Copies the specified resource asset into a buffer supplied by the caller, such as one
+     * taken from a pool, starting at the buffer's position. The position is advanced past
+     * the copied bytes.
+     * @param res  The resource object to read
+     * @param dst  Buffer to copy the resource into
+     * @return  Number of bytes copied
+     * @throws java.nio.BufferOverflowException  If {@code dst} doesn't have room for the resource,
+     *                                           in which case nothing is copied
+     */
+    public int readResource(Resource res, ByteBuffer dst)
+    {
+        RsrcSnapshot snapshot = _snapshot;
+        return readResource(snapshot, snapshot.resolve(res), dst, RsrcEvents.ResourceLoad.start());
+    }
+
+    private int readResource(RsrcSnapshot snapshot, Resource res, ByteBuffer dst, RsrcEvents.ResourceLoad event)
+    {
+        int length = snapshot.getResourceLength(res);
+        snapshot.getStorage().get(res.getDataOffset(), dst, length);
+        event.finish(this, res, length);
+        return length;
     }
 
     /**
@@ -181,89 +710,107 @@ public class RsrcFile
      * previous data in the given .rsrc file. Note this change will only be made in memory,
      * call {@link #saveRsrcFile} to update the file.
      * If the resource ID and type don't exist, do nothing.
+     * <p>
+     * Every call rebuilds the file, so use {@link #edit()} to replace many resources at once.
+     * The edited file is built in a new array on the heap, so a file that's memory mapped or
+     * read on demand moves onto the heap, and views taken before the edit don't change.
      * @param data  {@code byte[]} data to replace resource with
      * @param res  Resource to save to file
+     * @throws ReadOnlyBufferException  If the file was mapped {@link FileChannel.MapMode#READ_ONLY}
      */
     public void saveResourceData(byte[] data, Resource res)
     {
-        int origLength = getResourceLength(res);
-        int difference = data.length - origLength;
-
-        byte[] newData = new byte[_data.length + difference];
-
-        // Rebuild .rsrc file in 4 sections
-        // 1) 0x00 to saved resource data offset start - 0x04
-        System.arraycopy(_data, 0x00, newData, 0x00, res.getLengthOffset());
-
-        // 2) Next 4 bytes are the resource length (number of bytes)
-        System.arraycopy(getDataLengthBytes(data.length), 0x00, newData, res.getLengthOffset(), 0x04);
-
-        // 3) Bytes from external file, directly replaces old resource
-        System.arraycopy(data, 0x00, newData, res.getDataOffset(), data.length);
+        edit().replace(data, res).commit();
+    }
 
-        // 4) Next resource start to end of file
-        System.arraycopy(_data, res.getDataOffset() + origLength,
-                newData, res.getDataOffset() + data.length,
-                _data.length - res.getDataOffset() - origLength);
+    /**
+     * Overwrites the specified resource directly in the .rsrc file on disk, if the new data
+     * is no longer than the old, without reading or rewriting anything else in the file.
+     * If the resource ID and type don't exist, do nothing.
+     * @param data  {@code byte[]} data to replace resource with
+     * @param id  The ID of the resource to patch
+     * @param type  The {@link ResourceType} of the resource being replaced
+     * @return  false, with nothing written, if the data is longer than the resource
+     * @throws ReadOnlyBufferException  If the file was mapped {@link FileChannel.MapMode#READ_ONLY}
+     * @see RsrcEdit#patch()
+     */
+    public boolean patchResourceData(byte[] data, int id, ResourceType type) throws IOException
+    {
+        return patchResourceData(data, getResourceByID(id, type));
+    }
 
-        _data = newData;
+    /**
+     * Overwrites the specified resource directly in the .rsrc file on disk, if the new data
+     * is no longer than the old, without reading or rewriting anything else in the file.
+     * If the resource is null, do nothing.
+     * @param data  {@code byte[]} data to replace resource with
+     * @param res  Resource to patch
+     * @return  false, with nothing written, if the data is longer than the resource
+     * @throws ReadOnlyBufferException  If the file was mapped {@link FileChannel.MapMode#READ_ONLY}
+     * @see RsrcEdit#patch()
+     */
+    public boolean patchResourceData(byte[] data, Resource res) throws IOException
+    {
+        return edit().replace(data, res).patch();
+    }
 
-        shiftHeaderOffset(difference);
-        updateHeaderTable(res.getDataOffset(), difference);
+    /**
+     * Returns the number of bytes in the file that don't belong to any resource, such as
+     * the space left behind by {@link RsrcEdit#append()} and {@link RsrcEdit#patch()}.
+     * Counting them means reading every resource's length, so the count is kept until the
+     * file is edited some other way.
+     */
+    public long getDeadSpace()
+    {
+        return _snapshot.getDeadSpace();
     }
 
     /**
-     * Changes header offset to account for changes in
-     * resource sizes
-     * @param difference  Difference of new .rsrc file size and old file size
+     * Rewrites the .rsrc file with no dead space, see {@link #getDeadSpace()}, then reopens it.
+     * Any committed edits are saved along the way. The file is replaced the same way as by
+     * {@link #saveRsrcFile}, and every {@link Resource} in the header table is replaced.
      */
-    private void shiftHeaderOffset(int difference)
+    public synchronized void compact() throws IOException
     {
-        _headerOffset += difference;
+        if (_file == null)
+        {
+            throw new IllegalStateException("RsrcFile wasn't created from a file");
+        }
 
-        byte[] headerBytes = ByteBuffer.allocate(4).putInt(_headerOffset).array();
+        RsrcEvents.FileSave event = RsrcEvents.FileSave.start();
+        RsrcWriter writer = new RsrcWriter().addAll(this);
+        RsrcEdit.writeAtomically(_file.toPath(), false, writer::writeTo, event);
 
-        // Update header offset bytes with new offset
-        System.arraycopy(headerBytes, 0x00, _data, 0x04, headerBytes.length);
-        System.arraycopy(headerBytes, 0x00, _data, _headerOffset + 0x04, headerBytes.length);
-        headerBytes[2] -= 0x01;
-        System.arraycopy(headerBytes, 0x00, _data, 0x08, headerBytes.length);
-        System.arraycopy(headerBytes, 0x00, _data, _headerOffset + 0x08, headerBytes.length);
+        loadRsrcFile(_file);
+        event.finish(this);
     }
 
     /**
-     * Updates all resource offsets in the header table to
-     * account for the replacement resource which will either be
-     * larger or smaller in size
-     * @param shiftedOffset  The replaced {@link Resource}'s byte offset
-     * @param shiftvalue  The difference between the new and old
-     *                    resource's size
+     * Compacts the .rsrc file, see {@link #compact()}, if enough of it is dead space
+     * @param maxDeadRatio  Fraction of the file, between 0 and 1, that may be dead space
+     *                      before it's compacted
+     * @return  true if the file was compacted
      */
-    private void updateHeaderTable(int shiftedOffset, int shiftvalue)
+    public synchronized boolean compactIfNeeded(double maxDeadRatio) throws IOException
     {
-        _pointer = _headerOffset;
-
-        for (ResourceLinkedList list : _headerTable.values())
+        RsrcSnapshot snapshot = _snapshot;
+        if (snapshot.getDeadSpace() <= maxDeadRatio * snapshot.getStorage().size())
         {
-            list.forEach(t ->
-            {
-                if (t.getStartOffset() > shiftedOffset)
-                {
-                    t.shiftStartOffset(shiftvalue);
-                }
-
-                byte[] id = Arrays.copyOf(t.getResourceIDBytes(), 0x04);
-                id[2] = id[3] = (byte) 0xFF;
+            return false;
+        }
 
-                // Should already be at resource ID, but verify w/ findMatchingOffsetStart, skip 4 bytes to start
-                // at resource offset bytes, then copy in new resource offset
-                int index = findMatchingOffsetStart(id, _pointer) + 0x04;
-                System.arraycopy(t.getStartOffsetBytes(), 0x00, _data, index, 0x08);
+        compact();
+        return true;
+    }
 
-                // Skip just read offset bytes to next resource ID
-                _pointer = index + 0x08;
-            });
-        }
+    /**
+     * Starts a batch of resource replacements. Staged replacements are applied together
+     * in a single pass over the file when the {@link RsrcEdit} is committed.
+     * @return  A new, empty {@code RsrcEdit} against this {@code RsrcFile}
+     */
+    public RsrcEdit edit()
+    {
+        return new RsrcEdit(this);
     }
 
     /**
@@ -277,20 +824,20 @@ public class RsrcFile
      */
     public Resource getResourceByID(int id, ResourceType type)
     {
-        int index = _headerTable.get(type).indexOf(id);
-        return _headerTable.get(type).get(index);
+        return _snapshot.getResourceByID(id, type);
     }
 
     /**
      * Searches this .rsrc file for the given {@link ResourceType}
      * and returns a list of all resources if present
      * @param type  {@code ResourceType} to search for
-     * @return  list of {@link Resource} objects matching the type
+     * @return  list of {@link Resource} objects matching the type, which can't be changed
      * @see {@link ResourceLinkedList}
      */
     public ResourceLinkedList getResourceListByType(ResourceType type)
     {
-        return (_headerTable.containsKey(type)) ? _headerTable.get(type) : new ResourceLinkedList();
+        ResourceLinkedList list = _snapshot.getResourceList(type);
+        return (list != null) ? list.asReadOnly() : new ResourceLinkedList().asReadOnly();
     }
 
     /**
@@ -300,7 +847,40 @@ public class RsrcFile
      */
     public ResourceType[] getResourceTypesInFile()
     {
-        return _headerTable.keySet().toArray(new ResourceType[]{});
+        return _snapshot.getTypes();
+    }
+
+    /**
+     * Streams every resource in this .rsrc file: its type, ID, data offset and length, in the
+     * order they're listed in the header. The stream reads from the file as it was when the
+     * stream was created, even if it's edited in the meantime.
+     * <p>
+     * The stream is sized from the header's type list without parsing it, and splits by type and
+     * then by index, so {@code .parallel()} spreads both parsing and whatever's done with each
+     * resource across every core:
+     * <pre>
+     *     rsrc.resources().parallel()
+     *         .filter(entry -> entry.getLength() > 1 << 20)
+     *         .collect(Collectors.groupingBy(ResourceEntry::getType));
+     * </pre>
+     * @return  A stream of every resource, without its data
+     * @see #resourcesWithData()
+     */
+    public Stream<ResourceEntry> resources()
+    {
+        return StreamSupport.stream(new ResourceSpliterator(_snapshot, false), false);
+    }
+
+    /**
+     * Streams every resource in this .rsrc file along with its data, see {@link #resources()}.
+     * Each entry's {@link ResourceEntry#getData()} is a read-only view of the resource, which for
+     * a memory mapped file, or one read onto the heap, shares the file's bytes rather than copying
+     * them; a file read on demand reads each resource as it's streamed.
+     * @return  A stream of every resource, with its data
+     */
+    public Stream<ResourceEntry> resourcesWithData()
+    {
+        return StreamSupport.stream(new ResourceSpliterator(_snapshot, true), false);
     }
 
     /**
@@ -310,147 +890,313 @@ public class RsrcFile
      */
     public int getResourceLength(Resource res)
     {
-        byte[] length = Arrays.copyOfRange(_data, res.getLengthOffset(), res.getLengthOffset() + 0x04);
-        return ((length[0] & 0xFF) << 24) | ((length[1] & 0xFF) << 16) |
-                ((length[2] & 0xFF) << 8) | (length[3]) & 0xFF;
+        RsrcSnapshot snapshot = _snapshot;
+        return snapshot.getResourceLength(snapshot.resolve(res));
     }
 
     /**
-     * Returns a length 4 byte array representing
-     * the given resource's number of bytes
-     * @param res  The resource to get length
-     * @return  {@code byte[]} Number of bytes in the resource
+     * Returns a 64 bit hash of a resource's data (xxHash64), so resources can be compared, or
+     * checked for changes, without comparing their bytes
+     * @param id  The ID of the resource to hash
+     * @param type  The {@link ResourceType} of the resource to hash
+     * @see #getContentHash(Resource)
      */
-    public byte[] getResourceLengthBytes(Resource res)
+    public long getContentHash(int id, ResourceType type)
     {
-        return ByteBuffer.allocate(4).putInt(getResourceLength(res)).array();
+        RsrcSnapshot snapshot = _snapshot;
+        Resource res = snapshot.getResourceByID(id, type);
+        if (res == null)
+        {
+            throw new IllegalArgumentException("No " + type + " resource " + id);
+        }
+        return snapshot.getContentHash(res);
     }
 
-    private byte[] getDataLengthBytes(int datalength)
+    /**
+     * Returns a 64 bit hash of a resource's data (xxHash64), so resources can be compared, or
+     * checked for changes, without comparing their bytes. Resources are hashed when first asked
+     * for, every resource of the same type at once, in parallel, and the hashes are kept until
+     * the file is next edited.
+     * @param res  The resource to hash
+     * @throws IllegalArgumentException  If the file has no such resource
+     */
+    public long getContentHash(Resource res)
     {
-        return ByteBuffer.allocate(4).putInt(datalength).array();
+        RsrcSnapshot snapshot = _snapshot;
+        return snapshot.getContentHash(snapshot.resolve(res));
     }
 
     /**
-     * Knuth-Morris-Pratt Algorithm custom implementation
-     * for byte pattern matching. Search will be performed on
-     * this {@code RsrcFile} object
-     * @param pattern  The byte pattern to search for
-     * @param startOffset  The offset to begin searching at
-     * @return  The index of the first byte for the first pattern
-     *          found matching the pattern sequence
+     * Finds resources with byte-identical data, such as the same icon stored under different IDs.
+     * Every resource is hashed, see {@link #getContentHash(Resource)}, and those with matching
+     * hashes are then compared byte for byte.
+     * @return  Each group of identical resources, in the order they're found in the file
+     * @see RsrcCatalog#findDuplicates()
      */
-    private int findMatchingOffsetStart(byte[] pattern, int startOffset)
+    public List<List<Resource>> findDuplicates()
     {
-        int j = 0; int matchPoint = -1;
-        int[] failure = new int[pattern.length];
+        RsrcSnapshot snapshot = _snapshot;
 
-        if(_data.length == 0)
+        Map<Long, List<Resource>> byHash = new HashMap<>();
+        for (int i = 0; i < snapshot.getResourceCount(); i++)
         {
-            return -1;
+            Resource res = snapshot.getResourceInOrder(i);
+            byHash.computeIfAbsent(snapshot.getContentHash(res), hash -> new ArrayList<>()).add(res);
         }
 
-        for (int i = startOffset; i < _data.length; i++)
+        List<List<Resource>> duplicates = new ArrayList<>();
+        for (List<Resource> group : byHash.values())
         {
-            while (j > 0 && pattern[j] != _data[i])
+            // A hash collision would put different resources together, so split off those that match the first
+            while (group.size() > 1)
             {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == _data[i])
-            {
-                j += 1;
-            }
-            if (j == pattern.length)
-            {
-                matchPoint = i - pattern.length + 1;
-                break;
+                ByteBuffer first = getResourceView(snapshot, group.get(0));
+                List<Resource> same = new ArrayList<>();
+                List<Resource> rest = new ArrayList<>();
+
+                for (Resource res : group)
+                {
+                    (getResourceView(snapshot, res).equals(first) ? same : rest).add(res);
+                }
+
+                if (same.size() > 1)
+                {
+                    duplicates.add(same);
+                }
+                group = rest;
             }
         }
 
-        return matchPoint;
+        duplicates.sort(Comparator.comparingLong(group -> group.get(0).getStartOffset()));
+        return duplicates;
+    }
+
+    /**
+     * Returns the resources that have been replaced since this {@code RsrcFile} was opened, in
+     * any way, and haven't since been marked clean. Saving the file doesn't make them clean, so
+     * jobs that sync or export changes can find out what's changed and then mark it clean.
+     * Note a resource replaced with identical data is still dirty.
+     * @return  The dirty resources, in the order they're found in the file
+     * @see #markClean(Collection)
+     */
+    public List<Resource> getDirtyResources()
+    {
+        RsrcSnapshot snapshot = _snapshot;
+        List<Resource> dirty = new ArrayList<>();
+        for (Resource res : _dirty)
+        {
+            dirty.add(snapshot.resolve(res));
+        }
+        dirty.sort(Comparator.comparingLong(Resource::getStartOffset));
+        return dirty;
+    }
+
+    /**
+     * Determines whether a resource has been replaced, see {@link #getDirtyResources()}
+     * @param res  The resource to check
+     * @return  true if the resource has been replaced and not since marked clean
+     */
+    public boolean isDirty(Resource res)
+    {
+        return _dirty.contains(res);
+    }
+
+    /**
+     * Marks resources clean, typically those returned by {@link #getDirtyResources()} once
+     * they've been dealt with. Resources replaced again in the meantime are marked clean too.
+     * @param resources  The resources to mark clean
+     */
+    public void markClean(Collection<Resource> resources)
+    {
+        _dirty.removeAll(resources);
+    }
+
+    /**
+     * Returns a length 4 byte array representing
+     * the given resource's number of bytes
+     * @param res  The resource to get length
+     * @return  {@code byte[]} Number of bytes in the resource
+     */
+    public byte[] getResourceLengthBytes(Resource res)
+    {
+        int length = getResourceLength(res);
+        return new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length};
+    }
+
+    /**
+     * Copies a range of bytes out of a {@code RsrcFile}
+     * @param data  The file's bytes
+     * @param offset  The offset to begin copying from
+     * @param length  Number of bytes to copy
+     * @return  {@code byte[]} of the copied range
+     */
+    private static byte[] readBytes(RsrcStorage data, long offset, int length)
+    {
+        byte[] bytes = new byte[length];
+        data.get(offset, bytes, 0x00, length);
+        return bytes;
     }
 
     /**
      * Saves this {@code RsrcFile} to disk,
-     * overrwriting the old file
+     * overrwriting the old file. The file is written to a temporary
+     * file first, then renamed over the old one, see {@link RsrcEdit#save}
      * @param createBackup  If it doesn't already exist, creates a
      *                      backup of the file being used in this
      *                      {@code RsrcFile} object named "*.rsrc.bak"
      */
     public void saveRsrcFile(boolean createBackup) throws IOException
     {
-        FileOutputStream fos;
-        if(createBackup)
+        edit().save(createBackup);
+    }
+
+    /**
+     * Saves this {@code RsrcFile} to disk without blocking the calling thread, see {@link #saveRsrcFile}.
+     * The save runs on {@link ForkJoinPool#commonPool()}, never on the executor given to
+     * {@link #openAsync(Path, ExecutorService)}, which has to stay free to complete the save's reads.
+     * @param createBackup  If it doesn't already exist, keeps the original file as "*.rsrc.bak"
+     * @return  Future completed once the file has been saved and reopened
+     */
+    public CompletableFuture<Void> saveAsync(boolean createBackup)
+    {
+        return saveAsync(createBackup, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Saves this {@code RsrcFile} to disk without blocking the calling thread, see {@link #saveRsrcFile}.
+     * Syncing the new file to disk and renaming it over the old one can't be done asynchronously,
+     * so the whole save runs as one task on the given executor, which should allow blocking.
+     * @param createBackup  If it doesn't already exist, keeps the original file as "*.rsrc.bak"
+     * @param executor  Runs the save. If this {@code RsrcFile} was opened with {@link #openAsync},
+     *                  it mustn't be the executor given to that, see {@link #openAsync(Path, ExecutorService)}
+     * @return  Future completed once the file has been saved and reopened
+     */
+    public CompletableFuture<Void> saveAsync(boolean createBackup, Executor executor)
+    {
+        return CompletableFuture.runAsync(() ->
         {
             try
             {
-                Files.copy(_file.toPath(), new File(_file + ".bak").toPath());
+                saveRsrcFile(createBackup);
             }
-            catch (FileAlreadyExistsException e)
+            catch (IOException e)
             {
-                // Do nothing
+                throw new CompletionException(e);
             }
+        }, executor);
+    }
 
+    /**
+     * Releases the file handle held by a memory mapped {@code RsrcFile}.
+     * Resources can still be loaded from the mapping afterwards, but it can no longer be saved.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        RsrcStorage data = _snapshot.getStorage();
+        if (data != null)
+        {
+            data.close();
         }
-
-        fos = new FileOutputStream(_file);
-        fos.write(_data);
-        fos.close();
     }
 
     /** Returns the size, in bytes, of the file used to instantiate this {@code RsrcFile} */
-    public int getFileSizeInBytes()
+    public long getFileSizeInBytes()
     {
-        return (int) _file.length();
+        return (_file != null) ? _file.length() : _snapshot.getStorage().size();
     }
 
     /**
-     *  Returns the bytes in this {@code RsrcFile} object.
-     *  Any new files inserted will be reflected in this {@codebyte[]}
+     *  Returns a copy of the bytes in this {@code RsrcFile} object, as they are now.
+     *  Later edits aren't reflected in the copy, and changing the copy doesn't change the file;
+     *  use {@link #setRsrcData} to replace the bytes.
      */
     public byte[] getRsrcData()
     {
-        return _data;
+        return _snapshot.getStorage().toByteArray();
+    }
+
+    /** Sets the raw data backing this {@code RsrcFile} object to a copy of the given bytes */
+    public synchronized void setRsrcData(byte[] _data)
+    {
+        setSnapshot(_snapshot.withStorage(new HeapStorage(_data.clone()), -1));
     }
 
-    /** Sets the raw data backing this {@code RsrcFile} object */
-    public void setRsrcData(byte[] _data)
+    /** Returns true if the whole .rsrc file was read onto the heap when it was loaded */
+    boolean isReadFully()
     {
-        this._data = _data;
+        return _mapMode == null && !_readOnDemand;
+    }
+
+    /** Returns true if this {@code RsrcFile} was mapped {@link FileChannel.MapMode#READ_ONLY} */
+    boolean isReadOnly()
+    {
+        return _mapMode == FileChannel.MapMode.READ_ONLY;
+    }
+
+    /** Returns true if edits have been committed in memory since the file was last loaded or saved */
+    boolean isModified()
+    {
+        return _modified;
+    }
+
+    /** Marks whether edits have been committed in memory since the file was last loaded or saved */
+    void setModified(boolean _modified)
+    {
+        this._modified = _modified;
     }
 
     /** Returns the current header offset location */
-    public int getHeaderOffset()
+    public long getHeaderOffset()
     {
-        return _headerOffset;
+        return _snapshot.getHeaderOffset();
     }
 
     /** Sets the current header offset location */
-    public void setHeaderOffset(int _headerOffset)
+    public synchronized void setHeaderOffset(long _headerOffset)
     {
-        this._headerOffset = _headerOffset;
+        RsrcSnapshot snapshot = _snapshot;
+        setSnapshot(new RsrcSnapshot(snapshot.getStorage(), _headerOffset, snapshot.getHeaderTable(), -1));
     }
 
-    /** Returns the header table, which maps resource IDs to their offsets in the file */
-    public LinkedHashMap<ResourceType, ResourceLinkedList> getHeaderTable()
+    /**
+     * Returns the header table, which maps resource IDs to their offsets in the file.
+     * Neither the table nor its lists can be changed; use {@link #setHeaderTable} to replace it.
+     */
+    public Map<ResourceType, ResourceLinkedList> getHeaderTable()
     {
-        return _headerTable;
+        Map<ResourceType, ResourceLinkedList> headerTable = new LinkedHashMap<>();
+        for (Map.Entry<ResourceType, ResourceLinkedList> entry : _snapshot.getHeaderTable().entrySet())
+        {
+            headerTable.put(entry.getKey(), entry.getValue().asReadOnly());
+        }
+        return Collections.unmodifiableMap(headerTable);
     }
 
-    /** Sets the header table, which maps resource IDs to their offsets in the file */
-    public void setHeaderTable(LinkedHashMap<ResourceType, ResourceLinkedList> _headerTable)
+    /**
+     * Sets the header table, which maps resource IDs to their offsets in the file.
+     * The table and its lists are copied, so changing them afterwards has no effect.
+     */
+    public synchronized void setHeaderTable(Map<ResourceType, ResourceLinkedList> _headerTable)
     {
-        this._headerTable = _headerTable;
+        Map<ResourceType, ResourceLinkedList> headerTable = new LinkedHashMap<>();
+        for (Map.Entry<ResourceType, ResourceLinkedList> entry : _headerTable.entrySet())
+        {
+            headerTable.put(entry.getKey(), entry.getValue().withStartOffsets(LongUnaryOperator.identity()));
+        }
+
+        RsrcSnapshot snapshot = _snapshot;
+        setSnapshot(new RsrcSnapshot(snapshot.getStorage(), snapshot.getHeaderOffset(), headerTable, -1));
     }
 
     /** Returns the current offset being read in the file */
-    public int getPointerLocation()
+    public long getPointerLocation()
     {
         return _pointer;
     }
 
     /** Sets the current offset being read in the file */
-    public void setPointerLocation(int _pointer)
+    public void setPointerLocation(long _pointer)
     {
         this._pointer = _pointer;
     }
@@ -462,9 +1208,16 @@ public class RsrcFile
     }
 
     /** Sets the .rsrc file backing this {@code RsrcFile} and processes it */
-    public void loadRsrcFile(File file)
+    public synchronized void loadRsrcFile(File file)
     {
+        // Reopening the same file, after it's been saved, keeps track of what's been replaced
+        if (!file.equals(_file))
+        {
+            _dirty.clear();
+        }
+
         this._file = file;
+        this._channel = null;
 
         init();
     }
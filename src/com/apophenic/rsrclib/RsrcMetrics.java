@@ -0,0 +1,73 @@
+package com.apophenic.rsrclib;
+
+/**
+ * Told how long the library's main operations take, and how much work each one did, so they
+ * can be fed into a metrics system. Every method does nothing by default, so implementations
+ * only override what they're interested in. Methods are called on whichever thread did the
+ * work, right after it finishes, so they should return quickly.
+ * <p>
+ * The same operations are recorded as Java Flight Recorder events, under the "rsrc-lib"
+ * category, whenever a recording has them enabled. With no listener installed and no
+ * recording running, the cost of either is a field read per operation.
+ */
+public interface RsrcMetrics
+{
+    /**
+     * Installs a listener for every {@link RsrcFile}, replacing any installed before
+     * @param metrics  The listener, or null to remove the installed one
+     */
+    static void install(RsrcMetrics metrics)
+    {
+        RsrcEvents.setMetrics(metrics);
+    }
+
+    /**
+     * Called after a file's header has been read. Only its type list is parsed up front,
+     * each type's entries are parsed the first time the type is needed.
+     * @param rsrc  The file
+     * @param entries  Number of resources the header lists
+     * @param nanos  Time taken, in nanoseconds
+     */
+    default void headerParsed(RsrcFile rsrc, int entries, long nanos)
+    {
+    }
+
+    /**
+     * Called after a resource's data has been copied out of a file, by
+     * {@link RsrcFile#loadResourceData} or {@link RsrcFile#readResource}
+     * @param rsrc  The file
+     * @param res  The resource
+     * @param bytes  Number of bytes copied
+     * @param nanos  Time taken, in nanoseconds
+     */
+    default void resourceLoaded(RsrcFile rsrc, Resource res, int bytes, long nanos)
+    {
+    }
+
+    /**
+     * Called after replacements have been applied to a file, by {@link RsrcEdit#commit()}
+     * (and so {@link RsrcFile#saveResourceData}), {@link RsrcEdit#patch()} or {@link RsrcEdit#append()}
+     * @param rsrc  The file
+     * @param kind  "commit", "patch" or "append"
+     * @param resources  Number of resources replaced
+     * @param bytes  Number of bytes copied in memory by a commit, or written to disk otherwise
+     * @param entriesPatched  Number of header entries rewritten because their resources moved
+     * @param nanos  Time taken, in nanoseconds
+     */
+    default void resourcesEdited(RsrcFile rsrc, String kind, int resources, long bytes, int entriesPatched,
+                                 long nanos)
+    {
+    }
+
+    /**
+     * Called after a file has been saved, by {@link RsrcFile#saveRsrcFile}, {@link RsrcEdit#save}
+     * or {@link RsrcFile#compact()}
+     * @param rsrc  The file
+     * @param bytes  Number of bytes written
+     * @param syncNanos  Time spent waiting for the file to be synced to disk, in nanoseconds
+     * @param nanos  Time taken in all, in nanoseconds
+     */
+    default void fileSaved(RsrcFile rsrc, long bytes, long syncNanos, long nanos)
+    {
+    }
+}
@@ -0,0 +1,490 @@
+package com.apophenic.rsrclib;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between two versions of a .rsrc file, resource by resource: which resources
+ * were added, which were removed and which were changed, so one version can be turned into the
+ * other by shipping only what changed.
+ * <p>
+ * {@link #diff} matches resources by type and ID. Resources whose lengths, content hashes
+ * (see {@link RsrcFile#getContentHash(Resource)}), names and attributes are the same in both
+ * versions are left out. A changed resource is recorded as its new data or, when it's smaller,
+ * as a delta against its old data, so editing a few bytes of a large resource costs about as
+ * much as the edit. Every resource the patch adds or changes carries its name and attributes.
+ * <p>
+ * {@link #apply} writes a copy of the old version with the changes made, in a single sequential
+ * pass, see {@link RsrcWriter}: unchanged resources are copied straight across, and only the
+ * resources the patch touches are read. Each of those is checked against the hash it had when the
+ * patch was made first, so a patch is never applied to the wrong file.
+ * <pre>
+ *     RsrcPatch patch = RsrcPatch.diff(oldRsrc, newRsrc);
+ *     patch.writeTo(out);
+ *     ...
+ *     RsrcPatch.read(in).apply(oldRsrc, Paths.get("new.rsrc"));
+ * </pre>
+ */
+public class RsrcPatch
+{
+    /** "RPAT", marks the start of a written patch */
+    private static final int MAGIC = 0x52504154;
+
+    /** version of the written patch format */
+    private static final int VERSION = 1;
+
+    /** a resource only in the new version, recorded with its data */
+    private static final int ADDED = 0x00;
+
+    /** a resource only in the old version */
+    private static final int REMOVED = 0x01;
+
+    /** a resource in both versions, recorded with its new data */
+    private static final int REPLACED = 0x02;
+
+    /** a resource in both versions, recorded as a delta against its old data, see {@link ResourceDelta} */
+    private static final int DELTA = 0x03;
+
+    /** a resource in both versions whose data is unchanged, but whose name or attributes aren't */
+    private static final int RENAMED = 0x04;
+
+    /** every change, with the old version's types first, in the order they're listed */
+    private final List<Change> _changes;
+
+    private RsrcPatch(List<Change> changes)
+    {
+        this._changes = changes;
+    }
+
+    /**
+     * Finds the differences between two versions of a .rsrc file, recording changed resources
+     * as deltas wherever that's smaller, see {@link #diff(RsrcFile, RsrcFile, boolean)}
+     * @param base  The old version
+     * @param target  The new version
+     * @return  A patch that turns {@code base} into {@code target}
+     */
+    public static RsrcPatch diff(RsrcFile base, RsrcFile target)
+    {
+        return diff(base, target, true);
+    }
+
+    /**
+     * Finds the differences between two versions of a .rsrc file. Where a type lists the same ID
+     * more than once, only the first is compared, matching {@link RsrcFile#getResourceByID}.
+     * @param base  The old version
+     * @param target  The new version
+     * @param deltas  If true, changed resources are recorded as deltas against their old data
+     *                wherever that's smaller than their new data
+     * @return  A patch that turns {@code base} into {@code target}
+     */
+    public static RsrcPatch diff(RsrcFile base, RsrcFile target, boolean deltas)
+    {
+        RsrcSnapshot from = base.getSnapshot();
+        RsrcSnapshot to = target.getSnapshot();
+        List<Change> changes = new ArrayList<>();
+
+        // Removed and changed resources, then anything added
+        for (ResourceType type : from.getTypes())
+        {
+            ResourceLinkedList list = from.getResourceList(type);
+            for (int i = 0; i < list.size(); i++)
+            {
+                Resource res = list.get(i);
+                if (list.indexOf(res.getResourceID()) != i)
+                {
+                    continue;
+                }
+
+                Resource other = to.getResourceByID(res.getResourceID(), type);
+                if (other == null)
+                {
+                    changes.add(new Change(REMOVED, type, res.getResourceID(), from.getContentHash(res), 0, null));
+                }
+                else if (from.getResourceLength(res) != to.getResourceLength(other) ||
+                         from.getContentHash(res) != to.getContentHash(other))
+                {
+                    changes.add(changed(from, res, to, other, deltas).named(to, other));
+                }
+                else if (!Arrays.equals(from.getName(res), to.getName(other)) ||
+                         from.getAttributes(res) != to.getAttributes(other))
+                {
+                    changes.add(new Change(RENAMED, type, res.getResourceID(), from.getContentHash(res), 0, null)
+                                        .named(to, other));
+                }
+            }
+        }
+
+        for (ResourceType type : to.getTypes())
+        {
+            ResourceLinkedList list = to.getResourceList(type);
+            for (int i = 0; i < list.size(); i++)
+            {
+                Resource res = list.get(i);
+                if (list.indexOf(res.getResourceID()) == i && from.getResourceByID(res.getResourceID(), type) == null)
+                {
+                    changes.add(new Change(ADDED, type, res.getResourceID(), 0, 0, read(to, res)).named(to, res));
+                }
+            }
+        }
+
+        return new RsrcPatch(changes);
+    }
+
+    /** Records a resource that's in both versions but has changed */
+    private static Change changed(RsrcSnapshot from, Resource res, RsrcSnapshot to, Resource other, boolean deltas)
+    {
+        byte[] data = read(to, other);
+        if (deltas)
+        {
+            byte[] delta = ResourceDelta.encode(read(from, res), data);
+            if (delta.length < data.length)
+            {
+                return new Change(DELTA, res.getType(), res.getResourceID(), from.getContentHash(res),
+                                  to.getContentHash(other), delta);
+            }
+        }
+        return new Change(REPLACED, res.getType(), res.getResourceID(), from.getContentHash(res), 0, data);
+    }
+
+    /** Copies a resource's data out of a snapshot */
+    private static byte[] read(RsrcSnapshot snapshot, Resource res)
+    {
+        ByteBuffer view = RsrcFile.getResourceView(snapshot, res);
+        byte[] data = new byte[view.remaining()];
+        view.get(data);
+        return data;
+    }
+
+    /**
+     * Reads a patch written by {@link #writeTo}
+     * @param in  Stream to read from, which should be buffered. It isn't closed, and nothing past the patch is read.
+     * @throws IOException  If the stream doesn't hold a patch, or holds a corrupt one
+     */
+    public static RsrcPatch read(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION)
+        {
+            throw new IOException("Not a .rsrc patch, or one written by another version");
+        }
+
+        int count = data.readInt();
+        if (count < 0)
+        {
+            throw new IOException("Patch is corrupt: " + count + " changes");
+        }
+
+        List<Change> changes = new ArrayList<>();
+        for (int c = 0; c < count; c++)
+        {
+            int kind = data.readUnsignedByte();
+            if (kind > RENAMED)
+            {
+                throw new IOException("Patch is corrupt: unknown change " + kind);
+            }
+
+            ResourceType type = ResourceType.forCode(data.readInt());
+            int id = data.readUnsignedShort();
+
+            long baseHash = (kind != ADDED) ? data.readLong() : 0;
+            long targetHash = (kind == DELTA) ? data.readLong() : 0;
+
+            int attributes = 0;
+            byte[] name = null;
+            if (kind != REMOVED)
+            {
+                attributes = data.readUnsignedByte();
+                int length = data.readShort();
+                if (length < -1 || length > 0xFF)
+                {
+                    throw new IOException("Patch is corrupt: a name is " + length + " bytes long");
+                }
+                name = (length >= 0) ? readFully(data, length) : null;
+            }
+
+            byte[] bytes = null;
+            if (kind != REMOVED && kind != RENAMED)
+            {
+                int length = data.readInt();
+                if (length < 0)
+                {
+                    throw new IOException("Patch is corrupt: a resource is " + length + " bytes long");
+                }
+                bytes = readFully(data, length);
+            }
+
+            Change change = new Change(kind, type, id, baseHash, targetHash, bytes);
+            change._name = name;
+            change._attributes = attributes;
+            changes.add(change);
+        }
+        return new RsrcPatch(changes);
+    }
+
+    /**
+     * Reads the given number of bytes. They're read a chunk at a time, so a corrupt length
+     * runs out of stream before it can claim more memory than the stream holds.
+     * @throws IOException  If the stream ends first
+     */
+    private static byte[] readFully(InputStream in, int length) throws IOException
+    {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length)
+        {
+            throw new IOException("Patch is corrupt: it ends part way through a resource");
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes this patch, so it can be read back with {@link #read}
+     * @param out  Stream to write to. It's flushed, but not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(_changes.size());
+
+        for (Change change : _changes)
+        {
+            data.writeByte(change._kind);
+            data.writeInt(change._type.getCode());
+            data.writeShort(change._id);
+
+            if (change._kind != ADDED)
+            {
+                data.writeLong(change._baseHash);
+            }
+            if (change._kind == DELTA)
+            {
+                data.writeLong(change._targetHash);
+            }
+            if (change._kind != REMOVED)
+            {
+                // The name's length is -1 if it has none
+                data.writeByte(change._attributes);
+                data.writeShort((change._name != null) ? change._name.length : -1);
+                if (change._name != null)
+                {
+                    data.write(change._name);
+                }
+            }
+            if (change._data != null)
+            {
+                data.writeInt(change._data.length);
+                data.write(change._data);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Writes a copy of a .rsrc file with this patch's changes made. Changed resources keep their
+     * places; added ones follow the others of their type. The output holds the same resources, with
+     * the same names and attributes, as the version the patch was made from, but isn't necessarily
+     * laid out byte for byte the same.
+     * @param base  The version the patch was made from
+     * @param out  Channel to write to. It isn't closed.
+     * @throws IOException  If {@code base} isn't the version the patch was made from
+     */
+    public void apply(RsrcFile base, WritableByteChannel out) throws IOException
+    {
+        prepare(base.getSnapshot()).writeTo(out);
+    }
+
+    /**
+     * Writes a copy of a .rsrc file with this patch's changes made, see
+     * {@link #apply(RsrcFile, WritableByteChannel)}. If the file to write is {@code base}'s own
+     * file, it's replaced the same way as by {@link RsrcFile#saveRsrcFile} and then reopened,
+     * and {@code base}'s listeners are told which resources changed.
+     * @param base  The version the patch was made from
+     * @param out  File to write to
+     * @throws IOException  If {@code base} isn't the version the patch was made from
+     */
+    public void apply(RsrcFile base, Path out) throws IOException
+    {
+        File file = base.getRsrcFile();
+        if (file == null || !Files.exists(out) || !Files.isSameFile(file.toPath(), out))
+        {
+            prepare(base.getSnapshot()).writeTo(out);
+            return;
+        }
+
+        synchronized (base)
+        {
+            RsrcSnapshot snapshot = base.getSnapshot();
+            RsrcEvents.FileSave event = RsrcEvents.FileSave.start();
+            RsrcWriter writer = prepare(snapshot);
+            RsrcEdit.writeAtomically(file.toPath(), false, writer::writeTo, event);
+
+            base.loadRsrcFile(file);
+            event.finish(base);
+
+            // Removed resources are reported as they were, the rest as they are now
+            RsrcSnapshot patched = base.getSnapshot();
+            List<Resource> changed = new ArrayList<>();
+            for (Change change : _changes)
+            {
+                Resource res = (change._kind == REMOVED) ? snapshot.getResourceByID(change._id, change._type)
+                                                         : patched.getResourceByID(change._id, change._type);
+                changed.add(res);
+            }
+            if (!changed.isEmpty())
+            {
+                base.fireResourcesChanged(Collections.unmodifiableList(changed));
+            }
+        }
+    }
+
+    /**
+     * Queues up a copy of a snapshot with this patch's changes made, checking every
+     * resource the patch touches against the hash it had when the patch was made
+     */
+    private RsrcWriter prepare(RsrcSnapshot snapshot) throws IOException
+    {
+        RsrcWriter writer = new RsrcWriter().addAll(snapshot);
+
+        for (Change change : _changes)
+        {
+            Resource res = snapshot.getResourceByID(change._id, change._type);
+            if (change._kind == ADDED)
+            {
+                if (res != null)
+                {
+                    throw new IOException("Patch adds " + change + ", which is already in the file");
+                }
+                writer.add(change._type, change._id, change._data)
+                      .setNameAndAttributes(change._type, change._id, change._name, change._attributes);
+                continue;
+            }
+
+            if (res == null)
+            {
+                throw new IOException("Patch changes " + change + ", which isn't in the file");
+            }
+
+            // Only the resources the patch touches are read, however many there are in all
+            ByteBuffer view = RsrcFile.getResourceView(snapshot, res);
+            if (XXHash64.hash(view) != change._baseHash)
+            {
+                throw new IOException("Patch changes " + change + ", which doesn't match the version it was made from");
+            }
+
+            switch (change._kind)
+            {
+                case REMOVED:
+                    writer.remove(change._type, change._id);
+                    continue;
+                case RENAMED:
+                    break;
+                case REPLACED:
+                    writer.add(change._type, change._id, change._data);
+                    break;
+                default:
+                    byte[] old = new byte[view.remaining()];
+                    view.get(old);
+                    byte[] data = ResourceDelta.apply(old, change._data);
+                    if (XXHash64.hash(ByteBuffer.wrap(data)) != change._targetHash)
+                    {
+                        throw new IOException("Patch is corrupt: its delta for " + change + " didn't rebuild it");
+                    }
+                    writer.add(change._type, change._id, data);
+                    break;
+            }
+            writer.setNameAndAttributes(change._type, change._id, change._name, change._attributes);
+        }
+        return writer;
+    }
+
+    /** Returns the number of resources added, removed, changed or renamed */
+    public int getChangeCount()
+    {
+        return _changes.size();
+    }
+
+    /** Returns true if both versions hold the same resources */
+    public boolean isEmpty()
+    {
+        return _changes.isEmpty();
+    }
+
+    /** Returns the size, in bytes, of this patch once written, see {@link #writeTo} */
+    public long getSize()
+    {
+        long size = 0x0C;
+        for (Change change : _changes)
+        {
+            size += 0x07;
+            size += (change._kind != ADDED) ? 0x08 : 0x00;
+            size += (change._kind == DELTA) ? 0x08 : 0x00;
+            size += (change._kind != REMOVED) ? 0x03 + ((change._name != null) ? change._name.length : 0x00) : 0x00;
+            size += (change._data != null) ? 0x04 + change._data.length : 0x00;
+        }
+        return size;
+    }
+
+    /** One resource added, removed, changed or renamed */
+    private static class Change
+    {
+        /** ADDED, REMOVED, REPLACED, DELTA or RENAMED */
+        private final int _kind;
+
+        private final ResourceType _type;
+
+        private final int _id;
+
+        /** the xxHash64 of the resource's old data, unless it was added */
+        private final long _baseHash;
+
+        /** the xxHash64 of the resource's new data, if it's recorded as a delta */
+        private final long _targetHash;
+
+        /** the resource's new data, its delta, or null if it was removed or renamed */
+        private final byte[] _data;
+
+        /** the resource's new name, without its length byte, or null if it has none */
+        private byte[] _name;
+
+        /** the resource's new attribute byte */
+        private int _attributes;
+
+        Change(int kind, ResourceType type, int id, long baseHash, long targetHash, byte[] data)
+        {
+            this._kind = kind;
+            this._type = type;
+            this._id = id;
+            this._baseHash = baseHash;
+            this._targetHash = targetHash;
+            this._data = data;
+        }
+
+        /** Records the name and attributes a resource has in the new version, then returns this change */
+        Change named(RsrcSnapshot to, Resource res)
+        {
+            this._name = to.getName(res);
+            this._attributes = to.getAttributes(res);
+            return this;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _type + " " + _id;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.apophenic.rsrclib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Searches resources' data for any number of byte patterns at once, such as embedded
+ * PNG signatures, old copyright strings or leaked paths, reporting the type and ID of
+ * each resource a pattern is found in and where in the resource it begins.
+ * <p>
+ * Every pattern is found in a single pass over each resource, see {@link ByteMatcher},
+ * and resources are searched where they lie in the bytes backing the {@code RsrcFile}
+ * without first being copied into their own arrays. A single file's resources are
+ * searched in parallel, as are the files of a batch.
+ * <p>
+ * Matches never span two resources, and overlapping matches are all reported. Each search
+ * reads from the {@code RsrcFile} as it was when the search started, even if it's edited
+ * in the meantime.
+ */
+public class RsrcSearch
+{
+    /** the patterns to find, in the order they were added */
+    private final List<byte[]> _patterns = new ArrayList<>();
+
+    /** the types to search, or null to search every type */
+    private Set<ResourceType> _types;
+
+    /** executor to run on, or null to use a pool of _parallelism threads for each search */
+    private ExecutorService _executor;
+
+    /** number of threads used when no executor is given */
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Adds a pattern to find. Matches report the pattern's position in the order patterns were added.
+     * @param pattern  The bytes to find
+     * @return  This {@code RsrcSearch}
+     */
+    public RsrcSearch addPattern(byte[] pattern)
+    {
+        if (pattern.length == 0)
+        {
+            throw new IllegalArgumentException("Pattern can't be empty");
+        }
+
+        _patterns.add(pattern.clone());
+        return this;
+    }
+
+    /**
+     * Adds a string to find, encoded as UTF-8, which is the same as ASCII for plain text
+     * @param text  The string to find
+     * @return  This {@code RsrcSearch}
+     */
+    public RsrcSearch addPattern(String text)
+    {
+        return addPattern(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds a string to find, encoded in the given charset, such as "x-MacRoman" for text
+     * written by classic Mac OS applications
+     * @param text  The string to find
+     * @param charset  The charset the string is stored in
+     * @return  This {@code RsrcSearch}
+     */
+    public RsrcSearch addPattern(String text, Charset charset)
+    {
+        return addPattern(text.getBytes(charset));
+    }
+
+    /**
+     * Only searches resources of the given types
+     * @param types  The {@link ResourceType}s to search
+     * @return  This {@code RsrcSearch}
+     */
+    public RsrcSearch setTypes(ResourceType... types)
+    {
+        _types = new HashSet<>();
+        for (ResourceType type : types)
+        {
+            _types.add(type);
+        }
+        return this;
+    }
+
+    /**
+     * Runs searches on the given executor, which is left running afterwards.
+     * By default each search runs on its own pool, see {@link #setParallelism}.
+     * @param executor  Executor to run on
+     * @return  This {@code RsrcSearch}
+     */
+    public RsrcSearch setExecutor(ExecutorService executor)
+    {
+        this._executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets how many threads a search uses, if no executor was given.
+     * Defaults to the number of available processors.
+     * @param parallelism  Number of threads
+     * @return  This {@code RsrcSearch}
+     */
+    public RsrcSearch setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+
+        this._parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Searches every resource in a file. Resources are split into a few contiguous batches
+     * per thread, along the same lines as {@link RsrcFile#resources()}.
+     * @param rsrc  The file to search
+     * @return  Every match, in the order the resources are listed in the header, and by
+     *          offset within each resource
+     */
+    public List<SearchMatch> search(RsrcFile rsrc) throws IOException
+    {
+        ByteMatcher matcher = getMatcher();
+        RsrcSnapshot snapshot = rsrc.getSnapshot();
+
+        // Split the resources in half, then each half in half, until there are enough batches to go round
+        int parallelism = (_executor != null) ? Runtime.getRuntime().availableProcessors() : _parallelism;
+        List<Spliterator<ResourceEntry>> batches = new ArrayList<>();
+        batches.add(new ResourceSpliterator(snapshot, false));
+        boolean split = true;
+        while (split && batches.size() < parallelism * 4)
+        {
+            split = false;
+            for (int i = 0; i < batches.size(); i++)
+            {
+                Spliterator<ResourceEntry> prefix = batches.get(i).trySplit();
+                if (prefix != null)
+                {
+                    batches.add(i++, prefix);
+                    split = true;
+                }
+            }
+        }
+
+        List<Callable<List<SearchMatch>>> tasks = new ArrayList<>();
+        for (Spliterator<ResourceEntry> batch : batches)
+        {
+            tasks.add(() -> search(matcher, snapshot, batch, null));
+        }
+        return run(tasks);
+    }
+
+    /**
+     * Searches every resource in each of a batch of files, such as those in a {@link RsrcCatalog}
+     * (see {@link RsrcCatalog#getFiles()}). Files are searched in parallel, each memory mapped
+     * read-only so nothing is copied, and closed once it's been searched. A file that can't be
+     * opened or read, such as one that's empty or corrupt, is skipped, so one bad file in a
+     * batch contributes no matches rather than failing the whole search.
+     * @param files  The .rsrc files to search
+     * @return  Every match, in the order the files were given, then as {@link #search(RsrcFile)}
+     */
+    public List<SearchMatch> search(Collection<Path> files) throws IOException
+    {
+        ByteMatcher matcher = getMatcher();
+
+        List<Callable<List<SearchMatch>>> tasks = new ArrayList<>();
+        for (Path path : files)
+        {
+            tasks.add(() ->
+            {
+                try (RsrcFile rsrc = new RsrcFile(path.toFile(), FileChannel.MapMode.READ_ONLY))
+                {
+                    RsrcSnapshot snapshot = rsrc.getSnapshot();
+                    return search(matcher, snapshot, new ResourceSpliterator(snapshot, false), path);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    // Not a readable .rsrc file, which shouldn't stop the others being searched
+                    return Collections.<SearchMatch>emptyList();
+                }
+            });
+        }
+        return run(tasks);
+    }
+
+    /** Returns a matcher for the patterns added so far */
+    private ByteMatcher getMatcher()
+    {
+        if (_patterns.isEmpty())
+        {
+            throw new IllegalStateException("No patterns to search for");
+        }
+        return new ByteMatcher(_patterns.toArray(new byte[_patterns.size()][]));
+    }
+
+    /**
+     * Searches a batch of resources in turn
+     * @param matcher  Finds the patterns
+     * @param snapshot  The snapshot the resources are in
+     * @param resources  The resources to search
+     * @param file  The file the snapshot was read from, to record in each match
+     * @return  Every match, in order
+     */
+    private List<SearchMatch> search(ByteMatcher matcher, RsrcSnapshot snapshot,
+                                     Spliterator<ResourceEntry> resources, Path file)
+    {
+        List<SearchMatch> matches = new ArrayList<>();
+        RsrcStorage data = snapshot.getStorage();
+        resources.forEachRemaining(entry ->
+        {
+            if (_types != null && !_types.contains(entry.getType()))
+            {
+                return;
+            }
+
+            ByteBuffer view = data.slice(entry.getDataOffset(), entry.getLength());
+            int first = matches.size();
+            matcher.find(view, (pattern, offset) ->
+                    matches.add(new SearchMatch(file, entry.getType(), entry.getResourceID(), offset, pattern)));
+
+            // Reported in the order they end, so a shorter pattern ending inside a longer one comes first
+            if (matches.size() - first > 1)
+            {
+                matches.subList(first, matches.size()).sort((a, b) -> a.getOffset() != b.getOffset()
+                        ? Integer.compare(a.getOffset(), b.getOffset()) : Integer.compare(a.getPattern(), b.getPattern()));
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Runs each task and joins their matches, in the order the tasks were given
+     * @param tasks  The searches to run
+     * @return  Every match
+     */
+    private List<SearchMatch> run(List<Callable<List<SearchMatch>>> tasks) throws IOException
+    {
+        List<SearchMatch> matches = new ArrayList<>();
+        for (List<SearchMatch> found : ParallelTasks.invokeAll(tasks, _executor, _parallelism, "Search"))
+        {
+            matches.addAll(found);
+        }
+        return matches;
+    }
+}
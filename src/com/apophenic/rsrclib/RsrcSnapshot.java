@@ -0,0 +1,469 @@
+package com.apophenic.rsrclib;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * One state of a {@link RsrcFile}: the bytes backing it, and the header table describing them.
+ * <p>
+ * A snapshot is never changed once it's been published. Edits build a new snapshot and
+ * publish that in its place, so a reader that takes the current snapshot once can use it
+ * without locking and always sees a header table that matches its bytes, however many
+ * edits are made in the meantime.
+ * <p>
+ * A snapshot read from a file starts out knowing only the header's type list: each type, how
+ * many resources it has, and where their entries are. A type's entries are parsed into its
+ * {@link ResourceLinkedList} the first time that type is asked for, so opening a file with dozens
+ * of types and reading resources of one or two of them never parses the rest.
+ */
+final class RsrcSnapshot
+{
+    /** the .rsrc file's bytes, or null if it couldn't be read */
+    private final RsrcStorage _data;
+
+    /** byte offset where the header begins */
+    private final long _headerOffset;
+
+    /** every resource type in the header, in the order they're listed */
+    private final ResourceType[] _types;
+
+    /** number of resources of each type */
+    private final int[] _counts;
+
+    /**
+     * where each type's entries begin, relative to the start of the header,
+     * or null if every type's list was given when the snapshot was created
+     */
+    private final int[] _entryOffsets;
+
+    /** each type's list, parsed the first time it's needed; a resource's position is counted through them in turn */
+    private final AtomicReferenceArray<ResourceLinkedList> _lists;
+
+    /**
+     * each type's content hashes, see {@link #getContentHash}, in the same order as its list;
+     * computed the first time one of them is needed, shared with snapshots of the same bytes
+     */
+    private AtomicReferenceArray<long[]> _hashes;
+
+    /** resources types, resources, and their offsets as defined in the file's header; built when first asked for */
+    private volatile Map<ResourceType, ResourceLinkedList> _headerTable;
+
+    /**
+     * every resource in the header table ordered by offset, each packed as its offset, which is at
+     * most 32 bits, above its position in the header table in the low 31; built when first needed
+     */
+    private volatile long[] _order;
+
+    /** bytes in the data section not used by any resource, or -1 until they're counted */
+    private volatile long _deadSpace;
+
+    /** where the bytes came from, or null until the snapshot is published, see {@link RsrcFile#setSnapshot} */
+    private final FileIdentity _identity;
+
+    /**
+     * @param data  The .rsrc file's bytes
+     * @param headerOffset  Byte offset where the header begins
+     * @param headerTable  The header table, which mustn't be changed afterwards
+     * @param deadSpace  Bytes in the data section not used by any resource, or -1 if unknown
+     */
+    RsrcSnapshot(RsrcStorage data, long headerOffset, Map<ResourceType, ResourceLinkedList> headerTable,
+                 long deadSpace)
+    {
+        this(data, headerOffset, headerTable.keySet().toArray(new ResourceType[headerTable.size()]),
+             new int[headerTable.size()], null, new AtomicReferenceArray<>(headerTable.size()), null, deadSpace,
+             null);
+
+        int t = 0;
+        for (ResourceLinkedList list : headerTable.values())
+        {
+            _counts[t] = list.size();
+            _lists.set(t++, list);
+        }
+        _headerTable = headerTable;
+    }
+
+    /**
+     * Creates a snapshot whose header table is parsed from the header as each type is needed
+     * @param data  The .rsrc file's bytes
+     * @param headerOffset  Byte offset where the header begins
+     * @param types  Every resource type in the header, in the order they're listed
+     * @param counts  Number of resources of each type
+     * @param entryOffsets  Where each type's entries begin, relative to the start of the header.
+     *                      Every entry must lie within {@code data}.
+     */
+    RsrcSnapshot(RsrcStorage data, long headerOffset, ResourceType[] types, int[] counts, int[] entryOffsets)
+    {
+        this(data, headerOffset, types, counts, entryOffsets, new AtomicReferenceArray<>(types.length), null, -1,
+             null);
+    }
+
+    /** Returns a snapshot with no data and an empty header table */
+    static RsrcSnapshot empty()
+    {
+        return new RsrcSnapshot(null, 0x00, new LinkedHashMap<>(), -1);
+    }
+
+    /**
+     * Returns a snapshot with the same header table over different bytes
+     * @param data  The .rsrc file's new bytes, laid out the same as the old
+     * @param deadSpace  Bytes in the data section not used by any resource, or -1 if unknown
+     */
+    RsrcSnapshot withStorage(RsrcStorage data, long deadSpace)
+    {
+        // Lists already parsed are shared, any others would parse the same from either snapshot's header
+        RsrcSnapshot snapshot = new RsrcSnapshot(data, _headerOffset, _types, _counts, _entryOffsets, _lists, _order,
+                                                 deadSpace, null);
+        snapshot._headerTable = _headerTable;
+        return snapshot;
+    }
+
+    /**
+     * Returns this snapshot with the given identity, see {@link #getIdentity()}
+     * @param identity  Where the bytes came from
+     */
+    RsrcSnapshot withIdentity(FileIdentity identity)
+    {
+        RsrcSnapshot snapshot = new RsrcSnapshot(_data, _headerOffset, _types, _counts, _entryOffsets, _lists, _order,
+                                                 _deadSpace, identity);
+        snapshot._headerTable = _headerTable;
+        snapshot._hashes = _hashes;
+        return snapshot;
+    }
+
+    private RsrcSnapshot(RsrcStorage data, long headerOffset, ResourceType[] types, int[] counts, int[] entryOffsets,
+                         AtomicReferenceArray<ResourceLinkedList> lists, long[] order, long deadSpace,
+                         FileIdentity identity)
+    {
+        this._data = data;
+        this._headerOffset = headerOffset;
+        this._types = types;
+        this._counts = counts;
+        this._entryOffsets = entryOffsets;
+        this._lists = lists;
+        this._hashes = new AtomicReferenceArray<>(types.length);
+        this._order = order;
+        this._deadSpace = deadSpace;
+        this._identity = identity;
+    }
+
+    RsrcStorage getStorage()
+    {
+        return _data;
+    }
+
+    long getHeaderOffset()
+    {
+        return _headerOffset;
+    }
+
+    /** Returns the header table, parsing every type that hasn't been yet */
+    Map<ResourceType, ResourceLinkedList> getHeaderTable()
+    {
+        Map<ResourceType, ResourceLinkedList> headerTable = _headerTable;
+        if (headerTable == null)
+        {
+            headerTable = new LinkedHashMap<>();
+            for (int t = 0; t < _types.length; t++)
+            {
+                headerTable.put(_types[t], getList(t));
+            }
+
+            // Racing readers would build the same table, so there's no harm in both storing it
+            _headerTable = headerTable;
+        }
+        return headerTable;
+    }
+
+    /** Returns every resource type in the header, in the order they're listed, without parsing any */
+    ResourceType[] getTypes()
+    {
+        return _types.clone();
+    }
+
+    /**
+     * Returns the list of resources of one type, parsing it if it hasn't been yet
+     * @return  The list, or null if the header has no resources of the type
+     */
+    ResourceLinkedList getResourceList(ResourceType type)
+    {
+        for (int t = 0; t < _types.length; t++)
+        {
+            if (_types[t].equals(type))
+            {
+                return getList(t);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the number of resource types in the header */
+    int getTypeCount()
+    {
+        return _types.length;
+    }
+
+    /** Returns the number of resources of the type at the given position in the type list, without parsing it */
+    int getResourceCount(int t)
+    {
+        return _counts[t];
+    }
+
+    /** Returns the list of resources of the type at the given position in the type list, parsing it if needed */
+    ResourceLinkedList getList(int t)
+    {
+        ResourceLinkedList list = _lists.get(t);
+        if (list == null)
+        {
+            list = new ResourceLinkedList(_types[t], _counts[t]);
+            boolean wide = Resource.hasWideOffsets(_headerOffset);
+            int entryOffset = _entryOffsets[t];
+            for (int i = 0; i < _counts[t]; i++)
+            {
+                // Every Resource entry in the header table is 12 bytes long: ID, name offset, attributes and
+                // offset, then 4 reserved bytes. They're read straight into the list, without creating a
+                // Resource for each.
+                long pointer = _headerOffset + entryOffset;
+                int offset = _data.getInt(pointer + 0x04);
+                list.addLast(_data.getInt(pointer) >>> 16, wide ? Integer.toUnsignedLong(offset) : offset & 0xFFFFFF,
+                             entryOffset);
+                entryOffset += 0x0C;
+            }
+
+            // Racing readers parse the same list, but only one may be published so every reader sees the same one
+            if (!_lists.compareAndSet(t, null, list))
+            {
+                list = _lists.get(t);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns a resource's attribute byte, such as 0x20 for purgeable, or 0 if the file's offsets
+     * leave no room for one, see {@link Resource#hasWideOffsets}
+     * @param res  A resource in this snapshot
+     */
+    int getAttributes(Resource res)
+    {
+        int entryOffset = res.getEntryOffset();
+        if (entryOffset < 0 || Resource.hasWideOffsets(_headerOffset))
+        {
+            return 0;
+        }
+        return _data.get(_headerOffset + entryOffset + 0x04) & 0xFF;
+    }
+
+    /**
+     * Returns a resource's name, as it's stored in the header's name list
+     * @param res  A resource in this snapshot
+     * @return  The name's bytes, without the length byte before them, or null if the resource has no name
+     */
+    byte[] getName(Resource res)
+    {
+        int entryOffset = res.getEntryOffset();
+        if (entryOffset < 0)
+        {
+            return null;
+        }
+
+        // The entry gives the name's offset within the name list, whose own offset is at bytes 26-28 of the header
+        int nameOffset = _data.getInt(_headerOffset + entryOffset) & 0xFFFF;
+        if (nameOffset == 0xFFFF)
+        {
+            return null;
+        }
+
+        long pointer = _headerOffset + (_data.getInt(_headerOffset + 0x18) & 0xFFFF) + nameOffset;
+        if (pointer >= _data.size())
+        {
+            return null;
+        }
+
+        // A damaged name list may claim a name runs past the end of the file, so keep only what's there
+        byte[] name = new byte[(int) Math.min(_data.get(pointer) & 0xFF, _data.size() - pointer - 1)];
+        _data.get(pointer + 1, name, 0x00, name.length);
+        return name;
+    }
+
+    /**
+     * Returns where the bytes came from. Snapshots of the same unchanged file are equal in identity,
+     * so whatever is derived from one snapshot's resources holds for the other's.
+     */
+    FileIdentity getIdentity()
+    {
+        return _identity;
+    }
+
+    /**
+     * Returns the xxHash64 of a resource's data, so resources can be compared without comparing
+     * their bytes. The first time any resource of a type is hashed, every resource of that type is,
+     * in parallel, and the hashes are kept along with this snapshot.
+     * @param res  A resource in this snapshot
+     * @throws IllegalArgumentException  If this snapshot has no such resource
+     */
+    long getContentHash(Resource res)
+    {
+        for (int t = 0; t < _types.length; t++)
+        {
+            if (_types[t].equals(res.getType()))
+            {
+                int index = getList(t).indexOf(res.getResourceID());
+                if (index >= 0)
+                {
+                    return getHashes(t)[index];
+                }
+            }
+        }
+        throw new IllegalArgumentException("No " + res.getType() + " resource " + res.getResourceID());
+    }
+
+    /** Returns the content hashes of every resource of the type at the given position in the type list */
+    private long[] getHashes(int t)
+    {
+        long[] hashes = _hashes.get(t);
+        if (hashes == null)
+        {
+            ResourceLinkedList list = getList(t);
+            long[] computed = new long[list.size()];
+
+            // Each resource's length sits right before its data, see Resource#getLengthOffset()
+            IntStream.range(0, computed.length).parallel().forEach(i ->
+            {
+                long lengthOffset = list.getStartOffset(i) + 0x100;
+                ByteBuffer data = _data.slice(lengthOffset + 0x04, _data.getInt(lengthOffset));
+                computed[i] = XXHash64.hash(data);
+            });
+
+            // Racing readers would compute the same hashes, so there's no harm in both storing them
+            _hashes.compareAndSet(t, null, computed);
+            hashes = computed;
+        }
+        return hashes;
+    }
+
+    /** Returns the number of resources in the header table, without parsing it */
+    int getResourceCount()
+    {
+        int count = 0;
+        for (int c : _counts)
+        {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a resource by its position among all resources ordered by offset,
+     * so reading them in this order reads the file front to back
+     * @param index  Between 0 and {@link #getResourceCount()}
+     */
+    Resource getResourceInOrder(int index)
+    {
+        int position = (int) (getOrder()[index] & 0x7FFFFFFF);
+
+        // Positions count through each type's list in turn
+        for (int t = 0; t < _types.length; t++)
+        {
+            if (position < _counts[t])
+            {
+                return getList(t).get(position);
+            }
+            position -= _counts[t];
+        }
+        throw new IllegalStateException("Header table was changed after it was published");
+    }
+
+    /** Returns every resource's offset and position in the header table, ordered by offset */
+    private long[] getOrder()
+    {
+        long[] order = _order;
+        if (order == null)
+        {
+            order = new long[getResourceCount()];
+            int position = 0;
+            for (int t = 0; t < _types.length; t++)
+            {
+                ResourceLinkedList list = getList(t);
+                for (int i = 0; i < list.size(); i++, position++)
+                {
+                    order[position] = list.getStartOffset(i) << 31 | position;
+                }
+            }
+
+            // Sorting packed primitives orders by offset without a comparator or any boxing
+            Arrays.sort(order);
+
+            // Racing readers would build the same order, so there's no harm in both storing it
+            _order = order;
+        }
+        return order;
+    }
+
+    /** Returns the resource with the given ID and type, or null if there isn't one */
+    Resource getResourceByID(int id, ResourceType type)
+    {
+        ResourceLinkedList list = getResourceList(type);
+        return (list == null) ? null : list.getByID(id);
+    }
+
+    /**
+     * Returns this snapshot's {@link Resource} with the same ID and type as the given one.
+     * A resource taken from an earlier snapshot may since have moved.
+     * @param res  A resource from this or an earlier snapshot
+     * @return  The matching resource, or {@code res} itself if this snapshot has none
+     */
+    Resource resolve(Resource res)
+    {
+        Resource current = getResourceByID(res.getResourceID(), res.getType());
+        return (current != null) ? current : res;
+    }
+
+    /** Returns the length of a resource in this snapshot, in bytes */
+    int getResourceLength(Resource res)
+    {
+        return _data.getInt(res.getLengthOffset());
+    }
+
+    /**
+     * Returns the number of bytes in the data section that don't belong to any resource.
+     * They're counted the first time they're asked for, by reading every resource's length.
+     */
+    long getDeadSpace()
+    {
+        long deadSpace = _deadSpace;
+        if (deadSpace < 0)
+        {
+            long used = 0;
+            for (int t = 0; t < _types.length; t++)
+            {
+                ResourceLinkedList list = getList(t);
+                for (int i = 0; i < list.size(); i++)
+                {
+                    // Each resource's length sits right before its data, see Resource#getLengthOffset()
+                    used += 0x04 + _data.getInt(list.getStartOffset(i) + 0x100);
+                }
+            }
+            deadSpace = _headerOffset - 0x100 - used;
+
+            // Racing readers would count the same total, so there's no harm in both storing it
+            _deadSpace = deadSpace;
+        }
+        return deadSpace;
+    }
+
+    /** Returns the number of bytes of dead space, or -1 if they haven't been counted yet */
+    long getKnownDeadSpace()
+    {
+        return _deadSpace;
+    }
+
+    /** Records the number of bytes of dead space, when an edit knows how much it left behind */
+    void setKnownDeadSpace(long deadSpace)
+    {
+        this._deadSpace = deadSpace;
+    }
+}
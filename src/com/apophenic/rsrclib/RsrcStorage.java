@@ -0,0 +1,132 @@
+package com.apophenic.rsrclib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Random access to the raw bytes backing a {@link RsrcFile}. Implementations
+ * may hold the whole file on the heap or map it from disk, in which case only
+ * the pages actually read are faulted in.
+ * <p>
+ * Offsets are 64 bit, so files too large for a single array or mapping can be read
+ * by storage that splits them up. Any one range read is at most 2 GB, as is any resource.
+ */
+interface RsrcStorage extends Closeable
+{
+    /** the largest array that can be allocated on every JVM, and so the largest file that can be held on the heap */
+    int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 0x08;
+
+    /** Returns the number of bytes available */
+    long size();
+
+    /** Returns the byte found at the given offset */
+    byte get(long offset);
+
+    /** Returns the big-endian {@code int32} starting at the given offset */
+    int getInt(long offset);
+
+    /**
+     * Copies bytes out of this storage
+     * @param offset  Offset to begin copying from
+     * @param dst  Array to copy into
+     * @param dstOffset  First index of {@code dst} to write to
+     * @param length  Number of bytes to copy
+     */
+    void get(long offset, byte[] dst, int dstOffset, int length);
+
+    /**
+     * Copies bytes out of this storage into a buffer, starting at the buffer's position
+     * @param offset  Offset to begin copying from
+     * @param dst  Buffer to copy into
+     * @param length  Number of bytes to copy
+     * @throws java.nio.BufferOverflowException  If {@code dst} has fewer than {@code length} bytes remaining
+     */
+    void get(long offset, ByteBuffer dst, int length);
+
+    /**
+     * Returns a read-only view of a range of this storage, without copying it.
+     * The view's position is 0 and its limit is {@code length}.
+     * @param offset  Offset the view begins at
+     * @param length  Number of bytes in the view
+     */
+    ByteBuffer slice(long offset, int length);
+
+    /**
+     * Copies bytes into this storage, overwriting what's there
+     * @param offset  Offset to begin writing at
+     * @param src  Array to copy from
+     * @param srcOffset  First index of {@code src} to read from
+     * @param length  Number of bytes to copy
+     * @throws java.nio.ReadOnlyBufferException  If this storage is read-only
+     */
+    void put(long offset, byte[] src, int srcOffset, int length);
+
+    /**
+     * Writes bytes out of this storage to a channel
+     * @param offset  Offset to begin writing from
+     * @param length  Number of bytes to write
+     * @param target  Channel to write to
+     */
+    void transferTo(long offset, long length, WritableByteChannel target) throws IOException;
+
+    /** Returns true if {@link #put} is unsupported */
+    boolean isReadOnly();
+
+    /**
+     * Returns a copy of the contents of this storage as a {@code byte[]}, which the caller
+     * may change without changing the storage
+     * @throws IllegalStateException  If the storage is too large for an array
+     */
+    byte[] toByteArray();
+
+    /** Releases any file handle held by this storage */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Returns the size of an array that can hold a whole storage
+     * @param size  The storage's size
+     * @throws IllegalStateException  If the storage is too large for an array
+     */
+    static int arraySize(long size)
+    {
+        if (size > MAX_ARRAY_SIZE)
+        {
+            throw new IllegalStateException("File is too large to hold in memory: " + size + " bytes");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Writes every remaining byte of each buffer to {@code target}, in order,
+     * using a single gather write where the channel supports it
+     */
+    static void writeFully(WritableByteChannel target, ByteBuffer... srcs) throws IOException
+    {
+        if (target instanceof GatheringByteChannel)
+        {
+            long remaining = 0;
+            for (ByteBuffer src : srcs)
+            {
+                remaining += src.remaining();
+            }
+
+            while (remaining > 0)
+            {
+                remaining -= ((GatheringByteChannel) target).write(srcs);
+            }
+            return;
+        }
+
+        for (ByteBuffer src : srcs)
+        {
+            while (src.hasRemaining())
+            {
+                target.write(src);
+            }
+        }
+    }
+}
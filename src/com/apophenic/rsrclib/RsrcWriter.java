@@ -0,0 +1,604 @@
+package com.apophenic.rsrclib;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a new .rsrc file from scratch, or from a template {@link RsrcFile} with resources
+ * added, replaced or removed. Unlike {@link RsrcEdit}, which can only replace resources
+ * that already exist, any resource can be added.
+ * <p>
+ * Resources are only recorded as they're added; nothing is read until the file is written.
+ * Every offset is computed up front from the resources' lengths, then the signature, each
+ * resource and finally the header are written to the output in a single sequential pass.
+ * Resources are laid out type by type, in the order they were first added. Resources copied from
+ * a template keep their names and attribute bytes.
+ * <pre>
+ *     new RsrcWriter()
+ *         .add(ResourceType.PNG, 128, data)
+ *         .add(ResourceType.PNG, 129, Paths.get("icon.png"))
+ *         .writeTo(Paths.get("out.rsrc"));
+ * </pre>
+ */
+public class RsrcWriter
+{
+    /** offset of the first resource, everything before it is the signature and padding */
+    private static final int DATA_OFFSET = 0x100;
+
+    /** the header's copy of the signature, the reserved fields, then the type list and name list offsets */
+    private static final int HEADER_PREAMBLE_LENGTH = 0x1C;
+
+    /** number of buffers queued before they're written, kept under the OS limit for a gather write */
+    private static final int MAX_QUEUED_BUFFERS = 0x200;
+
+    /** resources to write, by type, then by ID */
+    private final Map<ResourceType, LinkedHashMap<Integer, Entry>> _resources = new HashMap<>();
+
+    /** types in the order they were first added, which is the order they're written in */
+    private final List<ResourceType> _types = new ArrayList<>();
+
+    /**
+     * Adds every resource in a template file. The resources are copied from the template
+     * when the new file is written, as they were when they were added, so the template must
+     * stay open until then; if it's read onto the heap, it may be edited in the meantime.
+     * @param template  The file to copy resources from
+     * @return  This {@code RsrcWriter}
+     */
+    public RsrcWriter addAll(RsrcFile template)
+    {
+        return addAll(template.getSnapshot());
+    }
+
+    /** Adds every resource in a snapshot of a template file, see {@link #addAll(RsrcFile)} */
+    RsrcWriter addAll(RsrcSnapshot snapshot)
+    {
+        for (int i = 0; i < snapshot.getResourceCount(); i++)
+        {
+            Resource res = snapshot.getResourceInOrder(i);
+            add(res.getType(), res.getResourceID(), new TemplatePayload(snapshot, res));
+            setNameAndAttributes(res.getType(), res.getResourceID(), snapshot.getName(res),
+                                 snapshot.getAttributes(res));
+        }
+        return this;
+    }
+
+    /**
+     * Adds a resource, replacing the data of any resource already added with the same
+     * type and ID, which keeps its name and attributes
+     * @param type  The resource's {@link ResourceType}
+     * @param id  The resource's ID
+     * @param data  The resource's data, which must not be changed until the file is written
+     * @return  This {@code RsrcWriter}
+     */
+    public RsrcWriter add(ResourceType type, int id, byte[] data)
+    {
+        return add(type, id, new ArrayPayload(data));
+    }
+
+    /**
+     * Adds a resource whose data is read from a file when the .rsrc file is written,
+     * replacing the data of any resource already added with the same type and ID
+     * @param type  The resource's {@link ResourceType}
+     * @param id  The resource's ID
+     * @param file  File holding the resource's data. It mustn't change size before it's written.
+     * @return  This {@code RsrcWriter}
+     */
+    public RsrcWriter add(ResourceType type, int id, Path file) throws IOException
+    {
+        long size = Files.size(file);
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IOException("Resource is too large: " + file);
+        }
+
+        return add(type, id, new FilePayload(file, (int) size));
+    }
+
+    /**
+     * Adds a resource whose data is read from a channel when the .rsrc file is written,
+     * replacing the data of any resource already added with the same type and ID. The channel is read
+     * from its current position, and isn't closed.
+     * @param type  The resource's {@link ResourceType}
+     * @param id  The resource's ID
+     * @param channel  Channel holding the resource's data
+     * @param length  Number of bytes to read from the channel
+     * @return  This {@code RsrcWriter}
+     */
+    public RsrcWriter add(ResourceType type, int id, ReadableByteChannel channel, int length)
+    {
+        if (length < 0)
+        {
+            throw new IllegalArgumentException("Length must not be negative");
+        }
+
+        return add(type, id, new ChannelPayload(channel, length));
+    }
+
+    private RsrcWriter add(ResourceType type, int id, Payload payload)
+    {
+        if (id < 0 || id > 0xFFFF)
+        {
+            throw new IllegalArgumentException("Resource ID " + id + " doesn't fit in 2 bytes");
+        }
+
+        LinkedHashMap<Integer, Entry> resources = _resources.get(type);
+        if (resources == null)
+        {
+            resources = new LinkedHashMap<>();
+            _resources.put(type, resources);
+            _types.add(type);
+        }
+
+        Entry entry = resources.get(id);
+        if (entry == null)
+        {
+            resources.put(id, new Entry(payload));
+        }
+        else
+        {
+            entry._payload = payload;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the name and attribute byte of a resource that's been added
+     * @param type  The resource's {@link ResourceType}
+     * @param id  The resource's ID
+     * @param name  The name's bytes, without a length byte, or null for no name
+     * @param attributes  The attribute byte, such as 0x20 for purgeable. It's dropped if the file
+     *                    has too much data to leave room for it, see {@link Resource#hasWideOffsets}.
+     * @return  This {@code RsrcWriter}
+     */
+    RsrcWriter setNameAndAttributes(ResourceType type, int id, byte[] name, int attributes)
+    {
+        LinkedHashMap<Integer, Entry> resources = _resources.get(type);
+        Entry entry = (resources != null) ? resources.get(id) : null;
+        if (entry == null)
+        {
+            throw new IllegalArgumentException("No " + type + " resource " + id + " has been added");
+        }
+        if (name != null && name.length > 0xFF)
+        {
+            throw new IllegalArgumentException("A name is at most 255 bytes, not " + name.length);
+        }
+        if (attributes < 0 || attributes > 0xFF)
+        {
+            throw new IllegalArgumentException("Attributes " + attributes + " don't fit in a byte");
+        }
+
+        entry._name = name;
+        entry._attributes = attributes;
+        return this;
+    }
+
+    /**
+     * Removes a resource that was added
+     * @param type  The resource's {@link ResourceType}
+     * @param id  The resource's ID
+     * @return  true if the resource had been added
+     */
+    public boolean remove(ResourceType type, int id)
+    {
+        LinkedHashMap<Integer, Entry> resources = _resources.get(type);
+        if (resources == null || resources.remove(id) == null)
+        {
+            return false;
+        }
+
+        if (resources.isEmpty())
+        {
+            _resources.remove(type);
+            _types.remove(type);
+        }
+        return true;
+    }
+
+    /** Returns the number of resources added */
+    public int getResourceCount()
+    {
+        int count = 0;
+        for (LinkedHashMap<Integer, Entry> resources : _resources.values())
+        {
+            count += resources.size();
+        }
+        return count;
+    }
+
+    /** Returns the size, in bytes, of the file that will be written */
+    public long getSize()
+    {
+        long size = DATA_OFFSET + getHeaderLength();
+        for (LinkedHashMap<Integer, Entry> resources : _resources.values())
+        {
+            for (Entry entry : resources.values())
+            {
+                size += 0x04 + entry._payload.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the .rsrc file to a channel
+     * @param out  Channel to write to. It isn't closed.
+     */
+    public void writeTo(WritableByteChannel out) throws IOException
+    {
+        long headerLength = getHeaderLength();
+        long size = getSize();
+        long headerOffset = size - headerLength;
+        if (headerOffset > Resource.MAX_OFFSET)
+        {
+            throw new IOException("File would be too large: " + size + " bytes");
+        }
+        int nameList = HEADER_PREAMBLE_LENGTH + getTypeListLength() + 0x0C * getResourceCount();
+        if (nameList > 0xFFFF)
+        {
+            // The name list follows the entries, and the header gives its offset in 2 bytes
+            throw new IOException("Too many resources for one file, the name list would begin past the end of " +
+                                  "the header's reach");
+        }
+        if (headerLength - nameList > 0xFFFF)
+        {
+            // Each entry gives its name's offset within the name list in 2 bytes, 0xFFFF meaning no name
+            throw new IOException("Names are too long for one file, the last would begin past the end of " +
+                                  "the name list's reach");
+        }
+
+        int[] typeListOffsets = getTypeListOffsets();
+
+        // Files with more data than 3 byte offsets can reach have no room for attribute bytes
+        boolean wide = Resource.hasWideOffsets(headerOffset);
+
+        // Small buffers are queued up and written together with a single gather write
+        List<ByteBuffer> buffers = new ArrayList<>();
+
+        // 1) The signature, then padding up to the first resource
+        ByteBuffer preamble = ByteBuffer.allocate(DATA_OFFSET);
+        putSignature(preamble, headerOffset, headerLength);
+        preamble.clear();
+        buffers.add(preamble);
+
+        // 2) Every resource, preceded by its length. The header is filled in along
+        // the way, since each entry's offset is known once its resource is written.
+        ByteBuffer header = ByteBuffer.allocate((int) headerLength);
+        putSignature(header, headerOffset, headerLength);
+        header.putInt(0x00).putShort((short) 0x00).putShort((short) 0x00);
+        header.putShort((short) HEADER_PREAMBLE_LENGTH).putShort((short) nameList);
+        header.putShort((short) (_types.size() - 1));
+
+        int entryPointer = HEADER_PREAMBLE_LENGTH + getTypeListLength();
+        int namePointer = nameList;
+        long startOffset = 0x00;
+
+        for (int t = 0; t < _types.size(); t++)
+        {
+            LinkedHashMap<Integer, Entry> resources = _resources.get(_types.get(t));
+
+            header.putInt(_types.get(t).getCode());
+            header.putShort((short) (resources.size() - 1)).putShort((short) typeListOffsets[t]);
+
+            for (Map.Entry<Integer, Entry> resource : resources.entrySet())
+            {
+                Entry entry = resource.getValue();
+                Payload payload = entry._payload;
+
+                // Names are written to the name list in the order of their entries, each after its length
+                header.putShort(entryPointer, resource.getKey().shortValue());
+                if (entry._name != null)
+                {
+                    header.putShort(entryPointer + 0x02, (short) (namePointer - nameList));
+                    header.put(namePointer, (byte) entry._name.length);
+                    System.arraycopy(entry._name, 0x00, header.array(), namePointer + 0x01, entry._name.length);
+                    namePointer += 0x01 + entry._name.length;
+                }
+                else
+                {
+                    header.putShort(entryPointer + 0x02, (short) 0xFFFF);
+                }
+                header.putInt(entryPointer + 0x04, wide ? (int) startOffset
+                                                        : entry._attributes << 24 | (int) startOffset);
+                header.putInt(entryPointer + 0x08, 0x00);
+                entryPointer += 0x0C;
+
+                buffers.add(ByteBuffer.allocate(0x04).putInt(0, payload.length()));
+                payload.write(buffers, out);
+                startOffset += 0x04 + payload.length();
+
+                if (buffers.size() >= MAX_QUEUED_BUFFERS)
+                {
+                    flush(buffers, out);
+                }
+            }
+        }
+
+        // 3) The header
+        header.clear();
+        buffers.add(header);
+        flush(buffers, out);
+    }
+
+    /**
+     * Writes the .rsrc file, overwriting the given file
+     * @param file  File to write to
+     */
+    public void writeTo(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            writeTo(channel);
+        }
+    }
+
+    /**
+     * Writes the .rsrc file, overwriting the given file
+     * @param file  File to write to
+     */
+    public void writeTo(File file) throws IOException
+    {
+        try (FileOutputStream fos = new FileOutputStream(file);
+             FileChannel channel = fos.getChannel())
+        {
+            writeTo(channel);
+        }
+    }
+
+    /**
+     * Returns the length of the header: its preamble, the type list, 12 bytes for each resource,
+     * then the name list, which holds each name after a length byte
+     */
+    private long getHeaderLength()
+    {
+        long length = HEADER_PREAMBLE_LENGTH + getTypeListLength() + 0x0C * getResourceCount();
+        for (LinkedHashMap<Integer, Entry> resources : _resources.values())
+        {
+            for (Entry entry : resources.values())
+            {
+                length += (entry._name != null) ? 0x01 + entry._name.length : 0x00;
+            }
+        }
+        return length;
+    }
+
+    /** Returns the length of the type list: its count, then 8 bytes for each type */
+    private int getTypeListLength()
+    {
+        return 0x02 + 0x08 * _types.size();
+    }
+
+    /**
+     * Computes where each type's entries begin, relative to the type list
+     * @throws IOException  If an offset doesn't fit in the 2 bytes the format allows
+     */
+    private int[] getTypeListOffsets() throws IOException
+    {
+        int[] offsets = new int[_types.size()];
+        int offset = getTypeListLength();
+
+        for (int t = 0; t < offsets.length; t++)
+        {
+            if (offset > 0xFFFF)
+            {
+                throw new IOException("Too many resources for one file, type " + _types.get(t) +
+                                      " begins past the end of the type list's reach");
+            }
+
+            offsets[t] = offset;
+            offset += 0x0C * _resources.get(_types.get(t)).size();
+        }
+        return offsets;
+    }
+
+    /** Writes the 16 byte signature, which begins both the file and its header */
+    private static void putSignature(ByteBuffer buffer, long headerOffset, long headerLength)
+    {
+        buffer.putInt(DATA_OFFSET).putInt((int) headerOffset).putInt((int) (headerOffset - DATA_OFFSET))
+              .putInt((int) headerLength);
+    }
+
+    /** Writes every queued buffer with a single gather write, then empties the queue */
+    private static void flush(List<ByteBuffer> buffers, WritableByteChannel out) throws IOException
+    {
+        if (!buffers.isEmpty())
+        {
+            RsrcStorage.writeFully(out, buffers.toArray(new ByteBuffer[buffers.size()]));
+            buffers.clear();
+        }
+    }
+
+    /** A resource to write: its data, name and attributes */
+    private static class Entry
+    {
+        private Payload _payload;
+
+        /** the name's bytes, or null for no name */
+        private byte[] _name;
+
+        private int _attributes;
+
+        Entry(Payload payload)
+        {
+            this._payload = payload;
+        }
+    }
+
+    /** Where a resource's data comes from */
+    private interface Payload
+    {
+        /** Returns the number of bytes in the resource */
+        int length();
+
+        /**
+         * Writes the resource, either by queueing a buffer holding it or by
+         * writing the queued buffers then the resource directly
+         * @param buffers  Buffers queued to be written before this resource
+         * @param out  Channel to write to
+         */
+        void write(List<ByteBuffer> buffers, WritableByteChannel out) throws IOException;
+    }
+
+    private static class ArrayPayload implements Payload
+    {
+        private final byte[] _data;
+
+        ArrayPayload(byte[] data)
+        {
+            this._data = data;
+        }
+
+        @Override
+        public int length()
+        {
+            return _data.length;
+        }
+
+        @Override
+        public void write(List<ByteBuffer> buffers, WritableByteChannel out)
+        {
+            buffers.add(ByteBuffer.wrap(_data));
+        }
+    }
+
+    /** A resource copied from another .rsrc file */
+    private static class TemplatePayload implements Payload
+    {
+        private final RsrcSnapshot _template;
+
+        private final Resource _res;
+
+        private final int _length;
+
+        TemplatePayload(RsrcSnapshot template, Resource res)
+        {
+            this._template = template;
+            this._res = res;
+            this._length = template.getResourceLength(res);
+        }
+
+        @Override
+        public int length()
+        {
+            return _length;
+        }
+
+        @Override
+        public void write(List<ByteBuffer> buffers, WritableByteChannel out) throws IOException
+        {
+            if (_template.getStorage() instanceof HeapStorage)
+            {
+                // Already in memory, so a view can be queued without copying
+                buffers.add(RsrcFile.getResourceView(_template, _res));
+                return;
+            }
+
+            flush(buffers, out);
+            _template.getStorage().transferTo(_res.getDataOffset(), _length, out);
+        }
+    }
+
+    private static class FilePayload implements Payload
+    {
+        private final Path _file;
+
+        private final int _length;
+
+        FilePayload(Path file, int length)
+        {
+            this._file = file;
+            this._length = length;
+        }
+
+        @Override
+        public int length()
+        {
+            return _length;
+        }
+
+        @Override
+        public void write(List<ByteBuffer> buffers, WritableByteChannel out) throws IOException
+        {
+            flush(buffers, out);
+            try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.READ))
+            {
+                if (channel.size() != _length)
+                {
+                    throw new IOException("File changed size since it was added: " + _file);
+                }
+
+                long position = 0;
+                while (position < _length)
+                {
+                    long transferred = channel.transferTo(position, _length - position, out);
+                    if (transferred <= 0)
+                    {
+                        throw new EOFException("File was truncated while it was written: " + _file);
+                    }
+                    position += transferred;
+                }
+            }
+        }
+    }
+
+    private static class ChannelPayload implements Payload
+    {
+        /** number of bytes copied at a time */
+        private static final int BUFFER_SIZE = 0x10000;
+
+        private final ReadableByteChannel _channel;
+
+        private final int _length;
+
+        ChannelPayload(ReadableByteChannel channel, int length)
+        {
+            this._channel = channel;
+            this._length = length;
+        }
+
+        @Override
+        public int length()
+        {
+            return _length;
+        }
+
+        @Override
+        public void write(List<ByteBuffer> buffers, WritableByteChannel out) throws IOException
+        {
+            flush(buffers, out);
+
+            ByteBuffer buffer = ByteBuffer.allocate(Math.min(_length, BUFFER_SIZE));
+            int remaining = _length;
+            while (remaining > 0)
+            {
+                buffer.clear();
+                buffer.limit(Math.min(buffer.capacity(), remaining));
+                while (buffer.hasRemaining())
+                {
+                    if (_channel.read(buffer) < 0)
+                    {
+                        throw new EOFException("Channel ended " + (remaining - buffer.position()) +
+                                               " bytes before the end of the resource");
+                    }
+                }
+                buffer.flip();
+                remaining -= buffer.remaining();
+                RsrcStorage.writeFully(out, buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.apophenic.rsrclib;
+
+import java.nio.file.Path;
+
+/**
+ * A single occurrence of a pattern in a resource's data, found by {@link RsrcSearch}
+ */
+public class SearchMatch
+{
+    /** The .rsrc file the resource is in, or null if a single {@link RsrcFile} was searched */
+    private final Path _file;
+
+    /** The resource's data type */
+    private final ResourceType _type;
+
+    /** The resource ID, as represented in the .rsrc file */
+    private final int _id;
+
+    /** Where the match begins, relative to the start of the resource's data */
+    private final int _offset;
+
+    /** Position of the matching pattern, in the order patterns were added */
+    private final int _pattern;
+
+    SearchMatch(Path file, ResourceType type, int id, int offset, int pattern)
+    {
+        this._file = file;
+        this._type = type;
+        this._id = id;
+        this._offset = offset;
+        this._pattern = pattern;
+    }
+
+    /** Returns the .rsrc file the resource is in, or null if a single {@link RsrcFile} was searched */
+    public Path getFile()
+    {
+        return _file;
+    }
+
+    /** Returns the resource's data type */
+    public ResourceType getType()
+    {
+        return _type;
+    }
+
+    /** Returns the {@code int32} representation of the resource's ID */
+    public int getResourceID()
+    {
+        return _id;
+    }
+
+    /** Returns where the match begins, relative to the start of the resource's data */
+    public int getOffset()
+    {
+        return _offset;
+    }
+
+    /** Returns the position of the matching pattern, in the order patterns were added to the {@link RsrcSearch} */
+    public int getPattern()
+    {
+        return _pattern;
+    }
+
+    @Override
+    public String toString()
+    {
+        return (_file != null ? _file + ": " : "") + _type + " " + _id + " at " + _offset + " (pattern " + _pattern + ")";
+    }
+}
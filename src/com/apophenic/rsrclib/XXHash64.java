@@ -0,0 +1,103 @@
+package com.apophenic.rsrclib;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The xxHash64 hash function, with a seed of 0, as specified at
+ * https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md. It's fast enough to
+ * hash resources as quickly as they can be read, and 64 bits make accidental collisions
+ * between resources that differ vanishingly unlikely.
+ */
+final class XXHash64
+{
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private XXHash64()
+    {
+    }
+
+    /**
+     * Hashes a buffer's remaining bytes, leaving its position unchanged
+     * @param data  The bytes to hash, from the buffer's position up to its limit
+     */
+    static long hash(ByteBuffer data)
+    {
+        // The algorithm reads little-endian words, whatever the buffer's own order
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pointer = buffer.position();
+        int end = buffer.limit();
+        long hash;
+
+        if (end - pointer >= 0x20)
+        {
+            long v1 = PRIME_1 + PRIME_2;
+            long v2 = PRIME_2;
+            long v3 = 0;
+            long v4 = -PRIME_1;
+
+            // Four lanes, 8 bytes each, for every 32 byte stripe
+            for (; pointer <= end - 0x20; pointer += 0x20)
+            {
+                v1 = round(v1, buffer.getLong(pointer));
+                v2 = round(v2, buffer.getLong(pointer + 0x08));
+                v3 = round(v3, buffer.getLong(pointer + 0x10));
+                v4 = round(v4, buffer.getLong(pointer + 0x18));
+            }
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        }
+        else
+        {
+            hash = PRIME_5;
+        }
+
+        hash += end - buffer.position();
+
+        // Then whatever's left over, 8, 4 and finally 1 byte at a time
+        for (; pointer <= end - 0x08; pointer += 0x08)
+        {
+            hash ^= round(0, buffer.getLong(pointer));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (pointer <= end - 0x04)
+        {
+            hash ^= (buffer.getInt(pointer) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            pointer += 0x04;
+        }
+        for (; pointer < end; pointer++)
+        {
+            hash ^= (buffer.get(pointer) & 0xFF) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+
+        // Mix the bits so every input bit affects every output bit
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long accumulator, long input)
+    {
+        accumulator += input * PRIME_2;
+        return Long.rotateLeft(accumulator, 31) * PRIME_1;
+    }
+
+    private static long merge(long hash, long accumulator)
+    {
+        hash ^= round(0, accumulator);
+        return hash * PRIME_1 + PRIME_4;
+    }
+}
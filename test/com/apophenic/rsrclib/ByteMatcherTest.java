@@ -0,0 +1,110 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class ByteMatcherTest
+{
+    /** Finds every match by trying each pattern at each offset, as "pattern@offset" sorted by where they end */
+    private static List<String> naive(byte[][] patterns, byte[] data)
+    {
+        List<String> matches = new ArrayList<>();
+        for (int end = 1; end <= data.length; end++)
+        {
+            List<Integer> ending = new ArrayList<>();
+            for (int p = 0; p < patterns.length; p++)
+            {
+                int start = end - patterns[p].length;
+                if (start >= 0 && Arrays.equals(patterns[p], 0, patterns[p].length, data, start, end))
+                {
+                    ending.add(p);
+                }
+            }
+
+            // Longest first among those ending together
+            ending.sort((a, b) -> Integer.compare(patterns[b].length, patterns[a].length));
+            for (int p : ending)
+            {
+                matches.add(p + "@" + (end - patterns[p].length));
+            }
+        }
+        return matches;
+    }
+
+    private static List<String> find(byte[][] patterns, ByteBuffer data)
+    {
+        List<String> matches = new ArrayList<>();
+        new ByteMatcher(patterns).find(data, (pattern, offset) -> matches.add(pattern + "@" + offset));
+        return matches;
+    }
+
+    /** Returns random patterns of 1 to 6 bytes, no two alike, drawn from a 3 byte alphabet so they overlap often */
+    private static byte[][] patterns(Random random, int count)
+    {
+        Set<String> seen = new HashSet<>();
+        byte[][] patterns = new byte[count][];
+        for (int p = 0; p < count; )
+        {
+            byte[] pattern = new byte[1 + random.nextInt(6)];
+            for (int i = 0; i < pattern.length; i++)
+            {
+                pattern[i] = (byte) (0x7E + random.nextInt(3));
+            }
+            if (seen.add(Arrays.toString(pattern)))
+            {
+                patterns[p++] = pattern;
+            }
+        }
+        return patterns;
+    }
+
+    @Test
+    void matchesAgreeWithANaiveSearch()
+    {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++)
+        {
+            byte[] data = new byte[random.nextInt(300)];
+            for (int i = 0; i < data.length; i++)
+            {
+                data[i] = (byte) (0x7E + random.nextInt(4));
+            }
+
+            byte[][] patterns = patterns(random, 1 + random.nextInt((round % 2 == 0) ? 1 : 12));
+            List<String> expected = naive(patterns, data);
+
+            // Searched from a position other than 0, in both a heap and a direct buffer
+            ByteBuffer heap = ByteBuffer.allocate(data.length + 0x03);
+            heap.position(0x03).mark();
+            heap.put(data).reset();
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data);
+            direct.flip();
+
+            assertEquals(expected, find(patterns, heap), "round " + round);
+            assertEquals(expected, find(patterns, direct), "round " + round);
+            assertEquals(0x03, heap.position());
+        }
+    }
+
+    @Test
+    void overlappingAndNestedMatchesAreAllFound()
+    {
+        byte[][] patterns = { "he".getBytes(), "she".getBytes(), "his".getBytes(), "hers".getBytes() };
+        List<String> matches = find(patterns, ByteBuffer.wrap("ushers".getBytes()));
+        assertEquals(Arrays.asList("1@1", "0@2", "3@2"), matches);
+
+        List<String> single = find(new byte[][] { "aa".getBytes() }, ByteBuffer.wrap("aaaa".getBytes()));
+        assertEquals(Arrays.asList("0@0", "0@1", "0@2"), single);
+        assertTrue(find(patterns, ByteBuffer.wrap(new byte[0])).isEmpty());
+    }
+}
@@ -0,0 +1,128 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResourceCacheTest
+{
+    @TempDir
+    Path _dir;
+
+    /** decodes a resource as the sum of its bytes, counting how often it's called */
+    private final AtomicInteger _decoded = new AtomicInteger();
+
+    private final Function<byte[], Integer> _decoder = data ->
+    {
+        _decoded.incrementAndGet();
+        int sum = 0;
+        for (byte b : data)
+        {
+            sum += b;
+        }
+        return sum;
+    };
+
+    private Path write(byte... first) throws Exception
+    {
+        Path file = _dir.resolve("test.rsrc");
+        new RsrcWriter().add(ResourceType.PNG, 128, first)
+                        .add(ResourceType.PNG, 129, new byte[] { 5, 6 })
+                        .writeTo(file);
+        return file;
+    }
+
+    @Test
+    void filesOpenedOnTheSameFileShareEntries() throws Exception
+    {
+        Path file = write((byte) 1, (byte) 2);
+        ResourceCache<Integer> cache = new ResourceCache<>(0x100, value -> 1);
+
+        assertEquals(3, cache.get(new RsrcFile(file.toFile()), 128, ResourceType.PNG, _decoder));
+        try (RsrcFile other = new RsrcFile(file))
+        {
+            assertEquals(3, cache.get(other, 128, ResourceType.PNG, _decoder));
+        }
+        assertNull(cache.get(new RsrcFile(file.toFile()), 130, ResourceType.PNG, _decoder));
+
+        assertEquals(1, _decoded.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void replacedResourcesAreDecodedAgain() throws Exception
+    {
+        Path file = write((byte) 1, (byte) 2);
+        ResourceCache<Integer> cache = new ResourceCache<>(0x100, value -> 1);
+        RsrcFile rsrc = new RsrcFile(file.toFile());
+        RsrcFile unedited = new RsrcFile(file.toFile());
+
+        cache.get(rsrc, 128, ResourceType.PNG, _decoder);
+        cache.get(rsrc, 129, ResourceType.PNG, _decoder);
+        rsrc.saveResourceData(new byte[] { 7 }, 128, ResourceType.PNG);
+
+        assertEquals(7, cache.get(rsrc, 128, ResourceType.PNG, _decoder));
+        assertEquals(7, cache.get(rsrc, 128, ResourceType.PNG, _decoder));
+        assertEquals(3, _decoded.get());
+
+        // Bytes edited in memory are cached apart from the file's, which is still as it was
+        assertEquals(11, cache.get(rsrc, 129, ResourceType.PNG, _decoder));
+        assertEquals(4, _decoded.get());
+        assertEquals(11, cache.get(unedited, 129, ResourceType.PNG, _decoder));
+        assertEquals(4, _decoded.get());
+
+        // The file's own entry for the replaced resource went too, in case the file was written to
+        assertEquals(3, cache.get(unedited, 128, ResourceType.PNG, _decoder));
+        assertEquals(5, _decoded.get());
+    }
+
+    @Test
+    void fileChangedOnDiskIsntServedOldEntries() throws Exception
+    {
+        Path file = write((byte) 1, (byte) 2);
+        ResourceCache<Integer> cache = new ResourceCache<>(0x100, value -> 1);
+        assertEquals(3, cache.get(new RsrcFile(file.toFile()), 128, ResourceType.PNG, _decoder));
+
+        write((byte) 1, (byte) 2, (byte) 3);
+        assertEquals(6, cache.get(new RsrcFile(file.toFile()), 128, ResourceType.PNG, _decoder));
+        assertEquals(2, _decoded.get());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() throws Exception
+    {
+        Path file = _dir.resolve("test.rsrc");
+        RsrcWriter writer = new RsrcWriter();
+        for (int id = 0; id < 4; id++)
+        {
+            writer.add(ResourceType.PNG, id, new byte[] { (byte) id });
+        }
+        writer.writeTo(file);
+
+        RsrcFile rsrc = new RsrcFile(file.toFile());
+        ResourceCache<Integer> cache = new ResourceCache<>(3, value -> 1);
+        for (int id = 0; id < 3; id++)
+        {
+            cache.get(rsrc, id, ResourceType.PNG, _decoder);
+        }
+        cache.get(rsrc, 0, ResourceType.PNG, _decoder);
+        cache.get(rsrc, 3, ResourceType.PNG, _decoder);
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.getWeight());
+
+        // 1 was used least recently, so it went to make room for 3
+        _decoded.set(0);
+        cache.get(rsrc, 0, ResourceType.PNG, _decoder);
+        cache.get(rsrc, 2, ResourceType.PNG, _decoder);
+        assertEquals(0, _decoded.get());
+        cache.get(rsrc, 1, ResourceType.PNG, _decoder);
+        assertEquals(1, _decoded.get());
+    }
+}
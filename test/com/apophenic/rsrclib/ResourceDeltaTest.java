@@ -0,0 +1,69 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ResourceDeltaTest
+{
+    private static byte[] random(int length, long seed)
+    {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    void editedDataRoundTrips() throws Exception
+    {
+        byte[] base = random(0x4000, 1);
+
+        // An insert, an overwrite and a deletion, spread through the data
+        byte[] target = new byte[base.length + 0x10 - 0x20];
+        System.arraycopy(base, 0, target, 0, 0x1000);
+        System.arraycopy(random(0x10, 2), 0, target, 0x1000, 0x10);
+        System.arraycopy(base, 0x1000, target, 0x1010, 0x2000);
+        target[0x2500] ^= 0x55;
+        System.arraycopy(base, 0x3020, target, 0x3010, base.length - 0x3020);
+
+        byte[] delta = ResourceDelta.encode(base, target);
+        assertTrue(delta.length < 0x100, "delta is " + delta.length + " bytes");
+        assertArrayEquals(target, ResourceDelta.apply(base, delta));
+    }
+
+    @Test
+    void unrelatedAndEmptyDataRoundTrip() throws Exception
+    {
+        byte[] base = random(0x100, 3);
+        byte[] target = random(0x123, 4);
+
+        assertArrayEquals(target, ResourceDelta.apply(base, ResourceDelta.encode(base, target)));
+        assertArrayEquals(target, ResourceDelta.apply(new byte[0], ResourceDelta.encode(new byte[0], target)));
+        assertArrayEquals(new byte[0], ResourceDelta.apply(base, ResourceDelta.encode(base, new byte[0])));
+    }
+
+    @Test
+    void corruptDeltasAreRejected() throws Exception
+    {
+        byte[] base = random(0x100, 5);
+        byte[] target = Arrays.copyOf(base, 0x180);
+        byte[] delta = ResourceDelta.encode(base, target);
+
+        // A length that's negative as an int, one far past what the delta could rebuild, and one that's cut off
+        byte[] negative = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F };
+        byte[] huge = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0x01, 0x00 };
+        byte[] unfinished = { (byte) 0x80 };
+        assertThrows(IOException.class, () -> ResourceDelta.apply(base, negative));
+        assertThrows(IOException.class, () -> ResourceDelta.apply(base, huge));
+        assertThrows(IOException.class, () -> ResourceDelta.apply(base, unfinished));
+
+        assertThrows(IOException.class, () -> ResourceDelta.apply(base, Arrays.copyOf(delta, delta.length - 1)));
+        assertThrows(IOException.class, () -> ResourceDelta.apply(new byte[0x10], delta));
+    }
+}
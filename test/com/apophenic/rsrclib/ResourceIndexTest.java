@@ -0,0 +1,76 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ResourceIndexTest
+{
+    /** Returns the position of the first ID that matches, as a front to back search finds it */
+    private static int scan(int[] ids, int id)
+    {
+        for (int i = 0; i < ids.length; i++)
+        {
+            if (ids[i] == id)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    void lookupsMatchAFrontToBackSearch()
+    {
+        // Enough IDs to grow the table several times, with duplicates and negatives among them
+        int[] ids = new int[0x1000];
+        Random random = new Random(1);
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = random.nextInt(0x800) - 0x10;
+        }
+
+        ResourceIndex index = new ResourceIndex();
+        for (int i = 0; i < ids.length; i++)
+        {
+            index.put(ids[i], i);
+        }
+
+        for (int id = -0x20; id < 0x810; id++)
+        {
+            assertEquals(scan(ids, id), index.get(id), "ID " + id);
+        }
+
+        index.clear();
+        assertEquals(-1, index.get(ids[0]));
+        index.put(ids[1], 7);
+        assertEquals(7, index.get(ids[1]));
+    }
+
+    @Test
+    void listFindsTheFirstOfAnyDuplicates()
+    {
+        // Sorted lists are binary searched, unsorted ones go through an index
+        int[][] orders = { { 1, 2, 2, 3, 128, 128, 0xFFFF }, { 128, 3, 2, 0xFFFF, 2, 1, 128 } };
+        for (int[] ids : orders)
+        {
+            ResourceLinkedList list = new ResourceLinkedList(ResourceType.PNG, ids.length);
+            for (int i = 0; i < ids.length; i++)
+            {
+                list.addLast(ids[i], 0x10 * i, 0x0C * i);
+            }
+
+            for (int id = 0; id <= 0x100; id++)
+            {
+                assertEquals(scan(ids, id), list.indexOf(id), "ID " + id);
+            }
+            assertEquals(scan(ids, 0xFFFF), list.indexOf(0xFFFF));
+
+            // Added after the index was built
+            list.addLast(4, 0x100, 0x0C * ids.length);
+            assertEquals(ids.length, list.indexOf(4));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResourceSpliteratorTest
+{
+    @TempDir
+    Path _dir;
+
+    private RsrcFile write() throws Exception
+    {
+        // 5 PNGs, 1 SND and 10 PICTs, each holding its own ID
+        RsrcWriter writer = new RsrcWriter();
+        for (int id = 0; id < 5; id++)
+        {
+            writer.add(ResourceType.PNG, id, new byte[] { (byte) id });
+        }
+        writer.add(ResourceType.SND, 100, new byte[] { 100 });
+        for (int id = 200; id < 210; id++)
+        {
+            writer.add(ResourceType.PICT, id, new byte[] { (byte) id, 0 });
+        }
+
+        Path file = _dir.resolve("test.rsrc");
+        writer.writeTo(file);
+        return new RsrcFile(file);
+    }
+
+    private static List<String> describe(Spliterator<ResourceEntry> spliterator)
+    {
+        List<String> entries = new ArrayList<>();
+        spliterator.forEachRemaining(entry -> entries.add(entry.getType() + " " + entry.getResourceID()));
+        return entries;
+    }
+
+    @Test
+    void splitsCoverEveryResourceOnceInOrder() throws Exception
+    {
+        try (RsrcFile rsrc = write())
+        {
+            List<String> expected = describe(new ResourceSpliterator(rsrc.getSnapshot(), false));
+            assertEquals(16, expected.size());
+
+            // Split down to single resources, keeping the pieces in order
+            List<Spliterator<ResourceEntry>> pieces = new ArrayList<>();
+            pieces.add(new ResourceSpliterator(rsrc.getSnapshot(), false));
+            for (int i = 0; i < pieces.size(); )
+            {
+                Spliterator<ResourceEntry> prefix = pieces.get(i).trySplit();
+                if (prefix == null)
+                {
+                    assertEquals(1, pieces.get(i).estimateSize());
+                    i++;
+                }
+                else
+                {
+                    pieces.add(i, prefix);
+                }
+            }
+
+            List<String> actual = new ArrayList<>();
+            for (Spliterator<ResourceEntry> piece : pieces)
+            {
+                actual.addAll(describe(piece));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void rangesSpanningTypesSplitAtATypeBoundary() throws Exception
+    {
+        try (RsrcFile rsrc = write())
+        {
+            // The middle of 16 falls among the PICTs, the boundary nearest it is after the SND
+            Spliterator<ResourceEntry> suffix = new ResourceSpliterator(rsrc.getSnapshot(), false);
+            Spliterator<ResourceEntry> prefix = suffix.trySplit();
+            assertEquals(6, prefix.estimateSize());
+            assertEquals(10, suffix.estimateSize());
+            assertTrue(prefix.hasCharacteristics(Spliterator.SUBSIZED));
+
+            // Within one type, ranges split in half by index
+            Spliterator<ResourceEntry> half = suffix.trySplit();
+            assertEquals(5, half.estimateSize());
+            assertEquals(5, suffix.estimateSize());
+            assertEquals(5, describe(suffix).size());
+            assertNull(suffix.trySplit());
+        }
+    }
+
+    @Test
+    void parallelStreamSeesEveryResource() throws Exception
+    {
+        try (RsrcFile rsrc = write())
+        {
+            List<Integer> ids = rsrc.resourcesWithData().parallel()
+                                    .map(entry -> entry.getData().get(0) & 0xFF)
+                                    .collect(Collectors.toList());
+            List<Integer> expected = rsrc.resources().map(ResourceEntry::getResourceID)
+                                         .collect(Collectors.toList());
+            assertEquals(expected, ids);
+            assertEquals(10, rsrc.resources().parallel().filter(entry -> entry.getLength() == 2).count());
+        }
+    }
+}
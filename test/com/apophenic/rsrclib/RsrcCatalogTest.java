@@ -0,0 +1,110 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcCatalogTest
+{
+    @TempDir
+    Path _dir;
+
+    private Path write(String name, int... ids) throws IOException
+    {
+        Path file = _dir.resolve("tree").resolve(name);
+        Files.createDirectories(file.getParent());
+
+        RsrcWriter writer = new RsrcWriter();
+        for (int id : ids)
+        {
+            writer.add(ResourceType.PICT, id, new byte[] { (byte) id, 1, 2, 3 });
+        }
+        writer.writeTo(file);
+        return file.toAbsolutePath();
+    }
+
+    private static List<String> describe(RsrcCatalog catalog)
+    {
+        return catalog.find(entry -> true).stream()
+                      .map(entry -> entry + " " + entry.hasContentHash() + " " + entry.getContentHash())
+                      .sorted()
+                      .collect(Collectors.toList());
+    }
+
+    @Test
+    void rescanReadsOnlyChangedFiles() throws Exception
+    {
+        Path a = write("a.rsrc", 128, 129);
+        Path b = write("sub/b.rsrc", 128);
+        RsrcCatalog catalog = new RsrcCatalog(_dir.resolve("index"));
+
+        assertEquals(2, catalog.scan(_dir.resolve("tree")));
+        assertEquals(0, catalog.scan(_dir.resolve("tree")));
+        assertEquals(3, catalog.getEntryCount());
+
+        write("sub/b.rsrc", 128, 130);
+        assertEquals(1, catalog.scan(_dir.resolve("tree")));
+        assertEquals(Collections.singletonList(b), catalog.find(ResourceType.PICT, 130).stream()
+                                                          .map(CatalogEntry::getFile).collect(Collectors.toList()));
+
+        Files.delete(a);
+        assertEquals(0, catalog.scan(_dir.resolve("tree")));
+        assertEquals(Collections.singletonList(b), catalog.getFiles());
+    }
+
+    @Test
+    void savedIndexLoadsTheSameEntries() throws Exception
+    {
+        write("a.rsrc", 128, 129);
+        write("b.rsrc", 129);
+        Path index = _dir.resolve("index");
+
+        RsrcCatalog catalog = new RsrcCatalog(index).setHashContents(true);
+        catalog.scan(_dir.resolve("tree"));
+        catalog.save();
+
+        RsrcCatalog loaded = new RsrcCatalog(index).setHashContents(true);
+        assertEquals(describe(catalog), describe(loaded));
+        assertEquals(1, loaded.findDuplicates().size());
+        assertEquals(2, loaded.findDuplicates().get(0).size());
+        assertEquals(0, loaded.scan(_dir.resolve("tree")));
+    }
+
+    @Test
+    void indexInAnotherFormatIsRejected() throws Exception
+    {
+        Path index = Files.write(_dir.resolve("index"), new byte[] { 'R', 'C', 'A', 'T', 0, 0, 0, 0x7F });
+        assertThrows(IOException.class, () -> new RsrcCatalog(index));
+    }
+
+    @Test
+    void unreadableFilesAreSkippedAndRetried() throws Exception
+    {
+        Path good = write("good.rsrc", 128);
+        Path empty = Files.write(_dir.resolve("tree/empty.rsrc"), new byte[0]);
+        Path truncated = Files.write(_dir.resolve("tree/truncated.rsrc"),
+                                     Arrays.copyOf(Files.readAllBytes(good), 0x20));
+        RsrcCatalog catalog = new RsrcCatalog(_dir.resolve("index"));
+
+        assertEquals(1, catalog.scan(_dir.resolve("tree")));
+        assertEquals(Collections.singletonList(good), catalog.getFiles());
+
+        // Once it's readable, the next scan picks it up even though nothing was recorded for it
+        Files.write(truncated, Files.readAllBytes(good));
+        assertEquals(1, catalog.scan(_dir.resolve("tree")));
+        assertTrue(catalog.getFiles().contains(truncated.toAbsolutePath()));
+        assertFalse(catalog.getFiles().contains(empty.toAbsolutePath()));
+    }
+}
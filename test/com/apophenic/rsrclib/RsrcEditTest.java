@@ -0,0 +1,212 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcEditTest
+{
+    @TempDir
+    Path _dir;
+
+    private Path writeFile(byte[] first, byte[] second) throws Exception
+    {
+        Path file = _dir.resolve("test.rsrc");
+        new RsrcWriter().add(ResourceType.PNG, 128, first)
+                        .add(ResourceType.PNG, 129, second)
+                        .writeTo(file);
+        return file;
+    }
+
+    private RsrcFile write(byte[] first, byte[] second) throws Exception
+    {
+        return new RsrcFile(writeFile(first, second).toFile());
+    }
+
+    private static byte[] toArray(ByteBuffer view)
+    {
+        byte[] bytes = new byte[view.remaining()];
+        view.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void commitLeavesOldSnapshotUnchanged() throws Exception
+    {
+        byte[] original = { 1, 2, 3, 4 };
+        RsrcFile rsrc = write(original, new byte[] { 5, 6 });
+
+        RsrcSnapshot old = rsrc.getSnapshot();
+        Resource res = old.getResourceByID(128, ResourceType.PNG);
+        ByteBuffer view = rsrc.getResourceView(res);
+        long hash = rsrc.getContentHash(res);
+
+        rsrc.edit().replace(new byte[] { 9, 9, 9, 9 }, 128, ResourceType.PNG).commit();
+
+        assertArrayEquals(original, toArray(view));
+        assertArrayEquals(original, toArray(RsrcFile.getResourceView(old, res)));
+        assertEquals(hash, XXHash64.hash(RsrcFile.getResourceView(old, res)));
+        assertArrayEquals(new byte[] { 9, 9, 9, 9 }, rsrc.loadResourceData(128, ResourceType.PNG));
+    }
+
+    @Test
+    void patchLeavesOldSnapshotUnchanged() throws Exception
+    {
+        byte[] original = { 1, 2, 3, 4 };
+        RsrcFile rsrc = write(original, new byte[] { 5, 6 });
+
+        RsrcSnapshot old = rsrc.getSnapshot();
+        Resource res = old.getResourceByID(128, ResourceType.PNG);
+        ByteBuffer view = rsrc.getResourceView(res);
+
+        rsrc.edit().replace(new byte[] { 7, 7 }, 128, ResourceType.PNG).patch();
+
+        assertArrayEquals(original, toArray(view));
+        assertArrayEquals(new byte[] { 7, 7 }, rsrc.loadResourceData(128, ResourceType.PNG));
+    }
+
+    @Test
+    void readOnlyFileCantBePatchedOrAppended() throws Exception
+    {
+        Path file = writeFile(new byte[] { 1, 2, 3, 4 }, new byte[] { 5, 6 });
+        byte[] before = Files.readAllBytes(file);
+
+        try (RsrcFile rsrc = new RsrcFile(file.toFile(), FileChannel.MapMode.READ_ONLY))
+        {
+            assertThrows(ReadOnlyBufferException.class,
+                         () -> rsrc.edit().replace(new byte[] { 7 }, 128, ResourceType.PNG).patch());
+            assertThrows(ReadOnlyBufferException.class,
+                         () -> rsrc.edit().replace(new byte[8], 128, ResourceType.PNG).append());
+            assertThrows(ReadOnlyBufferException.class,
+                         () -> rsrc.patchResourceData(new byte[] { 7 }, 128, ResourceType.PNG));
+        }
+
+        assertArrayEquals(before, Files.readAllBytes(file));
+    }
+
+    @Test
+    void patchLeavesDeadSpaceThatOnlyCompactReclaims() throws Exception
+    {
+        RsrcFile rsrc = write(new byte[] { 1, 2, 3, 4 }, new byte[] { 5, 6 });
+        assertEquals(0, rsrc.getDeadSpace());
+
+        rsrc.patchResourceData(new byte[] { 7 }, 128, ResourceType.PNG);
+        assertEquals(3, rsrc.getDeadSpace());
+
+        rsrc.saveRsrcFile(false);
+        assertEquals(3, new RsrcFile(rsrc.getRsrcFile()).getDeadSpace());
+
+        rsrc.compact();
+        assertEquals(0, rsrc.getDeadSpace());
+        assertArrayEquals(new byte[] { 7 }, rsrc.loadResourceData(128, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 5, 6 }, rsrc.loadResourceData(129, ResourceType.PNG));
+    }
+
+    @Test
+    void appendPastFourGigabytesLeavesTheFileUntouched() throws Exception
+    {
+        Path file = writeFile(new byte[] { 1, 2, 3, 4 }, new byte[] { 5, 6 });
+        byte[] bytes = Files.readAllBytes(file);
+        int headerOffset = ByteBuffer.wrap(bytes).getInt(0x04);
+        byte[] header = Arrays.copyOfRange(bytes, headerOffset, bytes.length);
+
+        // Move the header to just under 4 GB, leaving the space before it sparse
+        long farOffset = Resource.MAX_OFFSET - header.length - 0x08;
+        ByteBuffer.wrap(header).putInt(0x04, (int) farOffset).putInt(0x08, (int) (farOffset - 0x100));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.wrap(header), farOffset);
+            channel.write(ByteBuffer.wrap(header, 0x04, 0x08), 0x04);
+        }
+
+        try (RsrcFile rsrc = new RsrcFile(file))
+        {
+            // The shorter replacement could be patched in place, the longer one has nowhere to go
+            RsrcEdit edit = rsrc.edit().replace(new byte[] { 9 }, 128, ResourceType.PNG)
+                                       .replace(new byte[0x10], 129, ResourceType.PNG);
+            assertThrows(IOException.class, edit::append);
+
+            assertArrayEquals(new byte[] { 1, 2, 3, 4 }, rsrc.loadResourceData(128, ResourceType.PNG));
+            assertArrayEquals(new byte[] { 5, 6 }, rsrc.loadResourceData(129, ResourceType.PNG));
+        }
+        assertEquals(farOffset + header.length, Files.size(file));
+    }
+
+    private Path writeNamed(byte[] first) throws Exception
+    {
+        Path file = _dir.resolve("named.rsrc");
+        new RsrcWriter().add(ResourceType.PNG, 128, first)
+                        .add(ResourceType.PNG, 129, new byte[] { 5, 6 })
+                        .add(ResourceType.SND, 1, new byte[] { 7 })
+                        .setNameAndAttributes(ResourceType.PNG, 128, "Splash".getBytes(StandardCharsets.US_ASCII), 0x20)
+                        .setNameAndAttributes(ResourceType.SND, 1, "Beep".getBytes(StandardCharsets.US_ASCII), 0x00)
+                        .setNameAndAttributes(ResourceType.PNG, 129, null, 0x08)
+                        .writeTo(file);
+        return file;
+    }
+
+    private static void assertNameAndAttributes(RsrcFile rsrc, ResourceType type, int id, String name, int attributes)
+    {
+        RsrcSnapshot snapshot = rsrc.getSnapshot();
+        Resource res = snapshot.getResourceByID(id, type);
+        byte[] bytes = snapshot.getName(res);
+        assertEquals(name, (bytes != null) ? new String(bytes, StandardCharsets.US_ASCII) : null);
+        assertEquals(attributes, snapshot.getAttributes(res));
+    }
+
+    @Test
+    void namesAndAttributesSurviveCompact() throws Exception
+    {
+        RsrcFile rsrc = new RsrcFile(writeNamed(new byte[] { 1, 2, 3, 4 }));
+        assertNameAndAttributes(rsrc, ResourceType.PNG, 128, "Splash", 0x20);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, rsrc.loadResourceData(128, ResourceType.PNG));
+
+        rsrc.patchResourceData(new byte[] { 9 }, 128, ResourceType.PNG);
+        rsrc.saveResourceData(new byte[] { 8, 8, 8 }, 1, ResourceType.SND);
+        rsrc.compact();
+
+        assertEquals(0, rsrc.getDeadSpace());
+        assertNameAndAttributes(rsrc, ResourceType.PNG, 128, "Splash", 0x20);
+        assertNameAndAttributes(rsrc, ResourceType.PNG, 129, null, 0x08);
+        assertNameAndAttributes(rsrc, ResourceType.SND, 1, "Beep", 0x00);
+        assertArrayEquals(new byte[] { 9 }, rsrc.loadResourceData(128, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 5, 6 }, rsrc.loadResourceData(129, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 8, 8, 8 }, rsrc.loadResourceData(1, ResourceType.SND));
+    }
+
+    @Test
+    void attributesAreDroppedOnceTheFileOutgrowsThem() throws Exception
+    {
+        RsrcFile rsrc = new RsrcFile(writeNamed(new byte[] { 1, 2, 3, 4 }));
+
+        // 16 MB of data leaves no room in the offsets for attribute bytes
+        byte[] large = new byte[(int) Resource.MAX_NARROW_OFFSET + 1];
+        large[large.length - 1] = 3;
+        rsrc.edit().replace(large, 128, ResourceType.PNG).append();
+
+        assertNameAndAttributes(rsrc, ResourceType.PNG, 128, "Splash", 0x00);
+        assertNameAndAttributes(rsrc, ResourceType.PNG, 129, null, 0x00);
+        assertArrayEquals(large, rsrc.loadResourceData(128, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 5, 6 }, rsrc.loadResourceData(129, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 7 }, rsrc.loadResourceData(1, ResourceType.SND));
+
+        rsrc.compact();
+        assertNameAndAttributes(rsrc, ResourceType.SND, 1, "Beep", 0x00);
+        assertArrayEquals(large, rsrc.loadResourceData(128, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 5, 6 }, rsrc.loadResourceData(129, ResourceType.PNG));
+    }
+}
@@ -0,0 +1,54 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcExporterTest
+{
+    @TempDir
+    Path _dir;
+
+    @Test
+    void fileNamesDontDependOnTheDefaultLocale() throws Exception
+    {
+        Path file = _dir.resolve("test.rsrc");
+        new RsrcWriter().add(ResourceType.PICT, 128, new byte[] { 1, 2 })
+                        .add(ResourceType.forCode("ICN#"), 129, new byte[] { 3 })
+                        .writeTo(file);
+
+        // Turkish lowercases 'I' to a dotless 'ı'
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try
+        {
+            assertEquals(2, new RsrcExporter(new RsrcFile(file)).exportToDirectory(_dir.resolve("out")));
+        }
+        finally
+        {
+            Locale.setDefault(locale);
+        }
+
+        assertArrayEquals(new byte[] { 1, 2 }, Files.readAllBytes(_dir.resolve("out/PICT/128.pict")));
+        assertArrayEquals(new byte[] { 3 }, Files.readAllBytes(_dir.resolve("out/ICN_/129.icn_")));
+    }
+
+    @Test
+    void constantsAreNamedAsBefore()
+    {
+        for (ResourceType type : ResourceType.values())
+        {
+            assertSame(type, ResourceType.valueOf(type.name()));
+        }
+        assertSame(ResourceType.SND, ResourceType.valueOf("SND"));
+        assertSame(ResourceType.TEMPL, ResourceType.forCode("TMPL"));
+        assertEquals("TEMPL", ResourceType.TEMPL.name());
+    }
+}
@@ -0,0 +1,103 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcFileAsyncTest
+{
+    @TempDir
+    Path _dir;
+
+    private Path write() throws Exception
+    {
+        RsrcWriter writer = new RsrcWriter();
+        for (int id = 0; id < 0x40; id++)
+        {
+            writer.add(ResourceType.PNG, id, new byte[] { (byte) id, (byte) (id + 1), (byte) (id + 2) });
+        }
+
+        Path file = _dir.resolve("test.rsrc");
+        writer.writeTo(file);
+        return file;
+    }
+
+    @Test
+    void resourcesAreReadThroughTheExecutor() throws Exception
+    {
+        Path file = write();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (RsrcFile rsrc = RsrcFile.openAsync(file, executor).get(10, TimeUnit.SECONDS))
+        {
+            List<CompletableFuture<byte[]>> loads = new ArrayList<>();
+            for (int id = 0; id < 0x40; id++)
+            {
+                loads.add(rsrc.loadResourceDataAsync(id, ResourceType.PNG));
+            }
+            for (int id = 0; id < 0x40; id++)
+            {
+                assertArrayEquals(new byte[] { (byte) id, (byte) (id + 1), (byte) (id + 2) },
+                                  loads.get(id).get(10, TimeUnit.SECONDS));
+            }
+
+            ExecutionException missing = assertThrows(ExecutionException.class,
+                    () -> rsrc.loadResourceDataAsync(0x40, ResourceType.PNG).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, missing.getCause());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void missingFileFailsTheOpen()
+    {
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> RsrcFile.openAsync(_dir.resolve("missing.rsrc")).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(NoSuchFileException.class, e.getCause());
+    }
+
+    @Test
+    void savedEditsAreReadBackAsynchronously() throws Exception
+    {
+        Path file = write();
+        try (RsrcFile rsrc = RsrcFile.openAsync(file).get(10, TimeUnit.SECONDS))
+        {
+            rsrc.saveResourceData(new byte[] { 9, 9, 9, 9 }, 5, ResourceType.PNG);
+
+            // Edited in memory, so it's loaded on the calling thread
+            assertArrayEquals(new byte[] { 9, 9, 9, 9 },
+                              rsrc.loadResourceDataAsync(5, ResourceType.PNG).get(10, TimeUnit.SECONDS));
+
+            rsrc.saveAsync(true).get(10, TimeUnit.SECONDS);
+            assertTrue(Files.exists(_dir.resolve("test.rsrc.bak")));
+            assertArrayEquals(new byte[] { 9, 9, 9, 9 },
+                              rsrc.loadResourceDataAsync(5, ResourceType.PNG).get(10, TimeUnit.SECONDS));
+            assertArrayEquals(new byte[] { 6, 7, 8 },
+                              rsrc.loadResourceDataAsync(6, ResourceType.PNG).get(10, TimeUnit.SECONDS));
+        }
+
+        try (RsrcFile reopened = new RsrcFile(file))
+        {
+            assertArrayEquals(new byte[] { 9, 9, 9, 9 }, reopened.loadResourceData(5, ResourceType.PNG));
+            assertEquals(0x40, reopened.getSnapshot().getResourceCount());
+        }
+    }
+}
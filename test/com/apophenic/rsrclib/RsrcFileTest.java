@@ -0,0 +1,117 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcFileTest
+{
+    @TempDir
+    Path _dir;
+
+    private Path write() throws Exception
+    {
+        Path file = _dir.resolve("test.rsrc");
+        new RsrcWriter().add(ResourceType.PNG, 128, new byte[] { 1, 2, 3, 4 })
+                        .add(ResourceType.PNG, 129, new byte[] { 5, 6 })
+                        .add(ResourceType.PICT, 7, new byte[] { 7 })
+                        .writeTo(file);
+        return file;
+    }
+
+    /** Writes a 2 byte number into the header of a file written by {@link #write()} */
+    private static void putShort(Path file, int headerPosition, int value) throws Exception
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ByteBuffer signature = ByteBuffer.allocate(0x10);
+            channel.read(signature, 0);
+            long headerOffset = signature.getInt(0x04);
+            channel.write(ByteBuffer.allocate(0x02).putShort(0, (short) value), headerOffset + headerPosition);
+        }
+    }
+
+    @Test
+    void rsrcDataIsACopy() throws Exception
+    {
+        Path file = write();
+        RsrcFile rsrc = new RsrcFile(file.toFile());
+
+        // Scribbling over the returned bytes leaves the file's resources alone
+        byte[] data = rsrc.getRsrcData();
+        assertArrayEquals(Files.readAllBytes(file), data);
+        Arrays.fill(data, (byte) 0x7F);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, rsrc.loadResourceData(128, ResourceType.PNG));
+
+        // As do later edits to the bytes that were set
+        byte[] set = Files.readAllBytes(file);
+        rsrc.setRsrcData(set);
+        Arrays.fill(set, (byte) 0x7F);
+        assertArrayEquals(new byte[] { 5, 6 }, rsrc.loadResourceData(129, ResourceType.PNG));
+
+        // And the returned bytes don't follow later edits
+        data = rsrc.getRsrcData();
+        rsrc.saveResourceData(new byte[] { 9, 9 }, 129, ResourceType.PNG);
+        assertArrayEquals(Files.readAllBytes(file), data);
+    }
+
+    @Test
+    void damagedHeaderLeavesTheFileEmpty() throws Exception
+    {
+        // The header begins with a 0x1C byte preamble, then the type list: the number of types - 1,
+        // then for each type its code, number of resources - 1 and where its entries begin
+        int[][] damage = {
+            { 0x18, 0xFFF0 },                 // type list offset past the end of the file
+            { 0x1C, 0x00FF },                 // 256 types
+            { 0x1C + 0x02 + 0x0E, 0xFFF0 },   // the second type's entries past the end of the file
+        };
+
+        for (int[] change : damage)
+        {
+            Path file = write();
+            putShort(file, change[0], change[1]);
+
+            for (RsrcFile rsrc : new RsrcFile[] { new RsrcFile(file.toFile()), new RsrcFile(file) })
+            {
+                assertEquals(0, rsrc.getResourceTypesInFile().length);
+                assertNull(rsrc.getResourceByID(7, ResourceType.PICT));
+                rsrc.close();
+            }
+        }
+
+        // A file cut off part way through its header
+        Path file = write();
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), (int) Files.size(file) - 0x30));
+        assertEquals(0, new RsrcFile(file.toFile()).getResourceTypesInFile().length);
+    }
+
+    @Test
+    void typesAreParsedWhenFirstNeeded() throws Exception
+    {
+        Path file = write();
+        try (RsrcFile rsrc = new RsrcFile(file.toFile(), FileChannel.MapMode.READ_ONLY))
+        {
+            assertNotNull(rsrc.getResourceByID(128, ResourceType.PNG));
+
+            // Both types' IDs are changed on disk, which the mapping sees. PNG's entries
+            // were parsed by the lookup above, PICT's are only parsed now.
+            putShort(file, 0x1C + 0x02 + 0x10, 0x0100);
+            putShort(file, 0x1C + 0x02 + 0x10 + 0x0C * 2, 0x0008);
+
+            assertNotNull(rsrc.getResourceByID(128, ResourceType.PNG));
+            assertNull(rsrc.getResourceByID(7, ResourceType.PICT));
+            assertArrayEquals(new byte[] { 7 }, rsrc.loadResourceData(8, ResourceType.PICT));
+        }
+    }
+}
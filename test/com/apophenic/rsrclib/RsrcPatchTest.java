@@ -0,0 +1,148 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcPatchTest
+{
+    @TempDir
+    Path _dir;
+
+    private static final byte[] LARGE = new byte[0x2000];
+
+    static
+    {
+        new Random(1).nextBytes(LARGE);
+    }
+
+    private static byte[] ascii(String text)
+    {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private RsrcFile base() throws IOException
+    {
+        Path file = _dir.resolve("base.rsrc");
+        new RsrcWriter().add(ResourceType.PNG, 128, LARGE)
+                        .add(ResourceType.PNG, 129, new byte[] { 1, 2 })
+                        .add(ResourceType.SND, 1, new byte[] { 3 })
+                        .add(ResourceType.TEXT, 5, new byte[] { 4 })
+                        .setNameAndAttributes(ResourceType.SND, 1, ascii("Beep"), 0x20)
+                        .writeTo(file);
+        return new RsrcFile(file);
+    }
+
+    private RsrcFile target() throws IOException
+    {
+        byte[] edited = LARGE.clone();
+        edited[0x1000] ^= 0x01;
+
+        Path file = _dir.resolve("target.rsrc");
+        new RsrcWriter().add(ResourceType.PNG, 128, edited)
+                        .add(ResourceType.PNG, 129, new byte[] { 1, 2, 3 })
+                        .add(ResourceType.SND, 1, new byte[] { 3 })
+                        .add(ResourceType.PICT, 7, new byte[] { 5, 6 })
+                        .setNameAndAttributes(ResourceType.PNG, 128, ascii("Splash"), 0x00)
+                        .setNameAndAttributes(ResourceType.SND, 1, ascii("Boop"), 0x08)
+                        .setNameAndAttributes(ResourceType.PICT, 7, ascii("Logo"), 0x10)
+                        .writeTo(file);
+        return new RsrcFile(file);
+    }
+
+    private static RsrcPatch roundTrip(RsrcPatch patch) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        patch.writeTo(out);
+        assertEquals(out.size(), patch.getSize());
+        return RsrcPatch.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static void assertSameResources(RsrcFile expected, RsrcFile actual) throws IOException
+    {
+        RsrcSnapshot want = expected.getSnapshot();
+        RsrcSnapshot got = actual.getSnapshot();
+        assertEquals(want.getResourceCount(), got.getResourceCount());
+
+        for (int i = 0; i < want.getResourceCount(); i++)
+        {
+            Resource res = want.getResourceInOrder(i);
+            Resource other = got.getResourceByID(res.getResourceID(), res.getType());
+            assertArrayEquals(expected.loadResourceData(res.getResourceID(), res.getType()),
+                              actual.loadResourceData(other.getResourceID(), other.getType()));
+            assertArrayEquals(want.getName(res), got.getName(other));
+            assertEquals(want.getAttributes(res), got.getAttributes(other));
+        }
+    }
+
+    @Test
+    void patchRebuildsTheNewVersion() throws Exception
+    {
+        RsrcFile base = base();
+        RsrcFile target = target();
+
+        RsrcPatch patch = roundTrip(RsrcPatch.diff(base, target));
+        assertEquals(5, patch.getChangeCount());
+
+        // The one byte edit is shipped as a delta, not the whole resource
+        assertTrue(patch.getSize() < LARGE.length, "patch is " + patch.getSize() + " bytes");
+
+        Path out = _dir.resolve("out.rsrc");
+        patch.apply(base, out);
+        assertSameResources(target, new RsrcFile(out));
+        assertNull(new RsrcFile(out).getResourceByID(5, ResourceType.TEXT));
+    }
+
+    @Test
+    void patchCanReplaceTheFileItWasAppliedTo() throws Exception
+    {
+        RsrcFile base = base();
+        RsrcFile target = target();
+
+        RsrcPatch.diff(base, target, false).apply(base, base.getRsrcFile().toPath());
+        assertSameResources(target, base);
+        assertTrue(RsrcPatch.diff(base, target).isEmpty());
+    }
+
+    @Test
+    void patchForAnotherVersionIsRejected() throws Exception
+    {
+        RsrcFile base = base();
+        RsrcPatch patch = RsrcPatch.diff(base, target());
+
+        base.saveResourceData(new byte[] { 9 }, 129, ResourceType.PNG);
+        assertThrows(IOException.class, () -> patch.apply(base, _dir.resolve("out.rsrc")));
+    }
+
+    @Test
+    void corruptPatchIsRejected() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RsrcPatch.diff(base(), target()).writeTo(out);
+        byte[] bytes = out.toByteArray();
+
+        assertThrows(IOException.class, () -> RsrcPatch.read(new ByteArrayInputStream(new byte[] { 'R', 'P' })));
+        assertThrows(IOException.class,
+                     () -> RsrcPatch.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))));
+
+        // An added resource claiming to be 2 GB long, in a patch of a few bytes
+        ByteBuffer huge = ByteBuffer.allocate(0x1B).putInt(0x52504154).putInt(1).putInt(1);
+        huge.put((byte) 0x00).putInt(ResourceType.PNG.getCode()).putShort((short) 128);
+        huge.put((byte) 0x00).putShort((short) -1).putInt(Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> RsrcPatch.read(new ByteArrayInputStream(huge.array())));
+    }
+}
@@ -0,0 +1,39 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcSearchTest
+{
+    @TempDir
+    Path _dir;
+
+    @Test
+    void corruptFileInBatchIsSkipped() throws Exception
+    {
+        Path good = _dir.resolve("good.rsrc");
+        new RsrcWriter().add(ResourceType.TEXT, 128, "Copyright 1997".getBytes())
+                        .writeTo(good);
+
+        Path empty = Files.write(_dir.resolve("empty.rsrc"), new byte[0]);
+        Path truncated = Files.write(_dir.resolve("truncated.rsrc"),
+                                     Arrays.copyOf(Files.readAllBytes(good), 0x20));
+
+        List<SearchMatch> matches = new RsrcSearch().addPattern("Copyright")
+                                                    .setParallelism(2)
+                                                    .search(Arrays.asList(empty, good, truncated));
+
+        assertEquals(1, matches.size());
+        assertEquals(good, matches.get(0).getFile());
+        assertEquals(ResourceType.TEXT, matches.get(0).getType());
+        assertEquals(128, matches.get(0).getResourceID());
+        assertEquals(0, matches.get(0).getOffset());
+    }
+}
@@ -0,0 +1,120 @@
+package com.apophenic.rsrclib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsrcWriterTest
+{
+    @TempDir
+    Path _dir;
+
+    @Test
+    void writtenFileReadsBack() throws Exception
+    {
+        Path payload = Files.write(_dir.resolve("payload"), new byte[] { 7, 8, 9 });
+        byte[] streamed = { 10, 11, 12, 13 };
+
+        Path file = _dir.resolve("out.rsrc");
+        RsrcWriter writer = new RsrcWriter()
+                .add(ResourceType.PNG, 128, new byte[] { 1, 2 })
+                .add(ResourceType.forCode("icl4"), 0xFFFF, new byte[0])
+                .add(ResourceType.PNG, 129, payload)
+                .add(ResourceType.TEXT, 1, Channels.newChannel(new ByteArrayInputStream(streamed)), 4);
+        writer.writeTo(file);
+
+        assertEquals(4, writer.getResourceCount());
+        assertEquals(Files.size(file), writer.getSize());
+
+        try (RsrcFile rsrc = new RsrcFile(file))
+        {
+            assertArrayEquals(new ResourceType[] { ResourceType.PNG, ResourceType.forCode("icl4"), ResourceType.TEXT },
+                              rsrc.getResourceTypesInFile());
+            assertArrayEquals(new byte[] { 1, 2 }, rsrc.loadResourceData(128, ResourceType.PNG));
+            assertArrayEquals(new byte[] { 7, 8, 9 }, rsrc.loadResourceData(129, ResourceType.PNG));
+            assertArrayEquals(new byte[0], rsrc.loadResourceData(0xFFFF, ResourceType.forCode("icl4")));
+            assertArrayEquals(streamed, rsrc.loadResourceData(1, ResourceType.TEXT));
+            assertEquals(0, rsrc.getDeadSpace());
+        }
+    }
+
+    @Test
+    void templateIsCopiedWithChanges() throws Exception
+    {
+        Path original = _dir.resolve("original.rsrc");
+        new RsrcWriter().add(ResourceType.PNG, 128, new byte[] { 1 })
+                        .add(ResourceType.PNG, 129, new byte[] { 2 })
+                        .add(ResourceType.SND, 5, new byte[] { 3 })
+                        .writeTo(original);
+
+        Path copy = _dir.resolve("copy.rsrc");
+        try (RsrcFile template = new RsrcFile(original))
+        {
+            RsrcWriter writer = new RsrcWriter().addAll(template)
+                                                .add(ResourceType.PNG, 129, new byte[] { 4, 4 })
+                                                .add(ResourceType.PNG, 130, new byte[] { 5 });
+            assertTrue(writer.remove(ResourceType.SND, 5));
+            assertFalse(writer.remove(ResourceType.SND, 5));
+            writer.writeTo(copy);
+        }
+
+        RsrcFile rsrc = new RsrcFile(copy.toFile());
+        assertArrayEquals(new ResourceType[] { ResourceType.PNG }, rsrc.getResourceTypesInFile());
+        assertArrayEquals(new byte[] { 1 }, rsrc.loadResourceData(128, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 4, 4 }, rsrc.loadResourceData(129, ResourceType.PNG));
+        assertArrayEquals(new byte[] { 5 }, rsrc.loadResourceData(130, ResourceType.PNG));
+        assertNull(rsrc.getResourceByID(5, ResourceType.SND));
+    }
+
+    @Test
+    void idsMustFitInTwoBytes()
+    {
+        RsrcWriter writer = new RsrcWriter();
+        assertThrows(IllegalArgumentException.class, () -> writer.add(ResourceType.PNG, 0x10000, new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> writer.add(ResourceType.PNG, -1, new byte[0]));
+    }
+
+    @Test
+    void namesMustFitAfterALengthByte()
+    {
+        RsrcWriter writer = new RsrcWriter().add(ResourceType.PNG, 128, new byte[0]);
+        assertThrows(IllegalArgumentException.class,
+                     () -> writer.setNameAndAttributes(ResourceType.PNG, 128, new byte[0x100], 0x00));
+        assertThrows(IllegalArgumentException.class,
+                     () -> writer.setNameAndAttributes(ResourceType.PNG, 129, new byte[0x01], 0x00));
+    }
+
+    @Test
+    void headerPastTheNameListOffsetsReachIsRejected()
+    {
+        // 5,500 entries of 12 bytes put the name list past 0xFFFF bytes into the header
+        RsrcWriter writer = new RsrcWriter();
+        for (int id = 0; id < 5500; id++)
+        {
+            writer.add(ResourceType.PNG, id, new byte[0]);
+        }
+        assertThrows(IOException.class, () -> writer.writeTo(_dir.resolve("out.rsrc")));
+    }
+
+    @Test
+    void fileThatChangedSizeIsRejected() throws Exception
+    {
+        Path payload = Files.write(_dir.resolve("payload"), new byte[] { 1, 2, 3 });
+        RsrcWriter writer = new RsrcWriter().add(ResourceType.PNG, 128, payload);
+        Files.write(payload, new byte[] { 1 });
+
+        assertThrows(IOException.class, () -> writer.writeTo(_dir.resolve("out.rsrc")));
+    }
+}